@@ -0,0 +1,34 @@
+/**
+ * 
+ */
+package de.tudresden.xr.export;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Writes the exported annotations to their target, record by record
+ * @param <T> the type of the exported records
+ */
+public interface AnnotationWriter<T> extends Closeable {
+	
+	/**
+	 * @param record the annotation to write
+	 * @throws IOException if the record cannot be written
+	 */
+	public void write(T record) throws IOException;
+	
+	/**
+	 * Mark the end of the records of a workbook. The records written so far are passed on to the target.
+	 * @param fileName the name of the excel file, whose records were written
+	 * @throws IOException if the records cannot be written
+	 */
+	public void endWorkbook(String fileName) throws IOException;
+	
+	/**
+	 * Write any remaining records, ensure that they are stored on the disk, and release the target
+	 * @throws IOException if the records cannot be written
+	 */
+	@Override
+	public void close() throws IOException;
+}
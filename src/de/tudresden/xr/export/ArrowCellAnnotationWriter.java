@@ -0,0 +1,378 @@
+/**
+ * 
+ */
+package de.tudresden.xr.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+
+/**
+ * Writes the cell annotations as an Apache Arrow IPC file, with the same columns as the csv export.
+ * The string columns are dictionary encoded (int32 indices), and the sheet index and the coordinates are stored as int32.
+ * The records of each workbook are written as one or more record batches. The dictionaries are written once,
+ * when the writer is closed, since the file format allows them to follow the batches that use them.
+ * Thus, the file can be memory mapped by the consumers (e.g., pyarrow, Spark) without any parsing.
+ */
+public class ArrowCellAnnotationWriter implements FileAnnotationWriter<CellAnnotationRecord> {
+
+	private static final byte[] MAGIC = "ARROW1".getBytes(StandardCharsets.US_ASCII);
+
+	// the maximum number of rows per record batch
+	private static final int BATCH_SIZE = 1 << 16;
+
+	// the columns of the export, in the order of the csv file
+	private static final String[] COLUMNS = {"FileName", "SheetName", "SheetIndex", "TableName", "AnnotationLabel",
+			"AnnotationAddress", "FirstColumn", "FirstRow", "LastColumn", "LastRow"};
+
+	// the dictionary id of each column, or -1 for the int32 columns
+	private static final int[] DICTIONARIES = {0, 1, -1, 2, 3, 4, -1, -1, -1, -1};
+	private static final int DICTIONARY_COUNT = 5;
+
+	// the constants of the Arrow metadata (Schema.fbs, Message.fbs)
+	private static final short METADATA_V5 = 4;
+	private static final byte HEADER_SCHEMA = 1;
+	private static final byte HEADER_DICTIONARY_BATCH = 2;
+	private static final byte HEADER_RECORD_BATCH = 3;
+	private static final byte TYPE_INT = 2;
+	private static final byte TYPE_UTF8 = 5;
+
+	private ExportFileStream os;
+	private long position = 0;
+
+	// the values of the current batch, one int per row and column (the dictionary index for the string columns)
+	private int[][] batch = new int[COLUMNS.length][BATCH_SIZE];
+	private int rows = 0;
+
+	private List<Map<String, Integer>> indices = new ArrayList<Map<String, Integer>>();
+	private List<List<String>> dictionaries = new ArrayList<List<String>>();
+
+	// the position, metadata length, and body length of each message, for the footer of the file
+	private List<long[]> dictionaryBlocks = new ArrayList<long[]>();
+	private List<long[]> batchBlocks = new ArrayList<long[]>();
+
+
+	/**
+	 * Create the Arrow file (replacing any existing file), and write the schema.
+	 * The file is not compressed, so that the readers can memory map it, without parsing or inflating anything.
+	 * @param file the path to the Arrow file
+	 * @throws IOException if the file cannot be created
+	 */
+	public ArrowCellAnnotationWriter(File file) throws IOException {
+		this.os = new ExportFileStream(file, false);
+
+		for (int i = 0; i < DICTIONARY_COUNT; i++) {
+			indices.add(new HashMap<String, Integer>());
+			dictionaries.add(new ArrayList<String>());
+		}
+
+		// the magic string, padded to 8 bytes
+		write(MAGIC);
+		write(new byte[2]);
+
+		FlatBufferBuilder fbb = new FlatBufferBuilder();
+		writeMessage(fbb, HEADER_SCHEMA, createSchema(fbb), null);
+	}
+
+
+	@Override
+	public void write(CellAnnotationRecord record) throws IOException {
+
+		CellRangeAddress cellAddress = record.getCellAddress();
+		addString(0, record.getFileName());
+		addString(1, record.getSheetName());
+		batch[2][rows] = record.getSheetIndex();
+		addString(3, record.getTableName());
+		addString(4, record.getAnnotationLabel().name());
+		addString(5, cellAddress.formatAsString());
+		batch[6][rows] = cellAddress.getFirstColumn();
+		batch[7][rows] = cellAddress.getFirstRow();
+		batch[8][rows] = cellAddress.getLastColumn();
+		batch[9][rows] = cellAddress.getLastRow();
+
+		rows++;
+		if(rows==BATCH_SIZE){
+			writeBatch();
+		}
+	}
+
+	/**
+	 * Store the dictionary index of the given string, in the current row of the given column
+	 * @param column the index of the column
+	 * @param value the string value (null values are stored as "null", as in the csv export)
+	 */
+	private void addString(int column, String value) {
+
+		String key = String.valueOf(value);
+		Map<String, Integer> index = indices.get(DICTIONARIES[column]);
+		Integer id = index.get(key);
+		if(id==null){
+			List<String> dictionary = dictionaries.get(DICTIONARIES[column]);
+			id = dictionary.size();
+			dictionary.add(key);
+			index.put(key, id);
+		}
+		batch[column][rows] = id;
+	}
+
+	@Override
+	public void endWorkbook(String fileName) throws IOException {
+		writeBatch();
+		os.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try{
+			writeBatch();
+			for (int i = 0; i < DICTIONARY_COUNT; i++) {
+				writeDictionary(i);
+			}
+
+			// the end of the stream
+			writeInt(0xFFFFFFFF);
+			writeInt(0);
+
+			byte[] footer = createFooter();
+			write(footer);
+			writeInt(footer.length);
+			write(MAGIC);
+		}finally{
+			// the export file is synced when its stream is closed
+			os.close();
+		}
+	}
+
+	@Override
+	public long getChecksum() {
+		return os.getChecksum();
+	}
+
+
+	/**
+	 * Write the rows of the current batch (if any) as a record batch
+	 * @throws IOException if the batch cannot be written
+	 */
+	private void writeBatch() throws IOException {
+
+		if(rows==0)
+			return;
+
+		// each column has an (empty) validity buffer, and a buffer of int32 values
+		int columnLength = align(rows * 4);
+		ByteBuffer body = ByteBuffer.allocate(COLUMNS.length * columnLength).order(ByteOrder.LITTLE_ENDIAN);
+		long[] nodes = new long[2 * COLUMNS.length];
+		long[] buffers = new long[4 * COLUMNS.length];
+		for (int i = 0; i < COLUMNS.length; i++) {
+			nodes[2*i] = rows;
+			buffers[4*i] = body.position();
+			buffers[4*i + 2] = body.position();
+			buffers[4*i + 3] = rows * 4;
+
+			body.asIntBuffer().put(batch[i], 0, rows);
+			body.position(body.position() + columnLength);
+		}
+
+		FlatBufferBuilder fbb = new FlatBufferBuilder();
+		int recordBatch = createRecordBatch(fbb, rows, nodes, buffers);
+		batchBlocks.add(writeMessage(fbb, HEADER_RECORD_BATCH, recordBatch, body.array()));
+		rows = 0;
+	}
+
+	/**
+	 * Write the strings of the given dictionary as a dictionary batch, with a single utf8 column
+	 * @param id the id of the dictionary
+	 * @throws IOException if the dictionary cannot be written
+	 */
+	private void writeDictionary(int id) throws IOException {
+
+		List<String> dictionary = dictionaries.get(id);
+		byte[][] values = new byte[dictionary.size()][];
+		int dataLength = 0;
+		for (int i = 0; i < values.length; i++) {
+			values[i] = dictionary.get(i).getBytes(StandardCharsets.UTF_8);
+			dataLength += values[i].length;
+		}
+
+		// an (empty) validity buffer, the offsets of the strings, and their utf8 bytes
+		int offsetsLength = align((values.length + 1) * 4);
+		ByteBuffer body = ByteBuffer.allocate(offsetsLength + align(dataLength)).order(ByteOrder.LITTLE_ENDIAN);
+		int offset = 0;
+		body.putInt(offset);
+		for (byte[] value : values) {
+			offset += value.length;
+			body.putInt(offset);
+		}
+		body.position(offsetsLength);
+		for (byte[] value : values) {
+			body.put(value);
+		}
+
+		long[] nodes = {values.length, 0};
+		long[] buffers = {0, 0, 0, (values.length + 1) * 4, offsetsLength, dataLength};
+
+		FlatBufferBuilder fbb = new FlatBufferBuilder();
+		int data = createRecordBatch(fbb, values.length, nodes, buffers);
+		fbb.startTable(3);
+		fbb.addLong(0, id);
+		fbb.addOffset(1, data);
+		fbb.addBoolean(2, false);
+		int dictionaryBatch = fbb.endTable();
+		dictionaryBlocks.add(writeMessage(fbb, HEADER_DICTIONARY_BATCH, dictionaryBatch, body.array()));
+	}
+
+
+	/**
+	 * Write an encapsulated message: the continuation marker, the length of the metadata, the metadata, and the body
+	 * @param fbb the builder that contains the header of the message
+	 * @param headerType the type of the header (schema, dictionary batch, or record batch)
+	 * @param header the offset of the header in the builder
+	 * @param body the body of the message (with a length that is a multiple of 8), or null if there is none
+	 * @return the block of the message (position, metadata length, body length)
+	 * @throws IOException if the message cannot be written
+	 */
+	private long[] writeMessage(FlatBufferBuilder fbb, byte headerType, int header, byte[] body) throws IOException {
+
+		int bodyLength = body==null ? 0 : body.length;
+		fbb.startTable(5);
+		fbb.addShort(0, METADATA_V5);
+		fbb.addByte(1, headerType);
+		fbb.addOffset(2, header);
+		fbb.addLong(3, bodyLength);
+		byte[] metadata = fbb.finish(fbb.endTable());
+
+		long start = position;
+		int metadataLength = align(8 + metadata.length);
+		writeInt(0xFFFFFFFF);
+		writeInt(metadataLength - 8);
+		write(metadata);
+		write(new byte[metadataLength - 8 - metadata.length]);
+		if(body!=null){
+			write(body);
+		}
+		return new long[]{start, metadataLength, bodyLength};
+	}
+
+	/**
+	 * @return the footer of the file, which contains the schema and the blocks of all messages
+	 */
+	private byte[] createFooter() {
+
+		FlatBufferBuilder fbb = new FlatBufferBuilder();
+		int schema = createSchema(fbb);
+		int dictionaryVector = fbb.createBlockVector(dictionaryBlocks);
+		int batchVector = fbb.createBlockVector(batchBlocks);
+		fbb.startTable(4);
+		fbb.addShort(0, METADATA_V5);
+		fbb.addOffset(1, schema);
+		fbb.addOffset(2, dictionaryVector);
+		fbb.addOffset(3, batchVector);
+		return fbb.finish(fbb.endTable());
+	}
+
+	/**
+	 * @param fbb the builder where the schema is created
+	 * @return the offset of the schema
+	 */
+	private static int createSchema(FlatBufferBuilder fbb) {
+
+		int[] fields = new int[COLUMNS.length];
+		for (int i = 0; i < COLUMNS.length; i++) {
+
+			int name = fbb.createString(COLUMNS[i]);
+			int children = fbb.createVector(new int[0]);
+			int dictionary = 0;
+			int type;
+			if(DICTIONARIES[i]<0){
+				type = createInt32(fbb);
+			}else{
+				// the type of a dictionary encoded field is the type of the dictionary values
+				fbb.startTable(0);
+				type = fbb.endTable();
+
+				int indexType = createInt32(fbb);
+				fbb.startTable(4);
+				fbb.addLong(0, DICTIONARIES[i]);
+				fbb.addOffset(1, indexType);
+				fbb.addBoolean(2, false);
+				fbb.addShort(3, 0);
+				dictionary = fbb.endTable();
+			}
+
+			fbb.startTable(7);
+			fbb.addOffset(0, name);
+			fbb.addBoolean(1, false);
+			fbb.addByte(2, DICTIONARIES[i]<0 ? TYPE_INT : TYPE_UTF8);
+			fbb.addOffset(3, type);
+			if(dictionary!=0){
+				fbb.addOffset(4, dictionary);
+			}
+			fbb.addOffset(5, children);
+			fields[i] = fbb.endTable();
+		}
+
+		int fieldVector = fbb.createVector(fields);
+		fbb.startTable(4);
+		fbb.addShort(0, 0); // little endian
+		fbb.addOffset(1, fieldVector);
+		return fbb.endTable();
+	}
+
+	/**
+	 * @param fbb the builder where the type is created
+	 * @return the offset of the signed 32-bit integer type
+	 */
+	private static int createInt32(FlatBufferBuilder fbb) {
+		fbb.startTable(2);
+		fbb.addInt(0, 32);
+		fbb.addBoolean(1, true);
+		return fbb.endTable();
+	}
+
+	/**
+	 * @param fbb the builder where the record batch is created
+	 * @param length the number of rows
+	 * @param nodes the length and null count of each field
+	 * @param buffers the offset and length of each buffer in the body
+	 * @return the offset of the record batch
+	 */
+	private static int createRecordBatch(FlatBufferBuilder fbb, int length, long[] nodes, long[] buffers) {
+		int nodeVector = fbb.createLongPairVector(nodes);
+		int bufferVector = fbb.createLongPairVector(buffers);
+		fbb.startTable(3);
+		fbb.addLong(0, length);
+		fbb.addOffset(1, nodeVector);
+		fbb.addOffset(2, bufferVector);
+		return fbb.endTable();
+	}
+
+
+	/**
+	 * @param length a length in bytes
+	 * @return the length, padded to a multiple of 8 bytes
+	 */
+	private static int align(int length) {
+		return (length + 7) & ~7;
+	}
+
+	private void write(byte[] bytes) throws IOException {
+		os.write(bytes);
+		position += bytes.length;
+	}
+
+	private void writeInt(int value) throws IOException {
+		os.write(value);
+		os.write(value >> 8);
+		os.write(value >> 16);
+		os.write(value >> 24);
+		position += 4;
+	}
+}
@@ -0,0 +1,176 @@
+/**
+ * 
+ */
+package de.tudresden.xr.export;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import de.tudresden.xr.model.enums.AnnotationLabel;
+
+/**
+ * Reads the cell annotations from a file written by the BinaryCellAnnotationWriter, record by record.
+ * Only the dictionaries of the names are kept in memory.
+ */
+public class BinaryCellAnnotationReader implements Closeable {
+
+	private InputStream is;
+
+	private List<String> fileNames = new ArrayList<String>();
+	private List<String> sheetNames = new ArrayList<String>();
+	private List<String> tableNames = new ArrayList<String>();
+	private String fileName = null;
+	private String sheetName = null;
+	private int sheetIndex = -1;
+	private String tableName = null;
+	private int row = 0;
+	private int column = 0;
+
+
+	/**
+	 * Open the binary file, and check its header. Compressed files (see the -compress option) are decompressed on the fly.
+	 * @param file the path to the binary file
+	 * @throws IOException if the file cannot be read, or it is not a binary export of cell annotations
+	 */
+	public BinaryCellAnnotationReader(File file) throws IOException {
+
+		this.is = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+		try{
+			// the magic bytes of a gzip stream
+			is.mark(2);
+			boolean isCompressed = is.read()==0x1f && is.read()==0x8b;
+			is.reset();
+			if(isCompressed){
+				is = new BufferedInputStream(new GZIPInputStream(is, 1 << 16), 1 << 16);
+			}
+			
+			for (byte b : BinaryCellAnnotationWriter.MAGIC) {
+				if(is.read()!=b){
+					throw new IOException("The file \""+file.getName()+"\" is not a binary export of cell annotations.");
+				}
+			}
+			int version = is.read();
+			if(version!=BinaryCellAnnotationWriter.VERSION){
+				throw new IOException("The version "+version+" of the binary export is not supported.");
+			}
+		}catch(IOException ioEx){
+			is.close();
+			throw ioEx;
+		}
+	}
+
+
+	/**
+	 * @return the next cell annotation, or null at the end of the file
+	 * @throws IOException if the file cannot be read, or it ends in the middle of a record
+	 */
+	public CellAnnotationRecord read() throws IOException {
+
+		int flags = is.read();
+		if(flags<0)
+			return null;
+
+		if((flags & BinaryCellAnnotationWriter.NEW_FILE)!=0){
+			fileName = readName(fileNames);
+		}
+		if((flags & BinaryCellAnnotationWriter.NEW_SHEET)!=0){
+			sheetName = readName(sheetNames);
+			sheetIndex = readVarInt();
+		}
+		if((flags & BinaryCellAnnotationWriter.NEW_TABLE)!=0){
+			tableName = readName(tableNames);
+		}
+
+		AnnotationLabel[] labels = AnnotationLabel.values();
+		int ordinal = flags >>> BinaryCellAnnotationWriter.LABEL_SHIFT;
+		if(ordinal>=labels.length){
+			throw new IOException("The annotation label "+ordinal+" does not exist.");
+		}
+
+		row += readSignedVarInt();
+		column += readSignedVarInt();
+		int lastRow = row;
+		int lastColumn = column;
+		if((flags & BinaryCellAnnotationWriter.MERGED)!=0){
+			lastRow += readVarInt();
+			lastColumn += readVarInt();
+		}
+
+		return new CellAnnotationRecord(fileName, sheetName, sheetIndex, tableName, labels[ordinal],
+				new CellRangeAddress(row, lastRow, column, lastColumn));
+	}
+
+	@Override
+	public void close() throws IOException {
+		is.close();
+	}
+
+
+	/**
+	 * Read a reference to a name, and add the new names to the dictionary (see BinaryCellAnnotationWriter)
+	 * @param dictionary the dictionary of the names
+	 * @return the name
+	 * @throws IOException if the name cannot be read
+	 */
+	private String readName(List<String> dictionary) throws IOException {
+
+		int index = readVarInt();
+		if(index>0){
+			if(index>dictionary.size()){
+				throw new IOException("The name "+index+" is not in the dictionary.");
+			}
+			return dictionary.get(index - 1);
+		}
+
+		byte[] bytes = new byte[readVarInt()];
+		int offset = 0;
+		while(offset<bytes.length){
+			int read = is.read(bytes, offset, bytes.length - offset);
+			if(read<0){
+				throw new EOFException("The file ends in the middle of a record.");
+			}
+			offset += read;
+		}
+		String name = new String(bytes, StandardCharsets.UTF_8);
+		dictionary.add(name);
+		return name;
+	}
+
+	/**
+	 * @return the next varint
+	 * @throws IOException if the value cannot be read
+	 */
+	private int readVarInt() throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = is.read();
+			if(b<0){
+				throw new EOFException("The file ends in the middle of a record.");
+			}
+			value |= (b & 0x7F) << shift;
+			if((b & 0x80)==0)
+				return value;
+		}
+		throw new IOException("The varint is too long.");
+	}
+
+	/**
+	 * @return the next zigzag varint
+	 * @throws IOException if the value cannot be read
+	 */
+	private int readSignedVarInt() throws IOException {
+		int value = readVarInt();
+		return (value >>> 1) ^ -(value & 1);
+	}
+}
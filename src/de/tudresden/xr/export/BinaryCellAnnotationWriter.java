@@ -0,0 +1,184 @@
+/**
+ * 
+ */
+package de.tudresden.xr.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import de.tudresden.xr.model.enums.AnnotationLabel;
+
+/**
+ * Writes the cell annotations in a compact binary format, which is read back by the BinaryCellAnnotationReader.
+ * <p>
+ * The file starts with the magic bytes "XRCA" and the version of the format. Each record starts with a flags byte:
+ * the lower bits mark which of the file, sheet, and table names differ from the previous record,
+ * one bit marks a merged area, and the upper four bits hold the ordinal of the annotation label.
+ * The names that changed follow as references to per-file dictionaries (see writeName), which are built up as the
+ * records are written. Then, the first row and column follow as zigzag varints, relative to the previous record
+ * (i.e., the cells are delta encoded in row-major order), and, for merged areas, the number of additional rows and columns.
+ */
+public class BinaryCellAnnotationWriter implements FileAnnotationWriter<CellAnnotationRecord> {
+
+	static final byte[] MAGIC = {'X', 'R', 'C', 'A'};
+	static final int VERSION = 1;
+
+	// the bits of the flags byte
+	static final int NEW_FILE = 1;
+	static final int NEW_SHEET = 2;
+	static final int NEW_TABLE = 4;
+	static final int MERGED = 8;
+	static final int LABEL_SHIFT = 4;
+
+	private ExportFileStream os;
+
+	// the dictionaries of the names (file, sheet, and table), and the names of the previous record
+	private Map<String, Integer> fileNames = new HashMap<String, Integer>();
+	private Map<String, Integer> sheetNames = new HashMap<String, Integer>();
+	private Map<String, Integer> tableNames = new HashMap<String, Integer>();
+	private String fileName = null;
+	private String sheetName = null;
+	private int sheetIndex = -1;
+	private String tableName = null;
+	private int row = 0;
+	private int column = 0;
+
+
+	/**
+	 * Create the binary file (replacing any existing file), and write the header
+	 * @param file the path to the binary file
+	 * @throws IOException if the file cannot be created
+	 */
+	public BinaryCellAnnotationWriter(File file) throws IOException {
+		this(file, false);
+	}
+	
+	/**
+	 * Create the binary file (replacing any existing file), and write the header
+	 * @param file the path to the binary file
+	 * @param compress true to write the file as a gzip stream
+	 * @throws IOException if the file cannot be created
+	 */
+	public BinaryCellAnnotationWriter(File file, boolean compress) throws IOException {
+
+		if(AnnotationLabel.values().length > (1 << (8 - LABEL_SHIFT))){
+			throw new IOException("The annotation labels do not fit in the flags byte of the binary format.");
+		}
+
+		this.os = new ExportFileStream(file, compress);
+		os.write(MAGIC);
+		os.write(VERSION);
+	}
+
+
+	@Override
+	public void write(CellAnnotationRecord record) throws IOException {
+
+		CellRangeAddress cellAddress = record.getCellAddress();
+		boolean newFile = !record.getFileName().equals(fileName);
+		boolean newSheet = newFile || !record.getSheetName().equals(sheetName) || record.getSheetIndex()!=sheetIndex;
+		boolean newTable = newSheet || !String.valueOf(record.getTableName()).equals(tableName);
+		boolean merged = cellAddress.getLastRow()!=cellAddress.getFirstRow() || cellAddress.getLastColumn()!=cellAddress.getFirstColumn();
+
+		int flags = record.getAnnotationLabel().ordinal() << LABEL_SHIFT;
+		if(newFile)
+			flags |= NEW_FILE;
+		if(newSheet)
+			flags |= NEW_SHEET;
+		if(newTable)
+			flags |= NEW_TABLE;
+		if(merged)
+			flags |= MERGED;
+		os.write(flags);
+
+		if(newFile){
+			fileName = record.getFileName();
+			writeName(fileNames, fileName);
+		}
+		if(newSheet){
+			sheetName = record.getSheetName();
+			sheetIndex = record.getSheetIndex();
+			writeName(sheetNames, sheetName);
+			writeVarInt(sheetIndex);
+		}
+		if(newTable){
+			tableName = String.valueOf(record.getTableName());
+			writeName(tableNames, tableName);
+		}
+
+		writeSignedVarInt(cellAddress.getFirstRow() - row);
+		writeSignedVarInt(cellAddress.getFirstColumn() - column);
+		row = cellAddress.getFirstRow();
+		column = cellAddress.getFirstColumn();
+		if(merged){
+			writeVarInt(cellAddress.getLastRow() - cellAddress.getFirstRow());
+			writeVarInt(cellAddress.getLastColumn() - cellAddress.getFirstColumn());
+		}
+	}
+
+	@Override
+	public void endWorkbook(String fileName) throws IOException {
+		os.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		// the export file is synced when its stream is closed
+		os.close();
+	}
+
+	@Override
+	public long getChecksum() {
+		return os.getChecksum();
+	}
+
+
+	/**
+	 * Write a reference to the given name. A name that is already in the dictionary is written as its index + 1.
+	 * Otherwise, it is written as 0, followed by the length and the utf-8 bytes of the name, and it is added to the dictionary.
+	 * @param dictionary the dictionary of the names
+	 * @param name the name to write
+	 * @throws IOException if the name cannot be written
+	 */
+	private void writeName(Map<String, Integer> dictionary, String name) throws IOException {
+
+		Integer index = dictionary.get(name);
+		if(index!=null){
+			writeVarInt(index + 1);
+			return;
+		}
+
+		dictionary.put(name, dictionary.size());
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		writeVarInt(0);
+		writeVarInt(bytes.length);
+		os.write(bytes);
+	}
+
+	/**
+	 * Write the given (non-negative) value, 7 bits per byte, with the high bit set on all bytes but the last
+	 * @param value the value to write
+	 * @throws IOException if the value cannot be written
+	 */
+	private void writeVarInt(int value) throws IOException {
+		while((value & ~0x7F)!=0){
+			os.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		os.write(value);
+	}
+
+	/**
+	 * Write the given value as a zigzag varint, so that small negative values take few bytes as well
+	 * @param value the value to write
+	 * @throws IOException if the value cannot be written
+	 */
+	private void writeSignedVarInt(int value) throws IOException {
+		writeVarInt((value << 1) ^ (value >> 31));
+	}
+}
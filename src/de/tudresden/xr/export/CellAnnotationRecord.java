@@ -0,0 +1,90 @@
+/**
+ * 
+ */
+package de.tudresden.xr.export;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import de.tudresden.xr.model.enums.AnnotationLabel;
+
+/**
+ * The annotation of a single (valid) cell, or merged area, as exported by the CellAnnotationsExporter
+ */
+public class CellAnnotationRecord {
+	
+	private String fileName;
+	private String sheetName;
+	private int sheetIndex;
+	private String tableName;
+	private AnnotationLabel annotationLabel;
+	private CellRangeAddress cellAddress;
+	
+	
+	/**
+	 * @param fileName the name of the excel file
+	 * @param sheetName the name of the sheet where the cell is located
+	 * @param sheetIndex the index of the sheet where the cell is located
+	 * @param tableName the (short) name of the table that contains the cell, or an empty string if there is none
+	 * @param annotationLabel the label of the range annotation that contains the cell
+	 * @param cellAddress the address of the cell, or of the merged area
+	 */
+	public CellAnnotationRecord(String fileName, String sheetName, int sheetIndex, String tableName, 
+			AnnotationLabel annotationLabel, CellRangeAddress cellAddress) {
+		this.fileName = fileName;
+		this.sheetName = sheetName;
+		this.sheetIndex = sheetIndex;
+		this.tableName = tableName;
+		this.annotationLabel = annotationLabel;
+		this.cellAddress = cellAddress;
+	}
+
+	/**
+	 * @return the name of the excel file
+	 */
+	public String getFileName() {
+		return fileName;
+	}
+
+	/**
+	 * @param fileName the name of another excel file, with the same content
+	 * @return a copy of this record, for the given excel file
+	 */
+	public CellAnnotationRecord withFileName(String fileName) {
+		return new CellAnnotationRecord(fileName, sheetName, sheetIndex, tableName, annotationLabel, cellAddress);
+	}
+
+	/**
+	 * @return the name of the sheet where the cell is located
+	 */
+	public String getSheetName() {
+		return sheetName;
+	}
+
+	/**
+	 * @return the index of the sheet where the cell is located
+	 */
+	public int getSheetIndex() {
+		return sheetIndex;
+	}
+
+	/**
+	 * @return the (short) name of the table that contains the cell, or an empty string if there is none
+	 */
+	public String getTableName() {
+		return tableName;
+	}
+
+	/**
+	 * @return the label of the range annotation that contains the cell
+	 */
+	public AnnotationLabel getAnnotationLabel() {
+		return annotationLabel;
+	}
+
+	/**
+	 * @return the address of the cell, or of the merged area
+	 */
+	public CellRangeAddress getCellAddress() {
+		return cellAddress;
+	}
+}
@@ -0,0 +1,105 @@
+/**
+ * 
+ */
+package de.tudresden.xr.export;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+
+/**
+ * Covers a set of cells with rectangles, and expands the rectangles back to the cells.
+ * The cells of each row are split in maximal runs of adjacent columns, and the runs that span the same columns
+ * in consecutive rows are joined in one rectangle. Thus, the rectangles do not overlap, and they cover exactly the given cells.
+ * A dense table (or any rectangular area) becomes a single rectangle.
+ */
+public class CellRectangles {
+
+	/**
+	 * Orders the cells by row, and then by column
+	 */
+	private static final Comparator<CellRangeAddress> ROW_MAJOR = new Comparator<CellRangeAddress>() {
+		@Override
+		public int compare(CellRangeAddress a, CellRangeAddress b) {
+			int result = Integer.compare(a.getFirstRow(), b.getFirstRow());
+			return result!=0 ? result : Integer.compare(a.getFirstColumn(), b.getFirstColumn());
+		}
+	};
+
+
+	/**
+	 * Cover the given cells with rectangles
+	 * @param cells the addresses of single cells (in any order)
+	 * @return the rectangles that cover the cells, ordered by their first row, and then by their first column
+	 */
+	public static List<CellRangeAddress> cover(List<CellRangeAddress> cells) {
+
+		List<CellRangeAddress> sorted = new ArrayList<CellRangeAddress>(cells);
+		Collections.sort(sorted, ROW_MAJOR);
+
+		// each rectangle as {firstRow, lastRow, firstColumn, lastColumn}
+		List<int[]> rectangles = new ArrayList<int[]>();
+
+		// the rectangles that reach the previous row, by their first and last column
+		HashMap<Long, int[]> open = new HashMap<Long, int[]>();
+
+		int i = 0;
+		while(i < sorted.size()){
+			int row = sorted.get(i).getFirstRow();
+			HashMap<Long, int[]> next = new HashMap<Long, int[]>();
+
+			while(i < sorted.size() && sorted.get(i).getFirstRow()==row){
+
+				// the next run of adjacent columns in this row
+				int firstColumn = sorted.get(i).getFirstColumn();
+				int lastColumn = firstColumn;
+				i++;
+				while(i < sorted.size() && sorted.get(i).getFirstRow()==row && sorted.get(i).getFirstColumn() <= lastColumn + 1){
+					lastColumn = Math.max(lastColumn, sorted.get(i).getFirstColumn());
+					i++;
+				}
+
+				Long key = ((long) firstColumn << 32) | lastColumn;
+				int[] rectangle = open.get(key);
+				if(rectangle!=null && rectangle[1]==row - 1){
+					rectangle[1] = row;
+				}else{
+					rectangle = new int[]{row, row, firstColumn, lastColumn};
+					rectangles.add(rectangle);
+				}
+				next.put(key, rectangle);
+			}
+			open = next;
+		}
+
+		List<CellRangeAddress> result = new ArrayList<CellRangeAddress>(rectangles.size());
+		for (int[] rectangle : rectangles) {
+			result.add(new CellRangeAddress(rectangle[0], rectangle[1], rectangle[2], rectangle[3]));
+		}
+		return result;
+	}
+
+
+	/**
+	 * Expand the given rectangles to their cells
+	 * @param rectangles the rectangles (in any order)
+	 * @return the addresses of the cells, ordered by row, and then by column
+	 */
+	public static List<CellRangeAddress> expand(List<CellRangeAddress> rectangles) {
+
+		List<CellRangeAddress> cells = new ArrayList<CellRangeAddress>();
+		for (CellRangeAddress rectangle : rectangles) {
+			for (int row = rectangle.getFirstRow(); row <= rectangle.getLastRow(); row++) {
+				for (int column = rectangle.getFirstColumn(); column <= rectangle.getLastColumn(); column++) {
+					cells.add(new CellRangeAddress(row, row, column, column));
+				}
+			}
+		}
+		Collections.sort(cells, ROW_MAJOR);
+		return cells;
+	}
+}
@@ -0,0 +1,134 @@
+/**
+ * 
+ */
+package de.tudresden.xr.export;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Writes the exported annotations as rows of a csv file. 
+ * The file is opened once, with a large buffer (or compressed in parallel), and it is synced to the disk when the writer is closed.
+ * @param <T> the type of the exported records
+ */
+public abstract class CsvAnnotationWriter<T> implements SplicingAnnotationWriter<T>, FileAnnotationWriter<T> {
+	
+	// the size of the output buffer, in chars
+	private static final int BUFFER_SIZE = 1 << 20;
+	
+	private ExportFileStream stream;
+	private Writer writer;
+	private StringBuilder sb = new StringBuilder();
+	
+	
+	/**
+	 * Create the csv file (replacing any existing file), and write the header row
+	 * @param file the path to the csv file
+	 * @param compress true to write the file as a gzip stream
+	 * @throws IOException if the file cannot be created
+	 */
+	protected CsvAnnotationWriter(File file, boolean compress) throws IOException {
+		this.stream = new ExportFileStream(file, compress);
+		this.writer = new BufferedWriter(new OutputStreamWriter(stream, getCharset()), BUFFER_SIZE);
+		
+		appendHeader(sb);
+		writer.append(sb);
+		sb.setLength(0);
+	}
+	
+	
+	/**
+	 * Open an existing csv file to resume an aborted export. The rows after the given offset are dropped, 
+	 * and the next rows are appended (see ExportCheckpoint)
+	 * @param file the path to the (uncompressed) csv file
+	 * @param offset the number of bytes to keep, including the header row
+	 * @throws IOException if the file cannot be opened, or it is shorter than the offset
+	 */
+	protected CsvAnnotationWriter(File file, long offset) throws IOException {
+		this.stream = new ExportFileStream(file, offset);
+		this.writer = new BufferedWriter(new OutputStreamWriter(stream, getCharset()), BUFFER_SIZE);
+	}
+	
+	
+	/**
+	 * @param sb the string builder where the header row is appended (including the line break)
+	 */
+	protected abstract void appendHeader(StringBuilder sb);
+	
+	/**
+	 * @param sb the string builder where the row is appended (including the line break)
+	 * @param record the annotation to append as a row
+	 */
+	protected abstract void appendRow(StringBuilder sb, T record);
+	
+	
+	/**
+	 * @return the charset of the csv file
+	 */
+	static Charset getCharset() {
+		return Charset.defaultCharset();
+	}
+	
+	/**
+	 * Write rows that are already encoded in the charset of the file, after the rows written so far
+	 * @param rows the encoded rows (from the position to the limit of the buffer)
+	 * @param copy a buffer for copying the rows to the file
+	 * @throws IOException if the rows cannot be written
+	 */
+	void writeEncoded(ByteBuffer rows, byte[] copy) throws IOException {
+		writer.flush();
+		while(rows.hasRemaining()){
+			int length = Math.min(copy.length, rows.remaining());
+			rows.get(copy, 0, length);
+			stream.write(copy, 0, length);
+		}
+	}
+	
+	
+	@Override
+	public void write(T record) throws IOException {
+		appendRow(sb, record);
+		writer.append(sb);
+		sb.setLength(0);
+	}
+	
+	@Override
+	public void endWorkbook(String fileName) throws IOException {
+		writer.flush();
+	}
+	
+	@Override
+	public long getOffset() throws IOException {
+		writer.flush();
+		return stream.getCount();
+	}
+	
+	@Override
+	public void splice(FileChannel source, long offset, long length) throws IOException {
+		writer.flush();
+		stream.transferFrom(source, offset, length);
+	}
+	
+	@Override
+	public void sync() throws IOException {
+		writer.flush();
+		stream.sync();
+	}
+	
+	@Override
+	public void close() throws IOException {
+		// the export file is synced when its stream is closed
+		writer.close();
+	}
+
+	@Override
+	public long getChecksum() {
+		return stream.getChecksum();
+	}
+}
@@ -0,0 +1,103 @@
+/**
+ * 
+ */
+package de.tudresden.xr.export;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import de.tudresden.xr.model.enums.AnnotationLabel;
+
+/**
+ * Reads the cell annotations from a csv file written by the CsvCellAnnotationWriter, row by row.
+ * Compressed files (see the -compress option) are decompressed on the fly.
+ */
+public class CsvCellAnnotationReader implements Closeable {
+
+	// the quoted file, sheet, and table names, with the sheet index in between
+	private static final Pattern NAMES = Pattern.compile("^\"(.*?)\",\"(.*)\",(-?\\d+),\"(.*)\"$");
+
+	private BufferedReader reader;
+	private int lineNumber = 1;
+
+
+	/**
+	 * Open the csv file, and skip its header row
+	 * @param file the path to the csv file
+	 * @throws IOException if the file cannot be read
+	 */
+	public CsvCellAnnotationReader(File file) throws IOException {
+
+		InputStream is = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+		try{
+			// the magic bytes of a gzip stream
+			is.mark(2);
+			boolean isCompressed = is.read()==0x1f && is.read()==0x8b;
+			is.reset();
+			if(isCompressed){
+				is = new GZIPInputStream(is, 1 << 16);
+			}
+		}catch(IOException ioEx){
+			is.close();
+			throw ioEx;
+		}
+
+		this.reader = new BufferedReader(new InputStreamReader(is, Charset.defaultCharset()), 1 << 16);
+		reader.readLine();
+	}
+
+
+	/**
+	 * @return the next cell annotation, or null at the end of the file
+	 * @throws IOException if the file cannot be read, or the row is not valid
+	 */
+	public CellAnnotationRecord read() throws IOException {
+
+		String line = reader.readLine();
+		lineNumber++;
+		if(line==null)
+			return null;
+
+		// the last six columns (label, address, and coordinates) do not contain commas
+		String[] columns = new String[6];
+		int end = line.length();
+		for (int i = columns.length - 1; i >= 0; i--) {
+			int comma = line.lastIndexOf(',', end - 1);
+			if(comma<0){
+				throw new IOException("The row "+lineNumber+" of the csv file is not valid.");
+			}
+			columns[i] = line.substring(comma + 1, end);
+			end = comma;
+		}
+
+		Matcher matcher = NAMES.matcher(line.substring(0, end));
+		if(!matcher.matches()){
+			throw new IOException("The row "+lineNumber+" of the csv file is not valid.");
+		}
+
+		try{
+			return new CellAnnotationRecord(matcher.group(1), matcher.group(2), Integer.parseInt(matcher.group(3)), matcher.group(4),
+					AnnotationLabel.valueOf(columns[0]), new CellRangeAddress(Integer.parseInt(columns[3]), Integer.parseInt(columns[5]),
+							Integer.parseInt(columns[2]), Integer.parseInt(columns[4])));
+		}catch(IllegalArgumentException iaEx){
+			throw new IOException("The row "+lineNumber+" of the csv file is not valid.");
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+}
@@ -0,0 +1,75 @@
+/**
+ * 
+ */
+package de.tudresden.xr.export;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+
+/**
+ * Writes the cell annotations as rows of a csv file
+ */
+public class CsvCellAnnotationWriter extends CsvAnnotationWriter<CellAnnotationRecord> {
+	
+	/**
+	 * @param file the path to the csv file
+	 * @throws IOException if the file cannot be created
+	 */
+	public CsvCellAnnotationWriter(File file) throws IOException {
+		super(file, false);
+	}
+	
+	/**
+	 * @param file the path to the csv file
+	 * @param compress true to write the file as a gzip stream
+	 * @throws IOException if the file cannot be created
+	 */
+	public CsvCellAnnotationWriter(File file, boolean compress) throws IOException {
+		super(file, compress);
+	}
+	
+	/**
+	 * Open an existing csv file to resume an aborted export (see ExportCheckpoint)
+	 * @param file the path to the (uncompressed) csv file
+	 * @param offset the number of bytes to keep, including the header row
+	 * @throws IOException if the file cannot be opened, or it is shorter than the offset
+	 */
+	public CsvCellAnnotationWriter(File file, long offset) throws IOException {
+		super(file, offset);
+	}
+
+	@Override
+	protected void appendHeader(StringBuilder sb) {
+		sb.append("FileName");
+		sb.append(",").append("SheetName");
+		sb.append(",").append("SheetIndex");
+		sb.append(",").append("TableName");
+		sb.append(",").append("AnnotationLabel");
+		sb.append(",").append("AnnotationAddress");
+		sb.append(",").append(String.valueOf("FirstColumn"));
+		sb.append(",").append(String.valueOf("FirstRow"));
+		sb.append(",").append(String.valueOf("LastColumn"));
+		sb.append(",").append(String.valueOf("LastRow"));
+		sb.append("\n");
+	}
+
+	@Override
+	protected void appendRow(StringBuilder sb, CellAnnotationRecord record) {
+		
+		CellRangeAddress cellAddress = record.getCellAddress();
+		sb.append("\"").append(record.getFileName()).append("\"").append(",");
+		sb.append("\"").append(record.getSheetName()).append("\"").append(",");
+		sb.append(record.getSheetIndex()).append(",");
+		sb.append("\"").append(record.getTableName()).append("\"").append(",");
+		
+		sb.append(record.getAnnotationLabel().name()).append(",");
+		sb.append(cellAddress.formatAsString()).append(",");		
+		sb.append(String.valueOf(cellAddress.getFirstColumn())).append(",");
+		sb.append(String.valueOf(cellAddress.getFirstRow())).append(",");
+		sb.append(String.valueOf(cellAddress.getLastColumn())).append(",");
+		sb.append(String.valueOf(cellAddress.getLastRow()));
+		sb.append("\n");
+	}
+}
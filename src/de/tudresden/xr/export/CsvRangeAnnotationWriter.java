@@ -0,0 +1,67 @@
+/**
+ * 
+ */
+package de.tudresden.xr.export;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+
+/**
+ * Writes the table and range annotations as rows of a csv file
+ */
+public class CsvRangeAnnotationWriter extends CsvAnnotationWriter<RangeAnnotationRecord> {
+	
+	/**
+	 * @param file the path to the csv file
+	 * @throws IOException if the file cannot be created
+	 */
+	public CsvRangeAnnotationWriter(File file) throws IOException {
+		super(file, false);
+	}
+	
+	/**
+	 * @param file the path to the csv file
+	 * @param compress true to write the file as a gzip stream
+	 * @throws IOException if the file cannot be created
+	 */
+	public CsvRangeAnnotationWriter(File file, boolean compress) throws IOException {
+		super(file, compress);
+	}
+
+	@Override
+	protected void appendHeader(StringBuilder sb) {
+		sb.append("FileName");
+		sb.append(",").append("SheetName");
+		sb.append(",").append("SheetIndex");
+		sb.append(",").append("AnnotationName");
+		sb.append(",").append("AnnotationLabel");
+		sb.append(",").append("AnnotationParent");
+		sb.append(",").append("AnnotationAddress");
+		sb.append(",").append(String.valueOf("FirstColumn"));
+		sb.append(",").append(String.valueOf("FirstRow"));
+		sb.append(",").append(String.valueOf("LastColumn"));
+		sb.append(",").append(String.valueOf("LastRow"));
+		sb.append("\n");
+	}
+
+	@Override
+	protected void appendRow(StringBuilder sb, RangeAnnotationRecord record) {
+		
+		sb.append("\"").append(record.getFileName()).append("\"");
+		sb.append(",").append("\"").append(record.getSheetName()).append("\"");
+		sb.append(",").append(record.getSheetIndex());
+		sb.append(",").append("\"").append(record.getAnnotationName()).append("\"");
+		sb.append(",").append(record.getAnnotationLabel().name());	
+		sb.append(",").append("\"").append(record.getParentName()).append("\"");
+		
+		sb.append(",").append(record.getRangeAddress());
+		CellRangeAddress cra = record.getCellRangeAddress();
+		sb.append(",").append(String.valueOf(cra.getFirstColumn()));
+		sb.append(",").append(String.valueOf(cra.getFirstRow()));
+		sb.append(",").append(String.valueOf(cra.getLastColumn()));
+		sb.append(",").append(String.valueOf(cra.getLastRow()));
+		sb.append("\n");
+	}
+}
@@ -0,0 +1,153 @@
+/**
+ * 
+ */
+package de.tudresden.xr.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import de.tudresden.xr.utils.FileUtils;
+
+/**
+ * Tracks the excel files that have the same content as an earlier file in the list (e.g., the same workbook uploaded twice, under
+ * different names). Only the first file with a given content is processed. The result of the first file is kept until the later
+ * files with the same content are handled, and then the rows of each copy are the rows of the first file, under the name of the copy.
+ * Thus, the export is the same as when each file is processed, while the work is proportional to the number of distinct files.
+ * <p>
+ * The memory cost is the results of the first files whose copies are not handled yet. A copy that is far from its first file
+ * (e.g., in another directory) keeps the whole result in memory until then. With a heap budget (see setScheduler), each kept result
+ * holds the estimated footprint of its file against the budget, so that fewer files are processed at the same time meanwhile.
+ * @param <T> the type of the result for each file
+ */
+public class DuplicateWorkbooks<T> {
+
+	// the first file with the same content, for each copy
+	private HashMap<File, File> originals = new HashMap<File, File>();
+
+	// the copies of each file, in order
+	private HashMap<File, List<File>> copies = new HashMap<File, List<File>>();
+
+	// the results of the first files, until all their copies are handled
+	private HashMap<File, T> results = new HashMap<File, T>();
+	private HashMap<File, Exception> errors = new HashMap<File, Exception>();
+	private HashMap<File, Integer> pending = new HashMap<File, Integer>();
+	private HashMap<File, Long> footprints = new HashMap<File, Long>();
+
+	// the scheduler that the kept results are held against, or null if there is no heap budget
+	private HeapBudgetScheduler scheduler = null;
+
+
+	/**
+	 * Find the copies among the given files, by hashing their content (see FileUtils.groupByContent)
+	 * @param files the excel files, in the order they are processed
+	 * @param threads the number of threads that hash the files
+	 * @throws IOException if a file cannot be read
+	 */
+	public DuplicateWorkbooks(File[] files, int threads) throws IOException {
+		for (List<File> group : FileUtils.groupByContent(files, threads)) {
+			if(group.size()<2)
+				continue;
+
+			File original = group.get(0);
+			List<File> later = new ArrayList<File>(group.subList(1, group.size()));
+			copies.put(original, later);
+			for (File copy : later) {
+				originals.put(copy, original);
+			}
+		}
+	}
+
+
+	/**
+	 * @param scheduler the scheduler of the heap budget that the kept results are held against, or null if there is no heap budget
+	 */
+	public void setScheduler(HeapBudgetScheduler scheduler) {
+		this.scheduler = scheduler;
+	}
+
+
+	/**
+	 * @param file an excel file
+	 * @return true if an earlier file has the same content, thus the given file does not need to be processed
+	 */
+	public boolean isCopy(File file) {
+		return originals.containsKey(file);
+	}
+
+	/**
+	 * @param file an excel file
+	 * @return the later files with the same content, in order. an empty list, if there are none
+	 */
+	public List<File> getCopies(File file) {
+		List<File> later = copies.get(file);
+		return later==null ? new ArrayList<File>() : later;
+	}
+
+	/**
+	 * @return the number of files that have the same content as an earlier file
+	 */
+	public int getCopyCount() {
+		return originals.size();
+	}
+
+
+	/**
+	 * Keep the result of a file until its copies are handled. This is called in the order of the files.
+	 * With a heap budget, the estimated footprint of the file is held against the budget, while the result is kept.
+	 * @param file the excel file, which is not a copy
+	 * @param result the result for the file, or null if the task failed
+	 * @param error the exception thrown by the task, or null if it completed
+	 */
+	public void keep(File file, T result, Exception error) {
+		if(!copies.containsKey(file))
+			return;
+
+		results.put(file, result);
+		errors.put(file, error);
+		pending.put(file, copies.get(file).size());
+
+		// the size of the result is estimated by the footprint of the workbook, whose cells it holds
+		if(scheduler!=null && result!=null){
+			long footprint = HeapBudgetScheduler.getFootprint(file);
+			footprints.put(file, footprint);
+			scheduler.hold(footprint);
+		}
+	}
+
+	/**
+	 * Take the result of the first file with the same content as the given copy.
+	 * The result is released once all the copies of the file are handled.
+	 * @param copy the excel file, which is a copy
+	 * @return the result for the first file with the same content
+	 * @throws Exception the exception thrown by the task for the first file, or if the first file was not handled yet
+	 */
+	public T take(File copy) throws Exception {
+		File original = originals.get(copy);
+		if(original==null || !pending.containsKey(original)){
+			throw new Exception("The file \""+copy.getName()+"\" is handled before the file with the same content.");
+		}
+
+		T result = results.get(original);
+		Exception error = errors.get(original);
+
+		int left = pending.get(original) - 1;
+		if(left>0){
+			pending.put(original, left);
+		}else{
+			pending.remove(original);
+			results.remove(original);
+			errors.remove(original);
+			Long footprint = footprints.remove(original);
+			if(footprint!=null){
+				scheduler.unhold(footprint);
+			}
+		}
+
+		if(error!=null)
+			throw error;
+		return result;
+	}
+}
@@ -0,0 +1,269 @@
+/**
+ * 
+ */
+package de.tudresden.xr.export;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Records the progress of a long export, so that an aborted export (e.g., the JVM ran out of memory, or the machine was rebooted)
+ * is resumed, instead of starting over.
+ * <p>
+ * The checkpoint file beside the export file (e.g., annotations.csv.checkpoint.csv) is a log that is only appended to.
+ * Periodically, the export file is synced to the disk, and then the names of the workbooks completed since the last checkpoint
+ * are appended to the log, followed by the number of bytes of the export file that hold their rows (i.e., the committed offset).
+ * The offset line ends with the CRC32 checksum of the names before it and the offset, so that a record that was cut by a crash
+ * (e.g., "Offset,12" instead of "Offset,1234567,...") is not taken as committed.
+ * Thus, the workbooks before the last valid offset in the log are completed, and their rows are in the export file up to that offset.
+ * To resume, the export file is cut at the committed offset, and the export continues with the workbooks that are not completed.
+ * Once the export is complete, the checkpoint file is deleted.
+ * <p>
+ * Every export is checkpointed, while the checkpoint of an aborted export is read only when the export is resumed (i.e., with -resume).
+ * Thus, an export that was started without -resume can be resumed as well. Otherwise, the checkpoint is replaced, and the export starts over.
+ */
+public class ExportCheckpoint {
+
+	public static final String CHECKPOINT_SUFFIX = ".checkpoint.csv";
+
+	// the time between two checkpoints (in milliseconds)
+	private static final long CHECKPOINT_INTERVAL = 10000;
+
+	private File exportFile;
+	private File checkpointFile;
+	private String options;
+
+	// the completed workbooks, and the committed offset of the export file. a negative offset, when there is no checkpoint
+	private LinkedHashSet<String> completed = new LinkedHashSet<String>();
+	private long offset = -1;
+
+	// the workbooks completed since the last checkpoint
+	private List<String> pending = new ArrayList<String>();
+
+	private SplicingAnnotationWriter<?> writer = null;
+	private FileOutputStream logStream = null;
+	private Writer log = null;
+	private long lastCheckpoint;
+
+
+	/**
+	 * Read the checkpoint of an aborted export, if there is one, and the export is resumed
+	 * @param exportFile the path to the export file
+	 * @param options a description of the options that affect the rows of the export (e.g., "cells csv asMerged").
+	 * an export is resumed only with the same options
+	 * @param resume true to continue from the checkpoint of an aborted export. otherwise, the checkpoint is replaced (see start)
+	 * @throws IOException if the checkpoint cannot be read, it was written with other options, 
+	 * or the export file is shorter than the committed offset
+	 */
+	public ExportCheckpoint(File exportFile, String options, boolean resume) throws IOException {
+		this.exportFile = exportFile;
+		this.checkpointFile = new File(exportFile.getPath() + CHECKPOINT_SUFFIX);
+		this.options = options;
+
+		if(resume && checkpointFile.isFile()){
+			readCheckpoint();
+		}
+	}
+
+
+	/**
+	 * @return true if there is a checkpoint of an aborted export, which is resumed
+	 */
+	public boolean isResumed() {
+		return offset>=0;
+	}
+
+	/**
+	 * @return the number of bytes of the export file that are kept, when the export is resumed
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * @return the number of workbooks that were completed before the checkpoint
+	 */
+	public int getCompletedCount() {
+		return completed.size();
+	}
+
+	/**
+	 * @param files the excel files of the export, in order
+	 * @return the files that were not completed before the checkpoint, in order
+	 */
+	public File[] getRemainingFiles(File[] files) {
+		List<File> remaining = new ArrayList<File>();
+		for (File file : files) {
+			if(!completed.contains(file.getName()))
+				remaining.add(file);
+		}
+		return remaining.toArray(new File[remaining.size()]);
+	}
+
+
+	/**
+	 * Start recording the progress of the export. The checkpoint file is re-written with the completed workbooks, if any,
+	 * so that the workbooks that were logged after the last offset are not taken as completed.
+	 * @param writer the writer of the export file, which is cut at the committed offset, when the export is resumed
+	 * @throws IOException if the checkpoint file cannot be written
+	 */
+	public void start(SplicingAnnotationWriter<?> writer) throws IOException {
+		this.writer = writer;
+
+		File temp = new File(checkpointFile.getPath() + ".tmp");
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8));
+		try{
+			out.write("Checkpoint,\""+options+"\"\n");
+			if(isResumed()){
+				writeRecord(out, completed, offset);
+			}
+		}finally{
+			out.close();
+		}
+		Files.move(temp.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+		this.logStream = new FileOutputStream(checkpointFile, true);
+		this.log = new BufferedWriter(new OutputStreamWriter(logStream, StandardCharsets.UTF_8));
+		this.lastCheckpoint = System.currentTimeMillis();
+	}
+
+
+	/**
+	 * Record a workbook whose rows are written. This is called in the order of the files, after the workbook ends.
+	 * A checkpoint is made, when the last one is old enough.
+	 * @param workbook the excel file
+	 * @throws IOException if the checkpoint cannot be made
+	 */
+	public void completed(File workbook) throws IOException {
+		pending.add(workbook.getName());
+		if(System.currentTimeMillis() - lastCheckpoint >= CHECKPOINT_INTERVAL){
+			checkpoint();
+		}
+	}
+
+
+	/**
+	 * Sync the export file to the disk, and then log the workbooks completed since the last checkpoint, and the committed offset
+	 * @throws IOException if the export file cannot be synced, or the checkpoint cannot be written
+	 */
+	public void checkpoint() throws IOException {
+		if(log==null || pending.isEmpty())
+			return;
+
+		// the rows are on the disk before the checkpoint refers to them
+		long committed = writer.getOffset();
+		writer.sync();
+
+		writeRecord(log, pending, committed);
+		log.flush();
+		logStream.getFD().sync();
+
+		pending.clear();
+		lastCheckpoint = System.currentTimeMillis();
+	}
+
+
+	/**
+	 * Delete the checkpoint file, once the export is complete, and the export file is closed
+	 * @throws IOException if the checkpoint file cannot be deleted
+	 */
+	public void delete() throws IOException {
+		close();
+		if(checkpointFile.exists() && !checkpointFile.delete()){
+			throw new IOException("The checkpoint file \""+checkpointFile.getPath()+"\" cannot be deleted.");
+		}
+	}
+
+	/**
+	 * Close the checkpoint file, and keep it for resuming the export (e.g., when the export was aborted)
+	 * @throws IOException if the checkpoint file cannot be closed
+	 */
+	public void close() throws IOException {
+		if(log!=null){
+			log.close();
+			log = null;
+		}
+	}
+
+
+	/**
+	 * Write the names of the completed workbooks, followed by the committed offset and the checksum of the record
+	 * @param out the writer of the checkpoint file
+	 * @param fileNames the names of the completed workbooks
+	 * @param committed the committed offset of the export file
+	 * @throws IOException if the record cannot be written
+	 */
+	private static void writeRecord(Writer out, Collection<String> fileNames, long committed) throws IOException {
+		CRC32 crc = new CRC32();
+		for (String fileName : fileNames) {
+			String line = "\""+fileName+"\"\n";
+			out.write(line);
+			crc.update(line.getBytes(StandardCharsets.UTF_8));
+		}
+		String line = "Offset,"+committed;
+		crc.update(line.getBytes(StandardCharsets.UTF_8));
+		out.write(line+","+Long.toHexString(crc.getValue())+"\n");
+	}
+
+
+	/**
+	 * Read the completed workbooks, up to the last committed offset. The log is read up to its last line break, 
+	 * and up to the first record that does not verify, since only the end of the log can be cut by a crash.
+	 * @throws IOException if the checkpoint cannot be read, it was written with other options, 
+	 * or the export file is shorter than the committed offset
+	 */
+	private void readCheckpoint() throws IOException {
+
+		String content = new String(Files.readAllBytes(checkpointFile.toPath()), StandardCharsets.UTF_8);
+		String[] lines = content.substring(0, content.lastIndexOf('\n') + 1).split("\n");
+		if(!lines[0].equals("Checkpoint,\""+options+"\"")){
+			throw new IOException("The checkpoint \""+checkpointFile.getPath()+"\" belongs to an export with other options. "
+					+ "Delete it, to start the export over.");
+		}
+
+		List<String> logged = new ArrayList<String>();
+		CRC32 crc = new CRC32();
+		for (int i = 1; i < lines.length; i++) {
+			String line = lines[i];
+			if(line.startsWith("\"") && line.endsWith("\"") && line.length()>1){
+				logged.add(line.substring(1, line.length() - 1));
+				crc.update((line+"\n").getBytes(StandardCharsets.UTF_8));
+				continue;
+			}
+
+			// the offset, and the checksum of the record
+			int end = line.lastIndexOf(',');
+			if(!line.startsWith("Offset,") || end<"Offset,".length())
+				break;
+			crc.update(line.substring(0, end).getBytes(StandardCharsets.UTF_8));
+			try{
+				if(Long.parseLong(line.substring(end + 1), 16)!=crc.getValue())
+					break;
+				offset = Long.parseLong(line.substring("Offset,".length(), end));
+			}catch(NumberFormatException nfEx){
+				break;
+			}
+			completed.addAll(logged);
+			logged.clear();
+			crc.reset();
+		}
+		// the workbooks logged after the last valid offset are not completed
+
+		if(isResumed() && (!exportFile.isFile() || exportFile.length() < offset)){
+			throw new IOException("The export file \""+exportFile.getPath()+"\" is missing, or it is shorter than the "+offset
+					+ " bytes committed by the checkpoint \""+checkpointFile.getPath()+"\". Delete the checkpoint, to start the export over.");
+		}
+	}
+}
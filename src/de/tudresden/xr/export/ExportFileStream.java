@@ -0,0 +1,152 @@
+/**
+ * 
+ */
+package de.tudresden.xr.export;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The output stream of an export file. The bytes are buffered, or compressed in parallel (gzip),
+ * and the file is synced to the disk when the stream is closed. The CRC32 checksum of the file is computed as its bytes are written.
+ */
+public class ExportFileStream extends OutputStream {
+
+	// the size of the output buffer, in bytes
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private FileOutputStream fos;
+	private CheckedOutputStream checked;
+	private OutputStream out;
+	private ParallelGzipOutputStream gzip = null;
+	private long count = 0;
+
+
+	/**
+	 * Create the export file (replacing any existing file)
+	 * @param file the path to the export file
+	 * @param compress true to write the file as a gzip stream
+	 * @throws IOException if the file cannot be created
+	 */
+	public ExportFileStream(File file, boolean compress) throws IOException {
+		this.fos = new FileOutputStream(file);
+		// the checksum is of the bytes in the file, i.e., after the compression
+		this.checked = new CheckedOutputStream(fos, new CRC32());
+		if(compress){
+			this.gzip = new ParallelGzipOutputStream(checked);
+			this.out = gzip;
+		}else{
+			this.out = new BufferedOutputStream(checked, BUFFER_SIZE);
+		}
+	}
+
+
+	/**
+	 * Open an existing (uncompressed) export file, drop its bytes after the given offset, and append to it (see ExportCheckpoint)
+	 * @param file the path to the export file
+	 * @param offset the number of bytes to keep
+	 * @throws IOException if the file cannot be opened, or it is shorter than the offset
+	 */
+	public ExportFileStream(File file, long offset) throws IOException {
+		if(!file.isFile() || file.length() < offset){
+			throw new IOException("The export file \""+file.getPath()+"\" is missing, or it is shorter than the "+offset+" bytes to keep.");
+		}
+		this.fos = new FileOutputStream(file, true);
+		fos.getChannel().truncate(offset);
+		this.checked = new CheckedOutputStream(fos, new CRC32());
+		this.out = new BufferedOutputStream(checked, BUFFER_SIZE);
+		this.count = offset;
+	}
+
+
+	/**
+	 * @return the number of bytes written to the stream so far (before the compression)
+	 */
+	public long getCount() {
+		return count;
+	}
+
+
+	/**
+	 * @return the CRC32 checksum of the bytes written to the file by this stream (after the compression). 
+	 * it is the checksum of the whole file once the stream is closed, unless the stream appends to an existing file
+	 */
+	public long getChecksum() {
+		return checked.getChecksum().getValue();
+	}
+
+
+	/**
+	 * Copy a range of bytes from another file to the stream
+	 * @param source the other file
+	 * @param offset the position of the first byte to copy
+	 * @param length the number of bytes to copy
+	 * @throws IOException if the other file ends before the range, or the bytes cannot be copied
+	 */
+	public void transferFrom(FileChannel source, long offset, long length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(length, 1 << 16));
+		long position = offset;
+		long end = offset + length;
+		while(position < end){
+			buffer.clear();
+			buffer.limit((int) Math.min(buffer.capacity(), end - position));
+			int read = source.read(buffer, position);
+			if(read<0){
+				throw new IOException("The file ends before the bytes "+offset+" to "+end+" can be copied.");
+			}
+			write(buffer.array(), 0, read);
+			position += read;
+		}
+	}
+
+
+	@Override
+	public void write(int b) throws IOException {
+		out.write(b);
+		count++;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		out.write(b, off, len);
+		count += len;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	/**
+	 * Write the buffered bytes, and sync the file to the disk. For a compressed file, the blocks in flight are compressed and written, 
+	 * while the current (partial) block is kept, thus the file is not a complete gzip stream until it is closed.
+	 * @throws IOException if the bytes cannot be written
+	 */
+	public void sync() throws IOException {
+		if(gzip!=null){
+			gzip.drain();
+		}
+		out.flush();
+		fos.getFD().sync();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try{
+			if(gzip!=null){
+				gzip.finish();
+			}
+			out.flush();
+			fos.getFD().sync();
+		}finally{
+			out.close();
+		}
+	}
+}
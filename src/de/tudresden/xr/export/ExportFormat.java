@@ -0,0 +1,48 @@
+/**
+ * 
+ */
+package de.tudresden.xr.export;
+
+/**
+ * The file formats of the annotations export
+ */
+public enum ExportFormat {
+	
+	/**
+	 * a csv file, with a header row (the default)
+	 */
+	CSV(".csv"),
+	
+	/**
+	 * an Apache Arrow IPC file, with dictionary encoded string columns
+	 */
+	ARROW(".arrow"),
+	
+	/**
+	 * a compact binary file, with dictionary encoded names and delta encoded coordinates (see BinaryCellAnnotationWriter)
+	 */
+	BINARY(".bin"),
+	
+	/**
+	 * a json lines file, with one document per workbook that nests its sheets, tables, and ranges 
+	 * (see JsonlRangeAnnotationWriter). Only for the range annotations.
+	 */
+	JSONL(".jsonl");
+	
+	
+	/**
+	 * The extension of the export files in this format
+	 */
+	private final String extension;
+	
+	private ExportFormat(String extension){
+		this.extension = extension;
+	}
+	
+	/**
+	 * @return the extension of the export files in this format (e.g., ".csv")
+	 */
+	public String getExtension() {
+		return extension;
+	}
+}
@@ -0,0 +1,195 @@
+/**
+ * 
+ */
+package de.tudresden.xr.export;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * The manifest of a sharded export. It lists the part files in the order of the excel files, together with
+ * the names of the excel files in each part, the number of rows (i.e., records), and the CRC32 checksum of the part file.
+ * The manifest is stored as a csv file in the export directory, with the excel files of a part separated by "/"
+ * (a character that cannot occur in a file name).
+ */
+public class ExportManifest {
+
+	public static final String FILE_NAME = "manifest.csv";
+
+	/**
+	 * A part file of the export
+	 */
+	public static class Part {
+
+		private String name;
+		private long rows;
+		private long checksum;
+		private List<String> files;
+
+		/**
+		 * @param name the name of the part file (e.g., part-00000.csv)
+		 * @param rows the number of rows (records) in the part
+		 * @param checksum the CRC32 checksum of the part file
+		 * @param files the names of the excel files in the part, in order
+		 */
+		public Part(String name, long rows, long checksum, List<String> files) {
+			this.name = name;
+			this.rows = rows;
+			this.checksum = checksum;
+			this.files = files;
+		}
+
+		/**
+		 * @return the name of the part file (e.g., part-00000.csv)
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return the number of rows (records) in the part
+		 */
+		public long getRows() {
+			return rows;
+		}
+
+		/**
+		 * @return the CRC32 checksum of the part file
+		 */
+		public long getChecksum() {
+			return checksum;
+		}
+
+		/**
+		 * @return the names of the excel files in the part, in order
+		 */
+		public List<String> getFiles() {
+			return files;
+		}
+	}
+
+
+	private List<Part> parts = new ArrayList<Part>();
+
+
+	/**
+	 * @param part the next part of the export
+	 */
+	public void addPart(Part part) {
+		parts.add(part);
+	}
+
+	/**
+	 * @return the parts of the export, in the order of the excel files
+	 */
+	public List<Part> getParts() {
+		return parts;
+	}
+
+
+	/**
+	 * Write the manifest to the given directory. The previous manifest is replaced only once the new one is complete.
+	 * @param directory the export directory
+	 * @throws IOException if the manifest cannot be written
+	 */
+	public void write(File directory) throws IOException {
+
+		File temp = new File(directory, FILE_NAME + ".tmp");
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8));
+		try{
+			writer.write("Part,Rows,Checksum,Files\n");
+			for (Part part : parts) {
+				StringBuilder sb = new StringBuilder();
+				for (String file : part.getFiles()) {
+					if(sb.length()>0)
+						sb.append("/");
+					sb.append(file);
+				}
+				writer.write(part.getName()+","+part.getRows()+","+Long.toHexString(part.getChecksum())+",\""+sb+"\"\n");
+			}
+		}finally{
+			writer.close();
+		}
+		Files.move(temp.toPath(), new File(directory, FILE_NAME).toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Read the manifest from the given directory
+	 * @param directory the export directory
+	 * @return the manifest
+	 * @throws IOException if the manifest does not exist, or it cannot be read
+	 */
+	public static ExportManifest read(File directory) throws IOException {
+
+		File file = new File(directory, FILE_NAME);
+		if(!file.exists()){
+			throw new IOException("There is no "+FILE_NAME+" in the directory \""+directory.getPath()+"\".");
+		}
+
+		ExportManifest manifest = new ExportManifest();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+		try{
+			// skip the header row
+			String line = reader.readLine();
+			while((line = reader.readLine())!=null){
+				if(line.isEmpty())
+					continue;
+
+				String[] columns = line.split(",", 4);
+				if(columns.length<4){
+					throw new IOException("The row \""+line+"\" of the manifest is not valid.");
+				}
+				String files = columns[3];
+				if(files.startsWith("\"") && files.endsWith("\"") && files.length()>1){
+					files = files.substring(1, files.length() - 1);
+				}
+				try{
+					manifest.addPart(new Part(columns[0], Long.parseLong(columns[1]), Long.parseLong(columns[2], 16),
+							files.isEmpty() ? new ArrayList<String>() : new ArrayList<String>(Arrays.asList(files.split("/")))));
+				}catch(NumberFormatException nfEx){
+					throw new IOException("The row \""+line+"\" of the manifest is not valid.");
+				}
+			}
+		}finally{
+			reader.close();
+		}
+		return manifest;
+	}
+
+
+	/**
+	 * @param file a part file
+	 * @return the CRC32 checksum of the content of the file
+	 * @throws IOException if the file cannot be read
+	 */
+	public static long checksum(File file) throws IOException {
+
+		CRC32 crc = new CRC32();
+		InputStream is = new FileInputStream(file);
+		try{
+			byte[] buffer = new byte[1 << 16];
+			int read;
+			while((read = is.read(buffer))>=0){
+				crc.update(buffer, 0, read);
+			}
+		}finally{
+			is.close();
+		}
+		return crc.getValue();
+	}
+}
@@ -0,0 +1,227 @@
+/**
+ * 
+ */
+package de.tudresden.xr.export;
+
+/**
+ * The options that control how the annotated files are processed by the exporters
+ */
+public class ExportOptions {
+	
+	private int threads = 1;
+	private boolean virtualThreads = false;
+	private long heapBudget = -1;
+	private ExportFormat format = ExportFormat.CSV;
+	private boolean compress = false;
+	private int shardSize = 0;
+	private boolean rectangles = false;
+	private String database = null;
+	private int transactionSize = 100;
+	private boolean mappedOutput = false;
+	private boolean incremental = false;
+	private boolean deduplicate = false;
+	private boolean watch = false;
+	private boolean resume = false;
+	
+	
+	/**
+	 * @return the number of files to process in parallel. 
+	 * with virtual threads, the number of files that are parsed and scanned at the same time
+	 */
+	public int getThreads() {
+		return threads;
+	}
+	
+	/**
+	 * @param threads the number of files to process in parallel
+	 */
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+	
+	/**
+	 * @return true if each file is processed on its own virtual thread (Java 21 or newer)
+	 */
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+	
+	/**
+	 * @param virtualThreads true to process each file on its own virtual thread (Java 21 or newer)
+	 */
+	public void setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+	
+	/**
+	 * @return the heap budget (in bytes) for the files that are processed at the same time, or a negative value for no budget
+	 */
+	public long getHeapBudget() {
+		return heapBudget;
+	}
+	
+	/**
+	 * @param heapBudget the heap budget (in bytes) for the files that are processed at the same time. use a negative value for no budget
+	 */
+	public void setHeapBudget(long heapBudget) {
+		this.heapBudget = heapBudget;
+	}
+	
+	/**
+	 * @return the format of the export file
+	 */
+	public ExportFormat getFormat() {
+		return format;
+	}
+	
+	/**
+	 * @param format the format of the export file
+	 */
+	public void setFormat(ExportFormat format) {
+		this.format = format;
+	}
+	
+	/**
+	 * @return true if the export file is written as a gzip stream, compressed in parallel
+	 */
+	public boolean isCompress() {
+		return compress;
+	}
+	
+	/**
+	 * @param compress true to write the export file as a gzip stream, compressed in parallel
+	 */
+	public void setCompress(boolean compress) {
+		this.compress = compress;
+	}
+	
+	/**
+	 * @return the number of excel files per part file, or 0 if the export is written to a single file
+	 */
+	public int getShardSize() {
+		return shardSize;
+	}
+	
+	/**
+	 * @param shardSize the number of excel files per part file. use 0 to write the export to a single file
+	 */
+	public void setShardSize(int shardSize) {
+		this.shardSize = shardSize;
+	}
+	
+	/**
+	 * @return true if the valid cells of each annotation are exported as rectangles, instead of one by one
+	 */
+	public boolean isRectangles() {
+		return rectangles;
+	}
+	
+	/**
+	 * @param rectangles true to export the valid cells of each annotation as rectangles, instead of one by one
+	 */
+	public void setRectangles(boolean rectangles) {
+		this.rectangles = rectangles;
+	}
+	
+	/**
+	 * @return the database (a jdbc url, or the path to an SQLite or H2 file) where the annotations are loaded, 
+	 * or null if they are written to an export file
+	 */
+	public String getDatabase() {
+		return database;
+	}
+	
+	/**
+	 * @param database the database (a jdbc url, or the path to an SQLite or H2 file) where the annotations are loaded. 
+	 * use null to write the annotations to an export file
+	 */
+	public void setDatabase(String database) {
+		this.database = database;
+	}
+	
+	/**
+	 * @return the number of excel files whose annotations are loaded in one transaction of the database
+	 */
+	public int getTransactionSize() {
+		return transactionSize;
+	}
+	
+	/**
+	 * @param transactionSize the number of excel files whose annotations are loaded in one transaction of the database
+	 */
+	public void setTransactionSize(int transactionSize) {
+		this.transactionSize = transactionSize;
+	}
+	
+	/**
+	 * @return true if the rows are encoded by the worker threads into a memory-mapped spill file, before they are written in order
+	 */
+	public boolean isMappedOutput() {
+		return mappedOutput;
+	}
+	
+	/**
+	 * @param mappedOutput true to encode the rows on the worker threads into a memory-mapped spill file (csv exports only)
+	 */
+	public void setMappedOutput(boolean mappedOutput) {
+		this.mappedOutput = mappedOutput;
+	}
+	
+	/**
+	 * @return true if the rows of the unchanged files are copied from the previous export, instead of parsing the files again
+	 */
+	public boolean isIncremental() {
+		return incremental;
+	}
+	
+	/**
+	 * @param incremental true to copy the rows of the unchanged files from the previous export (see IncrementalExport)
+	 */
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+	
+	/**
+	 * @return true if only the first of the files with the same content is processed, and its rows are repeated for the others
+	 */
+	public boolean isDeduplicate() {
+		return deduplicate;
+	}
+	
+	/**
+	 * @param deduplicate true to process the files with the same content once (see DuplicateWorkbooks)
+	 */
+	public void setDeduplicate(boolean deduplicate) {
+		this.deduplicate = deduplicate;
+	}
+	
+	/**
+	 * @return true if the export runs again whenever excel files are added, modified, or deleted in the directory
+	 */
+	public boolean isWatch() {
+		return watch;
+	}
+	
+	/**
+	 * @param watch true to watch the directory, and export the new and modified files as they appear (see DirectoryWatcher).
+	 * the export is incremental
+	 */
+	public void setWatch(boolean watch) {
+		this.watch = watch;
+	}
+	
+	/**
+	 * @return true if an aborted export is continued from its last checkpoint, instead of starting over
+	 */
+	public boolean isResume() {
+		return resume;
+	}
+	
+	/**
+	 * @param resume true to continue an aborted export from its last checkpoint, instead of starting over (see ExportCheckpoint). 
+	 * the checkpoints are written with or without this option
+	 */
+	public void setResume(boolean resume) {
+		this.resume = resume;
+	}
+}
@@ -0,0 +1,17 @@
+/**
+ * 
+ */
+package de.tudresden.xr.export;
+
+/**
+ * A writer of an export file, which computes the checksum of the file as its bytes are written.
+ * Thus, the checksum of a part file (see ShardedAnnotationWriter) does not need another pass over the file.
+ * @param <T> the type of the exported records
+ */
+public interface FileAnnotationWriter<T> extends AnnotationWriter<T> {
+	
+	/**
+	 * @return the CRC32 checksum of the bytes written to the export file (after the compression), once the writer is closed
+	 */
+	public long getChecksum();
+}
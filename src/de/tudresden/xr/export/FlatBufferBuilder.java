@@ -0,0 +1,248 @@
+/**
+ * 
+ */
+package de.tudresden.xr.export;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A minimal encoder for flatbuffers, as used by the metadata of the Apache Arrow IPC format.
+ * As in the reference implementation, the buffer is built back to front: the nested objects (strings, vectors, tables)
+ * are created first, and they are referenced by their offset from the end of the buffer.
+ * All the fields of a table are written, even when they have the default value.
+ */
+class FlatBufferBuilder {
+
+	private byte[] buffer;
+	private int space;
+	private int minAlign = 1;
+
+	// the positions of the fields of the current table
+	private int[] vtable;
+	private int objectStart;
+
+
+	FlatBufferBuilder() {
+		this(256);
+	}
+
+	/**
+	 * @param initialSize the initial capacity of the buffer, in bytes
+	 */
+	FlatBufferBuilder(int initialSize) {
+		this.buffer = new byte[initialSize];
+		this.space = initialSize;
+	}
+
+
+	/**
+	 * @return the number of bytes written so far, i.e., the offset of the last written object from the end of the buffer
+	 */
+	int offset() {
+		return buffer.length - space;
+	}
+
+	/**
+	 * Add padding, so that after writing additionalBytes the next value of the given size is aligned
+	 * @param size the size of the next value, in bytes
+	 * @param additionalBytes the number of bytes that are written before the value
+	 */
+	private void prep(int size, int additionalBytes) {
+		if(size>minAlign){
+			minAlign = size;
+		}
+		int padding = (-(offset() + additionalBytes)) & (size - 1);
+		while(space < padding + size + additionalBytes){
+			// double the buffer. the content stays at its end
+			int length = buffer.length;
+			byte[] grown = new byte[2 * length];
+			System.arraycopy(buffer, 0, grown, length, length);
+			buffer = grown;
+			space += length;
+		}
+		space -= padding;
+	}
+
+	private void putByte(int value) {
+		buffer[--space] = (byte) value;
+	}
+
+	private void putShort(int value) {
+		putByte(value >> 8);
+		putByte(value);
+	}
+
+	private void putInt(int value) {
+		putByte(value >> 24);
+		putByte(value >> 16);
+		putByte(value >> 8);
+		putByte(value);
+	}
+
+	private void putLong(long value) {
+		putInt((int) (value >> 32));
+		putInt((int) value);
+	}
+
+
+	/**
+	 * Write a reference to an object that was already created
+	 * @param offset the offset of the object, as returned when it was created
+	 */
+	private void putOffset(int offset) {
+		prep(4, 0);
+		putInt(offset() + 4 - offset);
+	}
+
+
+	/**
+	 * @param value a string
+	 * @return the offset of the encoded (utf-8, zero terminated) string
+	 */
+	int createString(String value) {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		prep(4, bytes.length + 1);
+		putByte(0);
+		space -= bytes.length;
+		System.arraycopy(bytes, 0, buffer, space, bytes.length);
+		putInt(bytes.length);
+		return offset();
+	}
+
+	/**
+	 * @param offsets the offsets of the objects (e.g., tables), in the order of the vector
+	 * @return the offset of the vector
+	 */
+	int createVector(int[] offsets) {
+		prep(4, 4 * offsets.length);
+		for (int i = offsets.length - 1; i >= 0; i--) {
+			putOffset(offsets[i]);
+		}
+		putInt(offsets.length);
+		return offset();
+	}
+
+	/**
+	 * Create a vector of structs, where each struct consists of two longs (e.g., the FieldNode and Buffer structs of Arrow)
+	 * @param values the values of the structs, two per struct
+	 * @return the offset of the vector
+	 */
+	int createLongPairVector(long[] values) {
+		prep(4, 8 * values.length);
+		prep(8, 8 * values.length);
+		for (int i = values.length - 1; i >= 0; i--) {
+			putLong(values[i]);
+		}
+		putInt(values.length / 2);
+		return offset();
+	}
+
+	/**
+	 * Create a vector of the Block struct of Arrow (offset:long, metaDataLength:int, bodyLength:long)
+	 * @param blocks the blocks, each as an array of its three values
+	 * @return the offset of the vector
+	 */
+	int createBlockVector(List<long[]> blocks) {
+		int count = blocks.size();
+		prep(4, 24 * count);
+		prep(8, 24 * count);
+		for (int i = count - 1; i >= 0; i--) {
+			long[] block = blocks.get(i);
+			putLong(block[2]);
+			space -= 4; // the padding before the long
+			putInt((int) block[1]);
+			putLong(block[0]);
+		}
+		putInt(count);
+		return offset();
+	}
+
+
+	/**
+	 * Start a new table. The nested objects must be created before the table is started.
+	 * @param fields the number of fields of the table
+	 */
+	void startTable(int fields) {
+		vtable = new int[fields];
+		objectStart = offset();
+	}
+
+	void addByte(int field, int value) {
+		prep(1, 0);
+		putByte(value);
+		vtable[field] = offset();
+	}
+
+	void addBoolean(int field, boolean value) {
+		addByte(field, value ? 1 : 0);
+	}
+
+	void addShort(int field, int value) {
+		prep(2, 0);
+		putShort(value);
+		vtable[field] = offset();
+	}
+
+	void addInt(int field, int value) {
+		prep(4, 0);
+		putInt(value);
+		vtable[field] = offset();
+	}
+
+	void addLong(int field, long value) {
+		prep(8, 0);
+		putLong(value);
+		vtable[field] = offset();
+	}
+
+	/**
+	 * @param field the index of the field
+	 * @param offset the offset of the referenced object (string, vector, or table)
+	 */
+	void addOffset(int field, int offset) {
+		putOffset(offset);
+		vtable[field] = offset();
+	}
+
+	/**
+	 * Finish the current table, and write its vtable (in front of it)
+	 * @return the offset of the table
+	 */
+	int endTable() {
+		prep(4, 0);
+		putInt(0);
+		int objectOffset = offset();
+
+		for (int i = vtable.length - 1; i >= 0; i--) {
+			putShort(vtable[i]!=0 ? objectOffset - vtable[i] : 0);
+		}
+		putShort(objectOffset - objectStart);
+		putShort((vtable.length + 2) * 2);
+
+		// the table refers to its vtable, which precedes it
+		int vtableOffset = offset();
+		int position = buffer.length - objectOffset;
+		int distance = vtableOffset - objectOffset;
+		buffer[position] = (byte) distance;
+		buffer[position + 1] = (byte) (distance >> 8);
+		buffer[position + 2] = (byte) (distance >> 16);
+		buffer[position + 3] = (byte) (distance >> 24);
+
+		vtable = null;
+		return objectOffset;
+	}
+
+
+	/**
+	 * Finish the buffer with a reference to the root table
+	 * @param root the offset of the root table
+	 * @return the encoded flatbuffer
+	 */
+	byte[] finish(int root) {
+		prep(minAlign, 4);
+		putOffset(root);
+		return Arrays.copyOfRange(buffer, space, buffer.length);
+	}
+}
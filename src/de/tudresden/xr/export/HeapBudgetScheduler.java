@@ -0,0 +1,251 @@
+/**
+ * 
+ */
+package de.tudresden.xr.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.PriorityQueue;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.poi.poifs.filesystem.FileMagic;
+
+import de.tudresden.xr.utils.WorkbookUtils;
+
+/**
+ * Admits the processing of files only while the sum of their estimated heap footprints stays under the given budget.
+ * The files that wait for admission are started largest first, so that the big files do not pile up at the end of the run.
+ * A file that alone exceeds the budget is admitted when no other file is in process.
+ * <p>
+ * The scheduler either gates the tasks that already run on their own threads (see gate), or it holds the jobs of the files
+ * until the worker threads take them (see submit and work). Thus, with a pool of worker threads, the files wait in the scheduler,
+ * rather than in the queue of the pool, and the largest of them is started first. A scheduler is used in one of the two ways only.
+ * <p>
+ * The results that are kept after their files are processed (see DuplicateWorkbooks) are held against the budget as well (see hold).
+ * They delay the admission of the next files, but a file is still admitted when no other file is in process, so the run never stalls.
+ */
+public class HeapBudgetScheduler {
+
+	/**
+	 * A file that waits for admission
+	 */
+	private static class Ticket implements Comparable<Ticket> {
+		long footprint;
+		long sequence;
+		Runnable job;
+
+		Ticket(long footprint, long sequence, Runnable job) {
+			this.footprint = footprint;
+			this.sequence = sequence;
+			this.job = job;
+		}
+
+		@Override
+		public int compareTo(Ticket other) {
+			// the largest first. files of equal size in the order of their arrival
+			int result = Long.compare(other.footprint, footprint);
+			return result!=0 ? result : Long.compare(sequence, other.sequence);
+		}
+	}
+
+
+	private long budget;
+	private long inProcess = 0;
+	private long held = 0;
+	private long sequence = 0;
+	private PriorityQueue<Ticket> waiting = new PriorityQueue<Ticket>();
+
+
+	/**
+	 * @param budget the heap budget, in bytes
+	 */
+	public HeapBudgetScheduler(long budget) {
+		this.budget = budget;
+	}
+
+
+	/**
+	 * Wait until the file with the given footprint is admitted
+	 * @param footprint the estimated heap footprint of the file, in bytes
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	public synchronized void acquire(long footprint) throws InterruptedException {
+
+		Ticket ticket = new Ticket(footprint, sequence++, null);
+		waiting.add(ticket);
+		try{
+			while(waiting.peek()!=ticket || !fits(footprint)){
+				wait();
+			}
+		}catch(InterruptedException iEx){
+			waiting.remove(ticket);
+			notifyAll();
+			throw iEx;
+		}
+
+		waiting.poll();
+		inProcess += footprint;
+
+		// the next file in line might fit as well
+		notifyAll();
+	}
+
+
+	/**
+	 * Release the budget that was held by a file, once it is processed
+	 * @param footprint the estimated heap footprint of the file, in bytes
+	 */
+	public synchronized void release(long footprint) {
+		inProcess -= footprint;
+		notifyAll();
+	}
+
+
+	/**
+	 * Hold a part of the budget for a result that is kept in memory, after its file is processed. This does not wait for admission,
+	 * as the result is already in memory. The budget is released by unhold.
+	 * @param footprint the estimated heap footprint of the result, in bytes
+	 */
+	public synchronized void hold(long footprint) {
+		held += footprint;
+	}
+
+
+	/**
+	 * Release the budget that was held by a result, once it is dropped
+	 * @param footprint the estimated heap footprint of the result, in bytes
+	 */
+	public synchronized void unhold(long footprint) {
+		held -= footprint;
+		notifyAll();
+	}
+
+
+	/**
+	 * @param footprint the estimated heap footprint of a file
+	 * @return true if the file can be admitted. a file that alone exceeds the budget is admitted, when no other file is in process
+	 */
+	private boolean fits(long footprint) {
+		return inProcess==0 || inProcess + held + footprint <= budget;
+	}
+
+
+	/**
+	 * Queue the job of the given file, until it is admitted and taken by a worker thread (see work)
+	 * @param file the excel file, whose footprint is estimated here
+	 * @param job the work that is done for the file. it must not throw (e.g., a FutureTask)
+	 */
+	public void submit(File file, Runnable job) {
+		long footprint = getFootprint(file);
+		synchronized(this){
+			waiting.add(new Ticket(footprint, sequence++, job));
+			notifyAll();
+		}
+	}
+
+
+	/**
+	 * Run the admitted jobs, largest first, on the calling (worker) thread. This method returns only when the thread is interrupted.
+	 */
+	public void work() {
+		while(true){
+			Ticket ticket;
+			try{
+				ticket = take();
+			}catch(InterruptedException iEx){
+				// the pool is shut down
+				return;
+			}
+			try{
+				ticket.job.run();
+			}finally{
+				release(ticket.footprint);
+			}
+		}
+	}
+
+
+	/**
+	 * Wait until the largest queued job fits in the budget, and admit it
+	 * @return the admitted job
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 */
+	private synchronized Ticket take() throws InterruptedException {
+		while(waiting.isEmpty() || !fits(waiting.peek().footprint)){
+			wait();
+		}
+		Ticket ticket = waiting.poll();
+		inProcess += ticket.footprint;
+		return ticket;
+	}
+
+
+	/**
+	 * Wrap the given task, so that it runs only when the file is admitted by this scheduler. 
+	 * The footprint of a file includes its size, as the task holds the content of the file in memory (see OrderedWorkbookExecutor.runVirtual).
+	 * @param task the work that is done for each file
+	 * @return the task, bound by the heap budget
+	 */
+	public <T> OrderedWorkbookExecutor.WorkbookTask<T> gate(final OrderedWorkbookExecutor.WorkbookTask<T> task) {
+		return new OrderedWorkbookExecutor.WorkbookTask<T>() {
+			@Override
+			public T process(File file) throws Exception {
+				long footprint = getFootprint(file) + file.length();
+				acquire(footprint);
+				try{
+					return task.process(file);
+				}finally{
+					release(footprint);
+				}
+			}
+		};
+	}
+
+
+	/**
+	 * @param file the excel file
+	 * @return the estimated heap footprint of the file, or the size of the file if it is not a valid zip 
+	 * (the error is reported by the task)
+	 */
+	static long getFootprint(File file) {
+		try{
+			return estimateFootprint(file);
+		}catch(IOException ioEx){
+			return file.length();
+		}
+	}
+
+
+	/**
+	 * Estimate the heap footprint of the given excel file. For .xlsx files this is the uncompressed size of the worksheets
+	 * and the shared strings table, as recorded in the central directory of the zip file (i.e., without inflating anything).
+	 * For .xls files it is the size of the file.
+	 *
+	 * @param excelFile a generic File object that provides access to the Excel file
+	 * @return the estimated footprint, in bytes
+	 * @throws IOException if the file cannot be read
+	 */
+	public static long estimateFootprint(File excelFile) throws IOException {
+
+		if(WorkbookUtils.getFileMagic(excelFile)!=FileMagic.OOXML)
+			return excelFile.length();
+
+		long footprint = 0;
+		ZipFile zip = new ZipFile(excelFile);
+		try{
+			Enumeration<? extends ZipEntry> entries = zip.entries();
+			while(entries.hasMoreElements()){
+				ZipEntry entry = entries.nextElement();
+				String name = entry.getName().toLowerCase();
+				if(name.startsWith("xl/worksheets/") || name.equals("xl/sharedstrings.xml")){
+					footprint += entry.getSize() < 0 ? entry.getCompressedSize() : entry.getSize();
+				}
+			}
+		}finally{
+			zip.close();
+		}
+		return footprint;
+	}
+}
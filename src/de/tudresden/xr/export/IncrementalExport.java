@@ -0,0 +1,279 @@
+/**
+ * 
+ */
+package de.tudresden.xr.export;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import de.tudresden.xr.utils.FileUtils;
+
+/**
+ * Re-uses the rows of the previous export for the workbooks that did not change since then.
+ * <p>
+ * The manifest beside the export file (e.g., annotations.csv.manifest.csv) records, for each workbook, its size,
+ * its modification time, and the SHA-256 hash of its content, together with the range of bytes of its rows in the export file.
+ * When the export is run again, the previous export file is kept aside (e.g., annotations.csv.previous). A workbook with the
+ * same size and modification time, or with the same size and hash, is not parsed again. Instead, its rows are copied
+ * from the previous export file. The rows of the workbooks that no longer exist are dropped, since only the current
+ * workbooks are exported. Once the export is complete, the new manifest replaces the previous one, and the previous export file is deleted.
+ * If the export is aborted, the previous export file and manifest are kept, and they are used by the next run.
+ * The manifest also records the size and the modification time of the export file, so that an export file that was replaced
+ * since then (e.g., by a run without -incremental) is not used.
+ */
+public class IncrementalExport {
+
+	public static final String MANIFEST_SUFFIX = ".manifest.csv";
+	public static final String PREVIOUS_SUFFIX = ".previous";
+
+	// the header row of the workbooks in the manifest. a manifest with another header (e.g., with CRC32 checksums) is not used
+	private static final String HEADER = "File,Size,Modified,Hash,Offset,Length";
+
+	/**
+	 * A workbook, and the range of bytes of its rows in an export file
+	 */
+	private static class Entry {
+		long size;
+		long modified;
+		String hash;
+		long offset;
+		long length;
+
+		Entry(long size, long modified, String hash, long offset, long length) {
+			this.size = size;
+			this.modified = modified;
+			this.hash = hash;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+
+
+	private File exportFile;
+	private File manifestFile;
+	private File previousFile;
+	private String options;
+
+	// the workbooks of the previous export, and the file that holds their rows
+	private Map<String, Entry> previous = new HashMap<String, Entry>();
+	private RandomAccessFile previousRows = null;
+
+	// the workbooks checked by the worker threads. the offset of an unchanged workbook is its offset in the previous export file
+	private ConcurrentHashMap<String, Entry> checked = new ConcurrentHashMap<String, Entry>();
+	private ConcurrentHashMap<String, Boolean> unchanged = new ConcurrentHashMap<String, Boolean>();
+
+	// the workbooks of this export, in order
+	private Map<String, Entry> exported = new LinkedHashMap<String, Entry>();
+
+
+	/**
+	 * Keep the previous export file aside, and read its manifest. This is done before the new export file is created.
+	 * @param exportFile the path to the export file
+	 * @param options a description of the options that affect the rows of the export (e.g., "cells csv asMerged").
+	 * the previous export is re-used only if it was written with the same options
+	 * @throws IOException if the previous export file cannot be moved, or its manifest cannot be read
+	 */
+	public IncrementalExport(File exportFile, String options) throws IOException {
+		this.exportFile = exportFile;
+		this.manifestFile = new File(exportFile.getPath() + MANIFEST_SUFFIX);
+		this.previousFile = new File(exportFile.getPath() + PREVIOUS_SUFFIX);
+		this.options = options;
+
+		// an existing previous export file means that the last run was aborted, and the export file is incomplete
+		if(!previousFile.exists() && exportFile.isFile()){
+			Files.move(exportFile.toPath(), previousFile.toPath());
+		}
+
+		if(previousFile.isFile() && manifestFile.isFile()){
+			if(readManifest()){
+				this.previousRows = new RandomAccessFile(previousFile, "r");
+			}else{
+				previous.clear();
+			}
+		}
+	}
+
+
+	/**
+	 * Check whether the given workbook changed since the previous export. This method is called by the worker threads.
+	 * @param workbook the excel file
+	 * @return true if the workbook did not change, thus its rows are copied from the previous export (see splice)
+	 * @throws IOException if the workbook cannot be read
+	 */
+	public boolean check(File workbook) throws IOException {
+
+		long size = workbook.length();
+		long modified = workbook.lastModified();
+		Entry old = previous.get(workbook.getName());
+		if(old!=null && old.size==size && old.modified==modified){
+			checked.put(workbook.getName(), old);
+			unchanged.put(workbook.getName(), Boolean.TRUE);
+			return true;
+		}
+
+		// the workbook was touched, or it is new. it is not read again, when its content is in memory (see WorkbookContent)
+		String hash = FileUtils.getContentHash(workbook);
+		if(old!=null && old.size==size && old.hash.equals(hash)){
+			checked.put(workbook.getName(), new Entry(size, modified, hash, old.offset, old.length));
+			unchanged.put(workbook.getName(), Boolean.TRUE);
+			return true;
+		}
+		checked.put(workbook.getName(), new Entry(size, modified, hash, -1, -1));
+		unchanged.remove(workbook.getName());
+		return false;
+	}
+
+	/**
+	 * Check whether the given workbook, and the copies whose rows are taken from it (see DuplicateWorkbooks), changed since the 
+	 * previous export. The workbook is parsed again when any of its copies changed. This method is called by the worker threads.
+	 * @param workbook the excel file
+	 * @param copies the later excel files with the same content, which are checked here, before they are handled
+	 * @return true if neither the workbook nor its copies changed
+	 * @throws IOException if a workbook cannot be read
+	 */
+	public boolean check(File workbook, List<File> copies) throws IOException {
+		boolean unchanged = check(workbook);
+		for (File copy : copies) {
+			unchanged = check(copy) && unchanged;
+		}
+		return unchanged;
+	}
+
+	/**
+	 * @param workbook the excel file
+	 * @return true if the workbook was checked, and it did not change since the previous export
+	 */
+	public boolean isUnchanged(File workbook) {
+		return unchanged.containsKey(workbook.getName());
+	}
+
+	/**
+	 * Copy the rows of an unchanged workbook from the previous export file
+	 * @param workbook the excel file
+	 * @param writer the writer of the export file
+	 * @throws IOException if the rows cannot be copied
+	 */
+	public void splice(File workbook, SplicingAnnotationWriter<?> writer) throws IOException {
+		Entry entry = checked.get(workbook.getName());
+		if(entry==null || !isUnchanged(workbook)){
+			throw new IOException("The workbook \""+workbook.getName()+"\" is not in the previous export.");
+		}
+		writer.splice(previousRows.getChannel(), entry.offset, entry.length);
+	}
+
+	/**
+	 * Record the rows of a workbook in the manifest of this export
+	 * @param workbook the excel file, which was checked
+	 * @param offset the position of the first byte of its rows in the export file
+	 * @param length the number of bytes of its rows
+	 */
+	public void record(File workbook, long offset, long length) {
+		Entry entry = checked.get(workbook.getName());
+		if(entry!=null){
+			exported.put(workbook.getName(), new Entry(entry.size, entry.modified, entry.hash, offset, length));
+		}
+	}
+
+	/**
+	 * @return the number of workbooks whose rows were copied from the previous export
+	 */
+	public int getUnchangedCount() {
+		return unchanged.size();
+	}
+
+
+	/**
+	 * Replace the manifest with the one of this export, and delete the previous export file.
+	 * This is called once the export file is complete, and closed.
+	 * @throws IOException if the manifest cannot be written
+	 */
+	public void commit() throws IOException {
+		close();
+
+		File temp = new File(manifestFile.getPath() + ".tmp");
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8));
+		try{
+			writer.write("Export,\""+options+"\","+exportFile.length()+","+exportFile.lastModified()+"\n");
+			writer.write(HEADER+"\n");
+			for (Map.Entry<String, Entry> e : exported.entrySet()) {
+				Entry entry = e.getValue();
+				writer.write("\""+e.getKey()+"\","+entry.size+","+entry.modified+","+entry.hash
+						+","+entry.offset+","+entry.length+"\n");
+			}
+		}finally{
+			writer.close();
+		}
+		Files.move(temp.toPath(), manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+		if(previousFile.exists() && !previousFile.delete()){
+			throw new IOException("The previous export file \""+previousFile.getPath()+"\" cannot be deleted.");
+		}
+	}
+
+	/**
+	 * Release the previous export file, without replacing the manifest (e.g., when the export was aborted)
+	 * @throws IOException if the previous export file cannot be closed
+	 */
+	public void close() throws IOException {
+		if(previousRows!=null){
+			previousRows.close();
+			previousRows = null;
+		}
+	}
+
+
+	/**
+	 * Read the manifest of the previous export
+	 * @return true if the previous export was written with the same options, it is the export file of the manifest,
+	 * and the manifest records the hashes of the workbooks
+	 * @throws IOException if the manifest cannot be read, or it is not valid
+	 */
+	private boolean readManifest() throws IOException {
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(manifestFile), StandardCharsets.UTF_8));
+		try{
+			String line = reader.readLine();
+			if(line==null || !line.equals("Export,\""+options+"\","+previousFile.length()+","+previousFile.lastModified()))
+				return false;
+
+			if(!HEADER.equals(reader.readLine()))
+				return false;
+			while((line = reader.readLine())!=null){
+				if(line.isEmpty())
+					continue;
+
+				// the file name is quoted, and it may contain commas
+				int end = line.lastIndexOf('"');
+				String[] columns = line.substring(end + 1).split(",");
+				if(!line.startsWith("\"") || end<1 || columns.length!=6 || !columns[3].matches("[0-9a-f]{64}")){
+					throw new IOException("The row \""+line+"\" of the manifest \""+manifestFile.getPath()+"\" is not valid.");
+				}
+				try{
+					previous.put(line.substring(1, end), new Entry(Long.parseLong(columns[1]), Long.parseLong(columns[2]),
+							columns[3], Long.parseLong(columns[4]), Long.parseLong(columns[5])));
+				}catch(NumberFormatException nfEx){
+					throw new IOException("The row \""+line+"\" of the manifest \""+manifestFile.getPath()+"\" is not valid.");
+				}
+			}
+		}finally{
+			reader.close();
+		}
+		return true;
+	}
+}
@@ -0,0 +1,189 @@
+/**
+ * 
+ */
+package de.tudresden.xr.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Loads the exported annotations into a table of an embedded database (e.g., SQLite or H2), through jdbc.
+ * The rows are inserted with a prepared statement in batches, and the annotations of a fixed number of excel files
+ * are committed in one transaction. The indexes are built after the load, so the table can be queried right away.
+ * The jdbc driver of the database (e.g., sqlite-jdbc or h2) must be on the classpath.
+ * @param <T> the type of the exported records
+ */
+public abstract class JdbcAnnotationWriter<T> implements AnnotationWriter<T> {
+
+	// the number of rows that are sent to the database at once
+	private static final int BATCH_SIZE = 10000;
+
+	private Connection connection;
+	private PreparedStatement insert;
+	private int workbooksPerTransaction;
+	private int batchRows = 0;
+	private int transactionWorkbooks = 0;
+
+
+	/**
+	 * Open the database, and create the table of the annotations (replacing any existing table)
+	 * @param database a jdbc url, or the path to an SQLite or H2 file (see getUrl)
+	 * @param workbooksPerTransaction the number of excel files whose annotations are committed in one transaction
+	 * @throws IOException if the database cannot be opened, or the table cannot be created
+	 */
+	protected JdbcAnnotationWriter(String database, int workbooksPerTransaction) throws IOException {
+		this.workbooksPerTransaction = Math.max(1, workbooksPerTransaction);
+
+		String url = getUrl(database);
+		try{
+			this.connection = DriverManager.getConnection(url);
+		}catch(SQLException sqlEx){
+			throw new IOException("The database \""+url+"\" cannot be opened (is its jdbc driver on the classpath?):\n"+sqlEx.getMessage(), sqlEx);
+		}
+
+		try{
+			connection.setAutoCommit(false);
+
+			String[] columns = getColumns();
+			StringBuilder create = new StringBuilder("CREATE TABLE ").append(getTableName()).append(" (");
+			StringBuilder insert = new StringBuilder("INSERT INTO ").append(getTableName()).append(" VALUES (");
+			for (int i = 0; i < columns.length; i++) {
+				create.append(i>0 ? ", " : "").append(columns[i]);
+				insert.append(i>0 ? ", " : "").append("?");
+			}
+			create.append(")");
+			insert.append(")");
+
+			Statement statement = connection.createStatement();
+			try{
+				statement.execute("DROP TABLE IF EXISTS "+getTableName());
+				statement.execute(create.toString());
+			}finally{
+				statement.close();
+			}
+			connection.commit();
+
+			this.insert = connection.prepareStatement(insert.toString());
+		}catch(SQLException sqlEx){
+			closeConnection();
+			throw new IOException("The table \""+getTableName()+"\" cannot be created:\n"+sqlEx.getMessage(), sqlEx);
+		}
+	}
+
+
+	/**
+	 * @return the name of the table of the annotations
+	 */
+	protected abstract String getTableName();
+
+	/**
+	 * @return the definitions of the columns of the table (i.e., the name and the type), in the order of the parameters of bind
+	 */
+	protected abstract String[] getColumns();
+
+	/**
+	 * @return the columns of each index of the table (e.g., "file_name, sheet_name, annotation_label")
+	 */
+	protected abstract String[] getIndexes();
+
+	/**
+	 * @param statement the insert statement, whose parameters are the columns of the table
+	 * @param record the annotation to bind to the parameters
+	 * @throws SQLException if a parameter cannot be set
+	 */
+	protected abstract void bind(PreparedStatement statement, T record) throws SQLException;
+
+
+	@Override
+	public void write(T record) throws IOException {
+		try{
+			bind(insert, record);
+			insert.addBatch();
+			if(++batchRows>=BATCH_SIZE){
+				executeBatch();
+			}
+		}catch(SQLException sqlEx){
+			throw new IOException("The annotations cannot be inserted into the table \""+getTableName()+"\":\n"+sqlEx.getMessage(), sqlEx);
+		}
+	}
+
+	@Override
+	public void endWorkbook(String fileName) throws IOException {
+		if(++transactionWorkbooks<workbooksPerTransaction)
+			return;
+
+		try{
+			executeBatch();
+			connection.commit();
+			transactionWorkbooks = 0;
+		}catch(SQLException sqlEx){
+			throw new IOException("The annotations cannot be committed to the table \""+getTableName()+"\":\n"+sqlEx.getMessage(), sqlEx);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if(connection==null)
+			return;
+
+		try{
+			executeBatch();
+			connection.commit();
+
+			// the indexes are built once, after all the rows are loaded
+			Statement statement = connection.createStatement();
+			try{
+				String[] indexes = getIndexes();
+				for (int i = 0; i < indexes.length; i++) {
+					statement.execute("CREATE INDEX "+getTableName()+"_index_"+i+" ON "+getTableName()+" ("+indexes[i]+")");
+				}
+			}finally{
+				statement.close();
+			}
+			connection.commit();
+		}catch(SQLException sqlEx){
+			throw new IOException("The annotations cannot be loaded into the table \""+getTableName()+"\":\n"+sqlEx.getMessage(), sqlEx);
+		}finally{
+			closeConnection();
+		}
+	}
+
+
+	/**
+	 * @param database a jdbc url (e.g., "jdbc:sqlite:annotations.db"), or the path to a database file.
+	 * a path that ends with ".mv.db" is an H2 database, and any other path is an SQLite database
+	 * @return the jdbc url of the database
+	 */
+	public static String getUrl(String database) {
+		if(database.startsWith("jdbc:"))
+			return database;
+
+		String path = new File(database).getAbsolutePath();
+		if(path.endsWith(".mv.db")){
+			// the url of an H2 database omits the extension of its file
+			return "jdbc:h2:" + path.substring(0, path.length() - ".mv.db".length());
+		}
+		return "jdbc:sqlite:" + path;
+	}
+
+	private void executeBatch() throws SQLException {
+		if(batchRows>0){
+			insert.executeBatch();
+			batchRows = 0;
+		}
+	}
+
+	private void closeConnection() {
+		try{
+			connection.close();
+		}catch(SQLException sqlEx){
+			// the rows are already committed, or rolled back
+		}
+		connection = null;
+	}
+}
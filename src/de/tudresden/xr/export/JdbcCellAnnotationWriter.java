@@ -0,0 +1,57 @@
+/**
+ * 
+ */
+package de.tudresden.xr.export;
+
+import java.io.IOException;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+
+/**
+ * Loads the cell annotations into the table "cell_annotations" of a database, with the columns of the csv export
+ */
+public class JdbcCellAnnotationWriter extends JdbcAnnotationWriter<CellAnnotationRecord> {
+
+	/**
+	 * @param database a jdbc url, or the path to an SQLite or H2 file
+	 * @param workbooksPerTransaction the number of excel files whose annotations are committed in one transaction
+	 * @throws IOException if the database cannot be opened, or the table cannot be created
+	 */
+	public JdbcCellAnnotationWriter(String database, int workbooksPerTransaction) throws IOException {
+		super(database, workbooksPerTransaction);
+	}
+
+	@Override
+	protected String getTableName() {
+		return "cell_annotations";
+	}
+
+	@Override
+	protected String[] getColumns() {
+		return new String[]{"file_name VARCHAR", "sheet_name VARCHAR", "sheet_index INTEGER", "table_name VARCHAR",
+				"annotation_label VARCHAR", "annotation_address VARCHAR",
+				"first_column INTEGER", "first_row INTEGER", "last_column INTEGER", "last_row INTEGER"};
+	}
+
+	@Override
+	protected String[] getIndexes() {
+		return new String[]{"file_name, sheet_name, annotation_label", "file_name, sheet_name, first_row, first_column"};
+	}
+
+	@Override
+	protected void bind(PreparedStatement statement, CellAnnotationRecord record) throws SQLException {
+		CellRangeAddress cellAddress = record.getCellAddress();
+		statement.setString(1, record.getFileName());
+		statement.setString(2, record.getSheetName());
+		statement.setInt(3, record.getSheetIndex());
+		statement.setString(4, record.getTableName());
+		statement.setString(5, record.getAnnotationLabel().name());
+		statement.setString(6, cellAddress.formatAsString());
+		statement.setInt(7, cellAddress.getFirstColumn());
+		statement.setInt(8, cellAddress.getFirstRow());
+		statement.setInt(9, cellAddress.getLastColumn());
+		statement.setInt(10, cellAddress.getLastRow());
+	}
+}
@@ -0,0 +1,162 @@
+/**
+ * 
+ */
+package de.tudresden.xr.export;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A minimal streaming writer of json values. The tokens are written to the underlying writer as they are given,
+ * thus a document is never held in memory. Only the separators (commas and colons) are tracked, per nesting level.
+ */
+class JsonWriter {
+
+	// the maximum nesting depth of the documents
+	private static final int MAX_DEPTH = 32;
+
+	private Writer writer;
+
+	// whether the current array or object already has an element
+	private boolean[] hasElement = new boolean[MAX_DEPTH];
+	private int depth = 0;
+	private boolean afterName = false;
+
+
+	/**
+	 * @param writer the target of the json tokens
+	 */
+	JsonWriter(Writer writer) {
+		this.writer = writer;
+	}
+
+
+	JsonWriter beginObject() throws IOException {
+		return begin('{');
+	}
+
+	JsonWriter endObject() throws IOException {
+		return end('}');
+	}
+
+	JsonWriter beginArray() throws IOException {
+		return begin('[');
+	}
+
+	JsonWriter endArray() throws IOException {
+		return end(']');
+	}
+
+	/**
+	 * @param name the name of the next member of the current object
+	 * @return this writer
+	 * @throws IOException if the name cannot be written
+	 */
+	JsonWriter name(String name) throws IOException {
+		separate();
+		writeString(name);
+		writer.write(':');
+		afterName = true;
+		return this;
+	}
+
+	/**
+	 * @param value a string value, or null
+	 * @return this writer
+	 * @throws IOException if the value cannot be written
+	 */
+	JsonWriter value(String value) throws IOException {
+		separate();
+		if(value==null){
+			writer.write("null");
+		}else{
+			writeString(value);
+		}
+		return this;
+	}
+
+	/**
+	 * @param value a number value
+	 * @return this writer
+	 * @throws IOException if the value cannot be written
+	 */
+	JsonWriter value(long value) throws IOException {
+		separate();
+		writer.write(Long.toString(value));
+		return this;
+	}
+
+
+	private JsonWriter begin(char bracket) throws IOException {
+		if(depth==MAX_DEPTH){
+			throw new IOException("The json document is nested deeper than "+MAX_DEPTH+" levels.");
+		}
+		separate();
+		writer.write(bracket);
+		hasElement[depth++] = false;
+		return this;
+	}
+
+	private JsonWriter end(char bracket) throws IOException {
+		if(depth==0){
+			throw new IOException("There is no open json array or object to end.");
+		}
+		depth--;
+		writer.write(bracket);
+		return this;
+	}
+
+	/**
+	 * Write a comma before the next element of the current array or object, unless it follows a name
+	 * @throws IOException if the comma cannot be written
+	 */
+	private void separate() throws IOException {
+		if(afterName){
+			afterName = false;
+			return;
+		}
+		if(depth>0){
+			if(hasElement[depth-1]){
+				writer.write(',');
+			}
+			hasElement[depth-1] = true;
+		}
+	}
+
+	/**
+	 * @param s the string to write quoted, with the json escapes
+	 * @throws IOException if the string cannot be written
+	 */
+	private void writeString(String s) throws IOException {
+		writer.write('"');
+		int start = 0;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if(c=='"' || c=='\\' || c < 0x20){
+				writer.write(s, start, i - start);
+				switch(c){
+				case '"':
+					writer.write("\\\"");
+					break;
+				case '\\':
+					writer.write("\\\\");
+					break;
+				case '\n':
+					writer.write("\\n");
+					break;
+				case '\r':
+					writer.write("\\r");
+					break;
+				case '\t':
+					writer.write("\\t");
+					break;
+				default:
+					writer.write(String.format("\\u%04x", (int) c));
+				}
+				start = i + 1;
+			}
+		}
+		writer.write(s, start, s.length() - start);
+		writer.write('"');
+	}
+}
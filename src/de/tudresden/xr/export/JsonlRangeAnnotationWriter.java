@@ -0,0 +1,215 @@
+/**
+ * 
+ */
+package de.tudresden.xr.export;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import de.tudresden.xr.model.enums.AnnotationLabel;
+
+/**
+ * Writes the table and range annotations as a json lines file, with one document per workbook.
+ * The documents keep the hierarchy of the annotations: a workbook holds its sheets, a sheet holds its tables
+ * and the ranges that are not in a table, and a table holds its ranges. For example (in one line):
+ * <pre>
+ * {"fileName":"f.xlsx","sheets":[{"sheetName":"S","sheetIndex":0,
+ *   "tables":[{"name":"Table_1","address":"A1:C5","firstColumn":0,"firstRow":0,"lastColumn":2,"lastRow":4,
+ *     "ranges":[{"name":"Header_1","label":"Header","address":"A1:C1",...}]}],
+ *   "ranges":[...]}]}
+ * </pre>
+ * The documents are streamed to the file. Only the records of the current sheet are kept, since the ranges of a table
+ * follow after all the tables of the sheet.
+ */
+public class JsonlRangeAnnotationWriter implements SplicingAnnotationWriter<RangeAnnotationRecord>, FileAnnotationWriter<RangeAnnotationRecord> {
+
+	// the size of the output buffer, in chars
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private ExportFileStream stream;
+	private Writer writer;
+	private JsonWriter json;
+
+	// the workbook of the open document (null, if there is none), and the records of its current sheet
+	private String fileName = null;
+	private List<RangeAnnotationRecord> sheet = new ArrayList<RangeAnnotationRecord>();
+
+	// whether the document of the current workbook was copied from a previous export (see splice)
+	private boolean spliced = false;
+
+
+	/**
+	 * @param file the path to the json lines file
+	 * @throws IOException if the file cannot be created
+	 */
+	public JsonlRangeAnnotationWriter(File file) throws IOException {
+		this(file, false);
+	}
+
+	/**
+	 * Create the json lines file (replacing any existing file)
+	 * @param file the path to the json lines file
+	 * @param compress true to write the file as a gzip stream
+	 * @throws IOException if the file cannot be created
+	 */
+	public JsonlRangeAnnotationWriter(File file, boolean compress) throws IOException {
+		this.stream = new ExportFileStream(file, compress);
+		this.writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), BUFFER_SIZE);
+		this.json = new JsonWriter(writer);
+	}
+
+
+	@Override
+	public void write(RangeAnnotationRecord record) throws IOException {
+		if(fileName==null){
+			beginWorkbook(record.getFileName());
+		}else if(!sheet.isEmpty() && (sheet.get(0).getSheetIndex()!=record.getSheetIndex()
+				|| !sheet.get(0).getSheetName().equals(record.getSheetName()))){
+			writeSheet();
+		}
+		sheet.add(record);
+	}
+
+	@Override
+	public void endWorkbook(String fileName) throws IOException {
+		if(spliced && this.fileName==null){
+			spliced = false;
+			writer.flush();
+			return;
+		}
+		if(this.fileName==null){
+			// a workbook without annotations
+			beginWorkbook(fileName);
+		}
+		writeSheet();
+		json.endArray().endObject();
+		writer.write('\n');
+		writer.flush();
+		this.fileName = null;
+	}
+
+	@Override
+	public long getOffset() throws IOException {
+		writer.flush();
+		return stream.getCount();
+	}
+
+	@Override
+	public void splice(FileChannel source, long offset, long length) throws IOException {
+		writer.flush();
+		stream.transferFrom(source, offset, length);
+		spliced = true;
+	}
+
+	@Override
+	public void sync() throws IOException {
+		writer.flush();
+		stream.sync();
+	}
+
+	@Override
+	public void close() throws IOException {
+		// the export file is synced when its stream is closed
+		writer.close();
+	}
+
+	@Override
+	public long getChecksum() {
+		return stream.getChecksum();
+	}
+
+
+	private void beginWorkbook(String fileName) throws IOException {
+		this.fileName = fileName;
+		json.beginObject();
+		json.name("fileName").value(fileName);
+		json.name("sheets").beginArray();
+	}
+
+	/**
+	 * Write the records of the current sheet, with the ranges nested in their tables
+	 * @throws IOException if the sheet cannot be written
+	 */
+	private void writeSheet() throws IOException {
+		if(sheet.isEmpty())
+			return;
+
+		List<RangeAnnotationRecord> tables = new ArrayList<RangeAnnotationRecord>();
+		for (RangeAnnotationRecord record : sheet) {
+			if(record.getAnnotationLabel()==AnnotationLabel.Table){
+				tables.add(record);
+			}
+		}
+
+		json.beginObject();
+		json.name("sheetName").value(sheet.get(0).getSheetName());
+		json.name("sheetIndex").value(sheet.get(0).getSheetIndex());
+
+		json.name("tables").beginArray();
+		for (RangeAnnotationRecord table : tables) {
+			json.beginObject();
+			json.name("name").value(table.getAnnotationName());
+			writeAddress(table);
+			json.name("ranges").beginArray();
+			for (RangeAnnotationRecord record : sheet) {
+				if(record.getAnnotationLabel()!=AnnotationLabel.Table && table.getAnnotationName().equals(record.getParentName())){
+					writeRange(record);
+				}
+			}
+			json.endArray();
+			json.endObject();
+		}
+		json.endArray();
+
+		// the ranges whose parent is the sheet
+		json.name("ranges").beginArray();
+		for (RangeAnnotationRecord record : sheet) {
+			if(record.getAnnotationLabel()!=AnnotationLabel.Table && !isTableName(tables, record.getParentName())){
+				writeRange(record);
+			}
+		}
+		json.endArray();
+		json.endObject();
+
+		sheet.clear();
+	}
+
+	private void writeRange(RangeAnnotationRecord record) throws IOException {
+		json.beginObject();
+		json.name("name").value(record.getAnnotationName());
+		json.name("label").value(record.getAnnotationLabel().name());
+		writeAddress(record);
+		json.endObject();
+	}
+
+	private void writeAddress(RangeAnnotationRecord record) throws IOException {
+		CellRangeAddress cra = record.getCellRangeAddress();
+		json.name("address").value(record.getRangeAddress());
+		json.name("firstColumn").value(cra.getFirstColumn());
+		json.name("firstRow").value(cra.getFirstRow());
+		json.name("lastColumn").value(cra.getLastColumn());
+		json.name("lastRow").value(cra.getLastRow());
+	}
+
+	/**
+	 * @param tables the table annotations of the sheet
+	 * @param name the name of a parent annotation
+	 * @return true if the parent is one of the tables
+	 */
+	private static boolean isTableName(List<RangeAnnotationRecord> tables, String name) {
+		for (RangeAnnotationRecord table : tables) {
+			if(table.getAnnotationName().equals(name))
+				return true;
+		}
+		return false;
+	}
+}
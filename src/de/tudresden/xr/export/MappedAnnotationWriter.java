@@ -0,0 +1,311 @@
+/**
+ * 
+ */
+package de.tudresden.xr.export;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes the rows of a csv export that are encoded by the worker threads, in parallel and without a shared lock.
+ * <p>
+ * Each worker thread takes a window of a memory-mapped spill file, which no other thread uses at the same time, and encodes the rows
+ * of its workbook directly into the window. The windows are taken from a lock-free pool. A workbook that does not fit in the rest 
+ * of the window continues in a new region of the spill file, which is either a free region, or a new one, reserved by bumping
+ * an atomic offset. Thus, the spill file holds the encoded workbooks in the order they were completed, with a gap at the end of each region.
+ * As each workbook ends (in the order of the files), its chunks are copied to the export file. This compaction removes the gaps,
+ * and restores the order of the files, so the export file is the same as the one written by the csv writer alone.
+ * <p>
+ * A region is free again (and it stays mapped for re-use) once no thread encodes into it, and all its chunks are copied.
+ * Thus, the spill file holds only the rows that wait for their turn (i.e., the workbooks in flight, see OrderedWorkbookExecutor),
+ * plus one region per thread, instead of growing to the size of the export. The spill file is deleted when the writer is closed.
+ * @param <T> the type of the exported records
+ */
+public class MappedAnnotationWriter<T> implements SplicingAnnotationWriter<T>, FileAnnotationWriter<T> {
+
+	// the size of each window, in bytes
+	private static final int WINDOW_SIZE = 1 << 22;
+
+	// the number of chars that are encoded at once
+	private static final int ENCODE_SIZE = 1 << 16;
+
+	/**
+	 * A mapped region of the spill file. It is counted as used by the thread that encodes into it, and by each chunk that is not copied yet
+	 */
+	private static class Region {
+		MappedByteBuffer buffer;
+		AtomicInteger users = new AtomicInteger(1);
+
+		Region(MappedByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+	}
+
+	/**
+	 * An encoded part of a workbook, and the region that holds it
+	 */
+	private static class Chunk {
+		ByteBuffer data;
+		Region region;
+
+		Chunk(ByteBuffer data, Region region) {
+			this.data = data;
+			this.region = region;
+		}
+	}
+
+	/**
+	 * A window of the spill file, and the encoder of the thread that uses it
+	 */
+	private class Window {
+		Region region = null;
+		MappedByteBuffer buffer = null;
+		CharsetEncoder encoder = CsvAnnotationWriter.getCharset().newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+		StringBuilder sb = new StringBuilder();
+	}
+
+	private CsvAnnotationWriter<T> target;
+	private File spill;
+	private RandomAccessFile spillFile;
+	private FileChannel channel;
+	private AtomicLong reserved = new AtomicLong(0);
+
+	// the windows that are not used by a thread, at most one per thread that encodes at the same time
+	private ConcurrentLinkedQueue<Window> windows = new ConcurrentLinkedQueue<Window>();
+
+	// the regions of the spill file that are not used, and can be taken by a window
+	private ConcurrentLinkedQueue<Region> freeRegions = new ConcurrentLinkedQueue<Region>();
+
+	// the encoded chunks of the workbooks, by file name, until the workbooks end
+	private ConcurrentHashMap<String, List<Chunk>> chunks = new ConcurrentHashMap<String, List<Chunk>>();
+	private byte[] copy = new byte[1 << 16];
+
+
+	/**
+	 * Create the spill file, next to the export file
+	 * @param target the csv writer of the export file, which formats the rows
+	 * @param exportFile the path to the export file
+	 * @throws IOException if the spill file cannot be created
+	 */
+	public MappedAnnotationWriter(CsvAnnotationWriter<T> target, File exportFile) throws IOException {
+		this.target = target;
+		this.spill = File.createTempFile(exportFile.getName() + ".", ".spill", exportFile.getAbsoluteFile().getParentFile());
+		// the spill file is deleted by close(), or here if it cannot be opened
+		try{
+			this.spillFile = new RandomAccessFile(spill, "rw");
+		}catch(IOException ioEx){
+			spill.delete();
+			throw ioEx;
+		}
+		this.channel = spillFile.getChannel();
+	}
+
+
+	/**
+	 * Encode the rows of a workbook into a window of the spill file. This method is called by the worker threads,
+	 * and the rows are written to the export file when the workbook ends (see endWorkbook).
+	 * @param fileName the name of the excel file
+	 * @param records the annotations of the excel file, in order
+	 * @throws IOException if a window of the spill file cannot be mapped
+	 */
+	public void encodeWorkbook(String fileName, List<T> records) throws IOException {
+
+		Window window = windows.poll();
+		if(window==null){
+			window = new Window();
+			reserveWindow(window);
+		}
+		try{
+			chunks.put(fileName, encode(window, records));
+		}finally{
+			window.sb.setLength(0);
+			windows.add(window);
+		}
+	}
+
+
+	/**
+	 * @param window the window where the rows are encoded
+	 * @param records the annotations to encode as rows
+	 * @return the chunks of the regions that hold the encoded rows, in order
+	 * @throws IOException if a new region cannot be mapped
+	 */
+	private List<Chunk> encode(Window window, List<T> records) throws IOException {
+
+		List<Chunk> encoded = new ArrayList<Chunk>();
+		try{
+			encode(window, records, encoded);
+		}catch(IOException ioEx){
+			release(encoded);
+			throw ioEx;
+		}catch(RuntimeException rEx){
+			release(encoded);
+			throw rEx;
+		}
+		return encoded;
+	}
+
+	/**
+	 * @param window the window where the rows are encoded
+	 * @param records the annotations to encode as rows
+	 * @param encoded the list where the chunks are added, in order
+	 * @throws IOException if a new region cannot be mapped
+	 */
+	private void encode(Window window, List<T> records, List<Chunk> encoded) throws IOException {
+
+		int start = window.buffer.position();
+		window.encoder.reset();
+
+		for (int i = 0; i <= records.size(); i++) {
+			boolean last = i==records.size();
+			if(!last){
+				target.appendRow(window.sb, records.get(i));
+				if(window.sb.length() < ENCODE_SIZE)
+					continue;
+			}
+
+			CharBuffer chars = CharBuffer.wrap(window.sb);
+			while(true){
+				CoderResult result = window.encoder.encode(chars, window.buffer, last);
+				if(!result.isOverflow() && last){
+					result = window.encoder.flush(window.buffer);
+				}
+				if(!result.isOverflow())
+					break;
+
+				// the region is full, so the workbook continues in a new region
+				encoded.add(slice(window, start));
+				reserveWindow(window);
+				start = 0;
+			}
+			window.sb.setLength(0);
+		}
+
+		encoded.add(slice(window, start));
+	}
+
+
+	@Override
+	public void write(T record) throws IOException {
+		// a record that was not encoded by a worker thread
+		target.write(record);
+	}
+
+	@Override
+	public void endWorkbook(String fileName) throws IOException {
+		List<Chunk> encoded = chunks.remove(fileName);
+		if(encoded!=null){
+			try{
+				for (Chunk chunk : encoded) {
+					target.writeEncoded(chunk.data, copy);
+				}
+			}finally{
+				release(encoded);
+			}
+		}
+		target.endWorkbook(fileName);
+	}
+
+	@Override
+	public long getOffset() throws IOException {
+		return target.getOffset();
+	}
+
+	@Override
+	public void splice(FileChannel source, long offset, long length) throws IOException {
+		target.splice(source, offset, length);
+	}
+
+	@Override
+	public void sync() throws IOException {
+		target.sync();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try{
+			target.close();
+		}finally{
+			chunks.clear();
+			spillFile.close();
+			// the mapped windows are dropped, so that the garbage collector can unmap them
+			windows.clear();
+			freeRegions.clear();
+			spill.delete();
+		}
+	}
+
+	@Override
+	public long getChecksum() {
+		return target.getChecksum();
+	}
+
+
+	/**
+	 * Give the window a free region of the spill file, or map a new one. The previous region of the window is released.
+	 * @param window the window of a thread
+	 * @throws IOException if the region cannot be mapped
+	 */
+	private void reserveWindow(Window window) throws IOException {
+		if(window.region!=null){
+			release(window.region);
+		}
+
+		Region region = freeRegions.poll();
+		if(region==null){
+			long offset = reserved.getAndAdd(WINDOW_SIZE);
+			region = new Region(channel.map(FileChannel.MapMode.READ_WRITE, offset, WINDOW_SIZE));
+		}else{
+			region.buffer.clear();
+			region.users.set(1);
+		}
+		window.region = region;
+		window.buffer = region.buffer;
+	}
+
+	/**
+	 * @param window the window of a thread
+	 * @param start the start of the chunk in the region of the window
+	 * @return the chunk from the start to the position of the window
+	 */
+	private Chunk slice(Window window, int start) {
+		ByteBuffer data = window.buffer.duplicate();
+		data.limit(window.buffer.position());
+		data.position(start);
+		window.region.users.incrementAndGet();
+		return new Chunk(data.slice(), window.region);
+	}
+
+	/**
+	 * @param encoded the chunks that are copied (or dropped)
+	 */
+	private void release(List<Chunk> encoded) {
+		for (Chunk chunk : encoded) {
+			release(chunk.region);
+		}
+	}
+
+	/**
+	 * @param region a region that is no longer used by a thread, or by a chunk. the region is free, once it is not used at all
+	 */
+	private void release(Region region) {
+		if(region.users.decrementAndGet()==0){
+			freeRegions.add(region);
+		}
+	}
+}
@@ -0,0 +1,373 @@
+/**
+ * 
+ */
+package de.tudresden.xr.export;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+
+import de.tudresden.xr.utils.WorkbookContent;
+import de.tudresden.xr.utils.WorkbookUtils;
+
+/**
+ * Process a list of excel files on a pool of worker threads, and hand over the results in the order of the files.
+ * The results are handled on the calling thread, exactly as in a sequential run. Thus, the output does not depend on the number of threads.
+ * At most a few files per thread are in flight, so that the memory used by the results that wait for their turn stays bounded.
+ */
+public class OrderedWorkbookExecutor {
+
+	// the number of files that are processed, or wait to be handled, per thread
+	private static final int FILES_PER_THREAD = 2;
+
+	// the number of files that wait for a permit, are processed, or wait to be handled, per permit (virtual threads)
+	private static final int FILES_PER_PERMIT = 4;
+
+	// the number of files in flight per thread, when a heap budget is set. the largest of the waiting files are admitted first
+	private static final int FILES_PER_THREAD_WITH_BUDGET = 8;
+
+
+	/**
+	 * The work that is done for each file, on the worker threads
+	 * @param <T> the type of the result
+	 */
+	public interface WorkbookTask<T> {
+
+		/**
+		 * @param file the excel file
+		 * @return the result for the given file
+		 * @throws Exception a generic exception, containing a string message with clarifications
+		 */
+		public T process(File file) throws Exception;
+	}
+
+
+	/**
+	 * Receives the results, on the calling thread, in the order of the files
+	 * @param <T> the type of the result
+	 */
+	public interface ResultHandler<T> {
+
+		/**
+		 * @param file the excel file
+		 * @param result the result for the given file, or null if the task failed
+		 * @param error the exception thrown by the task, or null if it completed
+		 * @throws Exception a generic exception, which stops the processing of the remaining files
+		 */
+		public void handle(File file, T result, Exception error) throws Exception;
+	}
+
+
+	/**
+	 * Process the given files as specified by the options, and handle the results in the order of the files
+	 *
+	 * @param files the excel files
+	 * @param options the number of threads, whether to use virtual threads, and the heap budget
+	 * @param task the work that is done for each file
+	 * @param handler receives the results in the order of the files
+	 * @throws Exception the exception thrown by the handler, or if virtual threads are not supported by the JVM
+	 */
+	public static <T> void run(File[] files, ExportOptions options, WorkbookTask<T> task, ResultHandler<T> handler) throws Exception {
+		run(files, options, createScheduler(options), task, handler);
+	}
+
+
+	/**
+	 * @param options the heap budget
+	 * @return the scheduler of the heap budget, or null if there is no heap budget
+	 */
+	public static HeapBudgetScheduler createScheduler(ExportOptions options) {
+		return options.getHeapBudget()>0 ? new HeapBudgetScheduler(options.getHeapBudget()) : null;
+	}
+
+
+	/**
+	 * Process the given files as specified by the options, and handle the results in the order of the files
+	 *
+	 * @param files the excel files
+	 * @param options the number of threads, and whether to use virtual threads
+	 * @param scheduler the scheduler of the heap budget (see createScheduler), which can be shared with the handler 
+	 * (e.g., DuplicateWorkbooks.setScheduler), or null for no heap budget
+	 * @param task the work that is done for each file
+	 * @param handler receives the results in the order of the files
+	 * @throws Exception the exception thrown by the handler, or if virtual threads are not supported by the JVM
+	 */
+	public static <T> void run(File[] files, ExportOptions options, HeapBudgetScheduler scheduler, 
+			WorkbookTask<T> task, ResultHandler<T> handler) throws Exception {
+
+		if(options.isVirtualThreads()){
+			runVirtual(files, options.getThreads(), scheduler, WorkbookUtils.getAnnotationCache()!=null, task, handler);
+		}else if(scheduler!=null && options.getThreads()>1){
+			runScheduled(files, options.getThreads(), scheduler, task, handler);
+		}else{
+			run(files, options.getThreads(), task, handler);
+		}
+	}
+
+
+	/**
+	 * Process the given files, and handle the results in the order of the files
+	 *
+	 * @param files the excel files
+	 * @param threads the number of worker threads. when less than 2, the files are processed sequentially on the calling thread
+	 * @param task the work that is done for each file
+	 * @param handler receives the results in the order of the files
+	 * @throws Exception the exception thrown by the handler
+	 */
+	public static <T> void run(File[] files, int threads, WorkbookTask<T> task, ResultHandler<T> handler) throws Exception {
+
+		if(threads<2){
+			for (File file : files) {
+				T result = null;
+				Exception error = null;
+				try{
+					result = task.process(file);
+				}catch(Exception ex){
+					error = ex;
+				}
+				handler.handle(file, result, error);
+			}
+			return;
+		}
+
+		runPool(files, threads, FILES_PER_THREAD, task, handler);
+	}
+
+
+	/**
+	 * Process the given files on a pool of worker threads, and handle the results in the order of the files
+	 *
+	 * @param files the excel files
+	 * @param threads the number of worker threads
+	 * @param filesPerThread the number of files that are processed, or wait to be handled, per thread
+	 * @param task the work that is done for each file
+	 * @param handler receives the results in the order of the files
+	 * @throws Exception the exception thrown by the handler
+	 */
+	private static <T> void runPool(File[] files, int threads, int filesPerThread, WorkbookTask<T> task, ResultHandler<T> handler) throws Exception {
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try{
+			run(files, executor, threads * filesPerThread, task, handler);
+		}finally{
+			executor.shutdownNow();
+		}
+	}
+
+
+	/**
+	 * Process the given files on a pool of worker threads, in the order admitted by the heap budget, and handle the results 
+	 * in the order of the files. The files in flight wait in the scheduler, instead of the queue of the pool, so that the largest 
+	 * of them is started first, once it fits in the budget. The worker threads take the next admitted file from the scheduler.
+	 * The footprint of each file is estimated on the calling thread, when the file enters the window (see HeapBudgetScheduler.submit).
+	 *
+	 * @param files the excel files
+	 * @param threads the number of worker threads
+	 * @param scheduler the scheduler that admits files by their estimated heap footprint
+	 * @param task the work that is done for each file
+	 * @param handler receives the results in the order of the files
+	 * @throws Exception the exception thrown by the handler
+	 */
+	private static <T> void runScheduled(File[] files, int threads, final HeapBudgetScheduler scheduler, final WorkbookTask<T> task, 
+			ResultHandler<T> handler) throws Exception {
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try{
+			for (int i = 0; i < threads; i++) {
+				executor.submit(new Runnable() {
+					@Override
+					public void run() {
+						scheduler.work();
+					}
+				});
+			}
+
+			ArrayDeque<Future<T>> inFlight = new ArrayDeque<Future<T>>();
+			int next = 0;
+			for (int i = 0; i < files.length; i++) {
+
+				// keep the window of files in flight full. the files wait in the scheduler, until they are admitted
+				while(next < files.length && inFlight.size() < threads * FILES_PER_THREAD_WITH_BUDGET){
+					final File file = files[next++];
+					FutureTask<T> future = new FutureTask<T>(new Callable<T>() {
+						@Override
+						public T call() throws Exception {
+							return task.process(file);
+						}
+					});
+					scheduler.submit(file, future);
+					inFlight.add(future);
+				}
+
+				handle(files[i], inFlight.poll(), handler);
+			}
+		}finally{
+			// the worker threads wait in the scheduler, until they are interrupted
+			executor.shutdownNow();
+		}
+	}
+
+
+	/**
+	 * Process the given files with one virtual thread per file (Java 21 or newer), and handle the results in the order of the files.
+	 * The i/o of each file (i.e., reading it into memory, and hashing it for the annotation cache) runs on its virtual thread 
+	 * without a limit, while the task (i.e., parsing and scanning the workbook from memory, see WorkbookContent) is bound by 
+	 * the CPU and the heap, so that at most the given number of tasks run at the same time. The content of a file is read once, 
+	 * and it is held only while the file is in flight (i.e., for at most the window of files in flight, see run). 
+	 * Files larger than WorkbookContent.MAX_SIZE are read by the task, as usual.
+	 *
+	 * @param files the excel files
+	 * @param permits the maximum number of tasks that run at the same time
+	 * @param task the work that is done for each file
+	 * @param handler receives the results in the order of the files
+	 * @throws Exception if virtual threads are not supported by the JVM, or the exception thrown by the handler
+	 */
+	public static <T> void runVirtual(File[] files, int permits, WorkbookTask<T> task, ResultHandler<T> handler) throws Exception {
+		runVirtual(files, permits, null, WorkbookUtils.getAnnotationCache()!=null, task, handler);
+	}
+
+
+	/**
+	 * Process the given files with one virtual thread per file (see above). 
+	 * When a scheduler is given, the files wait for admission by the heap budget, before they are read and take a permit.
+	 *
+	 * @param files the excel files
+	 * @param permits the maximum number of tasks that run at the same time
+	 * @param scheduler the scheduler that admits files by their estimated heap footprint, or null for no heap budget
+	 * @param withHash true to hash the content of the files, as it is read (e.g., for the annotation cache)
+	 * @param task the work that is done for each file
+	 * @param handler receives the results in the order of the files
+	 * @throws Exception if virtual threads are not supported by the JVM, or the exception thrown by the handler
+	 */
+	private static <T> void runVirtual(File[] files, int permits, HeapBudgetScheduler scheduler, final boolean withHash, 
+			final WorkbookTask<T> task, ResultHandler<T> handler) throws Exception {
+
+		final Semaphore semaphore = new Semaphore(Math.max(1, permits));
+		WorkbookTask<T> permitTask = new WorkbookTask<T>() {
+			@Override
+			public T process(File file) throws Exception {
+				// the i/o is done before the permit is taken, and the task parses the file from memory
+				WorkbookContent content = WorkbookContent.read(file, withHash);
+				if(content!=null){
+					content.attach();
+				}
+				try{
+					semaphore.acquire();
+					try{
+						return task.process(file);
+					}finally{
+						semaphore.release();
+					}
+				}finally{
+					WorkbookContent.detach();
+				}
+			}
+		};
+
+		WorkbookTask<T> gatedTask = scheduler==null ? permitTask : scheduler.gate(permitTask);
+
+		int filesPerPermit = scheduler==null ? FILES_PER_PERMIT : FILES_PER_THREAD_WITH_BUDGET;
+		ExecutorService executor = newVirtualThreadExecutor();
+		try{
+			run(files, executor, Math.max(1, permits) * filesPerPermit, gatedTask, handler);
+		}finally{
+			executor.shutdownNow();
+		}
+	}
+
+
+	/**
+	 * @return true if the JVM supports virtual threads (Java 21 or newer)
+	 */
+	public static boolean isVirtualThreadsSupported() {
+		try{
+			Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return true;
+		}catch(NoSuchMethodException nsmEx){
+			return false;
+		}
+	}
+
+
+	/**
+	 * Create an executor that starts a new virtual thread for each task. 
+	 * The method is called via reflection, so that the code can still be compiled and run with Java 8.
+	 * @return the executor
+	 * @throws Exception if virtual threads are not supported by the JVM
+	 */
+	private static ExecutorService newVirtualThreadExecutor() throws Exception {
+		try{
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) method.invoke(null);
+		}catch(NoSuchMethodException nsmEx){
+			throw new Exception("Virtual threads are not supported by this Java version ("+System.getProperty("java.version")+"). Java 21 or newer is required.");
+		}
+	}
+
+
+	/**
+	 * Process the given files on the given executor, and handle the results in the order of the files
+	 *
+	 * @param files the excel files
+	 * @param executor the executor that runs the tasks
+	 * @param maxInFlight the maximum number of files that are processed, or wait to be handled, at any time
+	 * @param task the work that is done for each file
+	 * @param handler receives the results in the order of the files
+	 * @throws Exception the exception thrown by the handler
+	 */
+	public static <T> void run(File[] files, ExecutorService executor, int maxInFlight,
+			final WorkbookTask<T> task, ResultHandler<T> handler) throws Exception {
+
+		ArrayDeque<Future<T>> inFlight = new ArrayDeque<Future<T>>();
+		int next = 0;
+		for (int i = 0; i < files.length; i++) {
+
+			// keep the window of files in flight full
+			while(next < files.length && inFlight.size() < Math.max(1, maxInFlight)){
+				final File file = files[next++];
+				inFlight.add(executor.submit(new Callable<T>() {
+					@Override
+					public T call() throws Exception {
+						return task.process(file);
+					}
+				}));
+			}
+
+			handle(files[i], inFlight.poll(), handler);
+		}
+	}
+
+
+	/**
+	 * Wait for the result of the given file, and hand it over to the handler
+	 *
+	 * @param file the excel file
+	 * @param future the task of the file
+	 * @param handler receives the result, or the exception thrown by the task
+	 * @throws Exception the exception thrown by the handler
+	 */
+	private static <T> void handle(File file, Future<T> future, ResultHandler<T> handler) throws Exception {
+
+		T result = null;
+		Exception error = null;
+		try{
+			result = future.get();
+		}catch(ExecutionException exEx){
+			if(exEx.getCause() instanceof Exception){
+				error = (Exception) exEx.getCause();
+			}else if(exEx.getCause() instanceof Error){
+				throw (Error) exEx.getCause();
+			}else{
+				error = exEx;
+			}
+		}
+		handler.handle(file, result, error);
+	}
+}
@@ -0,0 +1,220 @@
+/**
+ * 
+ */
+package de.tudresden.xr.export;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses the written bytes in fixed size blocks on a pool of worker threads (as pigz does).
+ * Each block is written as a complete gzip member, and the members are written in order.
+ * The result is a standard (multi-member) gzip stream, which is read by gzip, zcat, Java's GZIPInputStream, Spark, etc.
+ * At most a few blocks per thread are in flight, so that the memory usage stays bounded.
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+	// the size of the uncompressed blocks
+	private static final int BLOCK_SIZE = 1 << 20;
+
+	// the number of blocks that are compressed, or wait to be written, per thread
+	private static final int BLOCKS_PER_THREAD = 2;
+
+	// the gzip header: magic, deflate, no flags, no modification time, no extra flags, unknown os
+	private static final byte[] HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+	private OutputStream out;
+	private ExecutorService executor;
+	private int maxPending;
+	private ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+	private byte[] block = new byte[BLOCK_SIZE];
+	private int count = 0;
+	private boolean isEmpty = true;
+	private boolean isFinished = false;
+
+
+	/**
+	 * @param out the stream where the compressed data is written
+	 */
+	public ParallelGzipOutputStream(OutputStream out) {
+		this(out, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param out the stream where the compressed data is written
+	 * @param threads the number of threads that compress the blocks
+	 */
+	public ParallelGzipOutputStream(OutputStream out, int threads) {
+		this.out = out;
+		this.maxPending = Math.max(1, threads) * BLOCKS_PER_THREAD;
+		this.executor = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				// the pool does not keep the JVM alive, if the stream is not closed
+				Thread thread = new Thread(r, "gzip");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+
+	@Override
+	public void write(int b) throws IOException {
+		if(count==BLOCK_SIZE){
+			submitBlock();
+		}
+		block[count++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while(len>0){
+			if(count==BLOCK_SIZE){
+				submitBlock();
+			}
+			int n = Math.min(len, BLOCK_SIZE - count);
+			System.arraycopy(b, off, block, count, n);
+			count += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * Write the leading blocks that are already compressed, without waiting for the others. The current (partial) block is kept,
+	 * so that flushing often (e.g., at the end of each workbook) neither degrades the compression, nor stalls the writer
+	 * until the blocks in flight are compressed.
+	 */
+	@Override
+	public void flush() throws IOException {
+		while(!pending.isEmpty() && pending.peek().isDone()){
+			writeNext();
+		}
+		out.flush();
+	}
+
+	/**
+	 * Wait for all the blocks that are submitted for compression, and write them. The current (partial) block is kept.
+	 * @throws IOException if a block cannot be compressed or written
+	 */
+	public void drain() throws IOException {
+		while(!pending.isEmpty()){
+			writeNext();
+		}
+		out.flush();
+	}
+
+	/**
+	 * Compress the remaining data, and write all the blocks, without closing the underlying stream
+	 * @throws IOException if the data cannot be compressed or written
+	 */
+	public void finish() throws IOException {
+		if(isFinished)
+			return;
+
+		// an empty stream is still a valid gzip file, with one empty member
+		if(count>0 || isEmpty){
+			submitBlock();
+		}
+		drain();
+		isFinished = true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		try{
+			finish();
+		}finally{
+			executor.shutdownNow();
+			out.close();
+		}
+	}
+
+
+	/**
+	 * Submit the current block for compression, and start a new one.
+	 * If too many blocks are in flight, wait for the oldest one, and write it.
+	 * @throws IOException if a block cannot be compressed or written
+	 */
+	private void submitBlock() throws IOException {
+
+		final byte[] data = block;
+		final int length = count;
+		pending.add(executor.submit(new Callable<byte[]>() {
+			@Override
+			public byte[] call() throws Exception {
+				return compress(data, length);
+			}
+		}));
+		block = new byte[BLOCK_SIZE];
+		count = 0;
+		isEmpty = false;
+
+		while(pending.size()>maxPending){
+			writeNext();
+		}
+	}
+
+	/**
+	 * Wait for the oldest block in flight, and write it
+	 * @throws IOException if the block cannot be compressed or written
+	 */
+	private void writeNext() throws IOException {
+		try{
+			out.write(pending.poll().get());
+		}catch(ExecutionException exEx){
+			throw new IOException("A block of the output could not be compressed.", exEx.getCause());
+		}catch(InterruptedException iEx){
+			Thread.currentThread().interrupt();
+			throw new IOException("The compression of the output was interrupted.", iEx);
+		}
+	}
+
+	/**
+	 * @param data the uncompressed block
+	 * @param length the number of bytes in the block
+	 * @return the block as a complete gzip member (header, deflated data, crc32 and size)
+	 */
+	private static byte[] compress(byte[] data, int length) {
+
+		ByteArrayOutputStream member = new ByteArrayOutputStream(length / 4 + 64);
+		member.write(HEADER, 0, HEADER.length);
+
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		try{
+			deflater.setInput(data, 0, length);
+			deflater.finish();
+			byte[] buffer = new byte[1 << 16];
+			while(!deflater.finished()){
+				int n = deflater.deflate(buffer);
+				member.write(buffer, 0, n);
+			}
+		}finally{
+			deflater.end();
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, length);
+		writeInt(member, (int) crc.getValue());
+		writeInt(member, length);
+		return member.toByteArray();
+	}
+
+	private static void writeInt(ByteArrayOutputStream os, int value) {
+		os.write(value);
+		os.write(value >> 8);
+		os.write(value >> 16);
+		os.write(value >> 24);
+	}
+}
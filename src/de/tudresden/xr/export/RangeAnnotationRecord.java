@@ -0,0 +1,107 @@
+/**
+ * 
+ */
+package de.tudresden.xr.export;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import de.tudresden.xr.model.enums.AnnotationLabel;
+
+/**
+ * A table or range annotation, as exported by the RangeAnnotationsExporter
+ */
+public class RangeAnnotationRecord {
+	
+	private String fileName;
+	private String sheetName;
+	private int sheetIndex;
+	private String annotationName;
+	private AnnotationLabel annotationLabel;
+	private String parentName;
+	private String rangeAddress;
+	
+	
+	/**
+	 * @param fileName the name of the excel file
+	 * @param sheetName the name of the sheet where the annotation is located
+	 * @param sheetIndex the index of the sheet where the annotation is located
+	 * @param annotationName the name (unique id) of the annotation
+	 * @param annotationLabel the label of the annotation
+	 * @param parentName the name of the parent annotation (i.e., a table or the sheet)
+	 * @param rangeAddress the range address in A1 format, as recorded by the annotation tool
+	 */
+	public RangeAnnotationRecord(String fileName, String sheetName, int sheetIndex, String annotationName, 
+			AnnotationLabel annotationLabel, String parentName, String rangeAddress) {
+		this.fileName = fileName;
+		this.sheetName = sheetName;
+		this.sheetIndex = sheetIndex;
+		this.annotationName = annotationName;
+		this.annotationLabel = annotationLabel;
+		this.parentName = parentName;
+		this.rangeAddress = rangeAddress;
+	}
+
+	/**
+	 * @return the name of the excel file
+	 */
+	public String getFileName() {
+		return fileName;
+	}
+
+	/**
+	 * @param fileName the name of another excel file, with the same content
+	 * @return a copy of this record, for the given excel file
+	 */
+	public RangeAnnotationRecord withFileName(String fileName) {
+		return new RangeAnnotationRecord(fileName, sheetName, sheetIndex, annotationName, annotationLabel, parentName, rangeAddress);
+	}
+
+	/**
+	 * @return the name of the sheet where the annotation is located
+	 */
+	public String getSheetName() {
+		return sheetName;
+	}
+
+	/**
+	 * @return the index of the sheet where the annotation is located
+	 */
+	public int getSheetIndex() {
+		return sheetIndex;
+	}
+
+	/**
+	 * @return the name (unique id) of the annotation
+	 */
+	public String getAnnotationName() {
+		return annotationName;
+	}
+
+	/**
+	 * @return the label of the annotation
+	 */
+	public AnnotationLabel getAnnotationLabel() {
+		return annotationLabel;
+	}
+
+	/**
+	 * @return the name of the parent annotation (i.e., a table or the sheet)
+	 */
+	public String getParentName() {
+		return parentName;
+	}
+
+	/**
+	 * @return the range address in A1 format, as recorded by the annotation tool
+	 */
+	public String getRangeAddress() {
+		return rangeAddress;
+	}
+	
+	/**
+	 * @return the range address as a CellRangeAddress object
+	 */
+	public CellRangeAddress getCellRangeAddress() {
+		return CellRangeAddress.valueOf(rangeAddress);
+	}
+}
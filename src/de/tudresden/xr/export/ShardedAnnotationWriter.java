@@ -0,0 +1,142 @@
+/**
+ * 
+ */
+package de.tudresden.xr.export;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes the exported annotations to a directory of part files (part-00000.csv, part-00001.csv, ...),
+ * each holding the records of a fixed number of excel files. The parts are written one after the other, in the order
+ * of the excel files, and each completed part is recorded in the manifest of the directory (see ExportManifest).
+ * Thus, the parts can be read in parallel (e.g., by Spark), and the completed parts survive an aborted run.
+ * @param <T> the type of the exported records
+ */
+public class ShardedAnnotationWriter<T> implements AnnotationWriter<T> {
+
+	/**
+	 * Creates the writer of each part file
+	 * @param <T> the type of the exported records
+	 */
+	public interface PartWriterFactory<T> {
+
+		/**
+		 * @param part the path to the part file
+		 * @return the writer of the part file
+		 * @throws IOException if the file cannot be created
+		 */
+		public FileAnnotationWriter<T> create(File part) throws IOException;
+	}
+
+
+	private File directory;
+	private int filesPerPart;
+	private String extension;
+	private PartWriterFactory<T> factory;
+	private ExportManifest manifest = new ExportManifest();
+
+	// the current part
+	private FileAnnotationWriter<T> writer = null;
+	private File part = null;
+	private long rows = 0;
+	private List<String> files = new ArrayList<String>();
+
+
+	/**
+	 * Create the export directory (if needed), and delete the parts and the manifest of a previous export
+	 * @param directory the export directory
+	 * @param filesPerPart the number of excel files per part
+	 * @param extension the extension of the part files (e.g., ".csv")
+	 * @param factory creates the writer of each part file
+	 * @throws IOException if the directory cannot be created, or the previous parts cannot be deleted
+	 */
+	public ShardedAnnotationWriter(File directory, int filesPerPart, String extension, PartWriterFactory<T> factory) throws IOException {
+		this.directory = directory;
+		this.filesPerPart = Math.max(1, filesPerPart);
+		this.extension = extension;
+		this.factory = factory;
+
+		if(!directory.isDirectory() && !directory.mkdirs()){
+			throw new IOException("The export directory \""+directory.getPath()+"\" cannot be created.");
+		}
+
+		File[] previous = directory.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.matches("part-\\d{5}\\..*") || name.equals(ExportManifest.FILE_NAME);
+			}
+		});
+		for (File file : previous) {
+			if(!file.delete()){
+				throw new IOException("The file \""+file.getPath()+"\" of a previous export cannot be deleted.");
+			}
+		}
+	}
+
+
+	@Override
+	public void write(T record) throws IOException {
+		if(writer==null){
+			openPart();
+		}
+		writer.write(record);
+		rows++;
+	}
+
+	@Override
+	public void endWorkbook(String fileName) throws IOException {
+		if(writer==null){
+			openPart();
+		}
+		writer.endWorkbook(fileName);
+		files.add(fileName);
+
+		if(files.size()>=filesPerPart){
+			closePart();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if(writer!=null){
+			closePart();
+		}else{
+			// an export without files still has a manifest
+			manifest.write(directory);
+		}
+	}
+
+
+	/**
+	 * @param index the (0-based) index of the part
+	 * @param extension the extension of the part files (e.g., ".csv")
+	 * @return the name of the part file
+	 */
+	public static String getPartName(int index, String extension) {
+		return String.format("part-%05d%s", index, extension);
+	}
+
+	private void openPart() throws IOException {
+		part = new File(directory, getPartName(manifest.getParts().size(), extension));
+		writer = factory.create(part);
+	}
+
+	/**
+	 * Close the current part, and record it in the manifest. The checksum of the part is computed as it is written
+	 * @throws IOException if the part or the manifest cannot be written
+	 */
+	private void closePart() throws IOException {
+		writer.close();
+		long checksum = writer.getChecksum();
+		writer = null;
+
+		manifest.addPart(new ExportManifest.Part(part.getName(), rows, checksum, files));
+		manifest.write(directory);
+		rows = 0;
+		files = new ArrayList<String>();
+	}
+}
@@ -0,0 +1,37 @@
+/**
+ * 
+ */
+package de.tudresden.xr.export;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * A writer of an export file, where the rows of each workbook are a contiguous range of bytes. 
+ * Thus, the rows of a workbook can be copied from a previous export file, instead of parsing the workbook again (see IncrementalExport),
+ * and the export file can be cut after the rows of any workbook, to resume an aborted export (see ExportCheckpoint).
+ * @param <T> the type of the exported records
+ */
+public interface SplicingAnnotationWriter<T> extends AnnotationWriter<T> {
+	
+	/**
+	 * @return the number of bytes written to the export file so far, including the rows that are still buffered
+	 * @throws IOException if the buffered rows cannot be written
+	 */
+	public long getOffset() throws IOException;
+	
+	/**
+	 * Copy rows of a previous export file, after the rows written so far
+	 * @param source the previous export file
+	 * @param offset the position of the first byte to copy
+	 * @param length the number of bytes to copy
+	 * @throws IOException if the bytes cannot be read, or written
+	 */
+	public void splice(FileChannel source, long offset, long length) throws IOException;
+	
+	/**
+	 * Write the buffered rows, and sync the export file to the disk, so that the rows written so far survive a crash
+	 * @throws IOException if the rows cannot be written
+	 */
+	public void sync() throws IOException;
+}
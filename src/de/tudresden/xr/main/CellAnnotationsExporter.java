@@ -6,23 +6,44 @@ package de.tudresden.xr.main;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 
-import org.apache.poi.ss.usermodel.Cell;
-import org.apache.poi.ss.usermodel.CellType;
 import org.apache.poi.ss.usermodel.FormulaEvaluator;
-import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
-import org.apache.poi.ss.usermodel.Workbook;
 import org.apache.poi.ss.util.CellRangeAddress;
 
+import de.tudresden.xr.export.AnnotationWriter;
+import de.tudresden.xr.export.ArrowCellAnnotationWriter;
+import de.tudresden.xr.export.BinaryCellAnnotationWriter;
+import de.tudresden.xr.export.CellAnnotationRecord;
+import de.tudresden.xr.export.CellRectangles;
+import de.tudresden.xr.export.CsvCellAnnotationWriter;
+import de.tudresden.xr.export.DuplicateWorkbooks;
+import de.tudresden.xr.export.ExportCheckpoint;
+import de.tudresden.xr.export.ExportFormat;
+import de.tudresden.xr.export.ExportOptions;
+import de.tudresden.xr.export.FileAnnotationWriter;
+import de.tudresden.xr.export.HeapBudgetScheduler;
+import de.tudresden.xr.export.IncrementalExport;
+import de.tudresden.xr.export.JdbcCellAnnotationWriter;
+import de.tudresden.xr.export.MappedAnnotationWriter;
+import de.tudresden.xr.export.OrderedWorkbookExecutor;
+import de.tudresden.xr.export.ShardedAnnotationWriter;
+import de.tudresden.xr.export.SplicingAnnotationWriter;
 import de.tudresden.xr.model.annotation.RangeAnnotation;
 import de.tudresden.xr.model.annotation.TableAnnotation;
 import de.tudresden.xr.model.annotation.WorkbookAnnotation;
 import de.tudresden.xr.model.annotation.WorksheetAnnotation;
 import de.tudresden.xr.model.enums.AnnotationLabel;
-import de.tudresden.xr.utils.CellUtils;
+import de.tudresden.xr.reader.AnnotatedWorkbook;
+import de.tudresden.xr.reader.SheetData;
+import de.tudresden.xr.reader.WorkbookSheetData;
+import de.tudresden.xr.utils.DirectoryWatcher;
 import de.tudresden.xr.utils.FileUtils;
 import de.tudresden.xr.utils.WorkbookUtils;
 
@@ -41,50 +62,96 @@ public class CellAnnotationsExporter {
 	 * 
 	 * @param range its a rectangular area of the sheet, covering one or more cells
 	 * @param sheet an object that represents the worksheet where the range is located
-	 * @param eval a formula evaluator, which provides methods to excess the value of formula cells
+	 * @param eval a formula evaluator. not used anymore, the formula cells are valid by their type, without evaluating them
 	 * @return the list of CellRangeAddresses, pointing to the valid cells of the given range
 	 */
 	public static List<CellRangeAddress> getValidCellAddressesInRange(CellRangeAddress range, Sheet sheet, FormulaEvaluator eval, boolean asMerged, boolean withHidden){
+		return getValidCellAddressesInRange(range, new WorkbookSheetData(sheet), asMerged, withHidden);
+	}
+	
+	
+	/**
+	 * Get a list of valid cells inside the specified range (see above)
+	 * The rows of the range are scanned once. The merged areas are swept along with the rows, so that only the areas 
+	 * that span the current row are checked. Rows that are not covered by a merged area are scanned only at their non-empty cells.
+	 * 
+	 * @param range its a rectangular area of the sheet, covering one or more cells
+	 * @param sheet an object that provides the cells, merged regions, and the visibility of rows and columns of the worksheet
+	 * @return the list of CellRangeAddresses, pointing to the valid cells of the given range
+	 */
+	public static List<CellRangeAddress> getValidCellAddressesInRange(CellRangeAddress range, SheetData sheet, boolean asMerged, boolean withHidden){
 		
-		// identify merged areas of the sheet
-		HashMap<CellRangeAddress, Cell> mergedAreas = new HashMap<CellRangeAddress, Cell>();
-		for (int i=0; i<sheet.getNumMergedRegions(); i++){
-			CellRangeAddress nextMerged = sheet.getMergedRegion(i);
+		// identify merged areas of the sheet. 
+		// the value is true when the first cell of the merged area is valid 
+		HashMap<CellRangeAddress, Boolean> mergedAreas = new HashMap<CellRangeAddress, Boolean>();
+		List<CellRangeAddress> pendingMerged = new ArrayList<CellRangeAddress>();
+		for (CellRangeAddress nextMerged: sheet.getMergedRegions()){
 			if(nextMerged.intersects(range)){
 				
-				Row mergedRow = null;
+				int mergedRow = -1;
 				for (int j = nextMerged.getFirstRow(); j <= nextMerged.getLastRow(); j++) {
-					Row sheetRow = sheet.getRow(j);
-					if (sheetRow != null && (withHidden || !(sheetRow.getZeroHeight() || sheetRow.getHeight() == 0))){
-						mergedRow = sheetRow;
+					if (sheet.containsRow(j) && (withHidden || !sheet.isRowHidden(j))){
+						mergedRow = j;
 						break;
 					}
 				}
 				
-				Cell firstMergedCell = mergedRow.getCell(nextMerged.getFirstColumn());
-				if(firstMergedCell!=null){		
-					String cellValue = CellUtils.getCellValue(firstMergedCell, eval);
-					if(firstMergedCell.getCellTypeEnum()==CellType.FORMULA || firstMergedCell.getCellTypeEnum()==CellType.ERROR ||
-							(cellValue.length()>0 && !cellValue.matches("^\\s+$"))){		
-						mergedAreas.put(nextMerged, firstMergedCell);
-					}else{
-						mergedAreas.put(nextMerged, null);
-					}
+				// all the rows of the merged area are missing or hidden
+				if(mergedRow<0)
+					continue;
+				
+				if(sheet.containsCell(mergedRow, nextMerged.getFirstColumn())){
+					mergedAreas.put(nextMerged, sheet.isNonEmptyCell(mergedRow, nextMerged.getFirstColumn()));
+					pendingMerged.add(nextMerged);
 			 	}							
 			}
 		}
+		
+		// order the merged areas by their first row, to sweep them along with the rows of the range
+		Collections.sort(pendingMerged, new Comparator<CellRangeAddress>() {
+			@Override
+			public int compare(CellRangeAddress a, CellRangeAddress b) {
+				return Integer.compare(a.getFirstRow(), b.getFirstRow());
+			}
+		});
 
 		// identify valid cells
 		List<CellRangeAddress> cells = new ArrayList<CellRangeAddress>();
+		HashSet<CellRangeAddress> exportedMerged = new HashSet<CellRangeAddress>();
+		List<CellRangeAddress> activeMerged = new ArrayList<CellRangeAddress>();
+		int nextPending = 0;
 		for (int m = range.getFirstRow(); m <= range.getLastRow(); m++) {
-			Row row = sheet.getRow(m);
-			if(row==null || (!withHidden && (row.getZeroHeight() || row.getHeight() == 0)))
+			
+			// update the merged areas that span the current row
+			for (Iterator<CellRangeAddress> it = activeMerged.iterator(); it.hasNext();) {
+				if(it.next().getLastRow() < m)
+					it.remove();
+			}
+			while(nextPending < pendingMerged.size() && pendingMerged.get(nextPending).getFirstRow() <= m){
+				CellRangeAddress merged = pendingMerged.get(nextPending++);
+				if(merged.getLastRow() >= m)
+					activeMerged.add(merged);
+			}
+			
+			if(!sheet.containsRow(m) || (!withHidden && sheet.isRowHidden(m)))
 				 continue;
 			
+			if(activeMerged.isEmpty()){
+				// jump directly to the non-empty cells of the row
+				int n = sheet.getNextNonEmptyCell(m, range.getFirstColumn());
+				while(n>=0 && n <= range.getLastColumn()){
+					if(withHidden || !sheet.isColumnHidden(n)){
+						cells.add(new CellRangeAddress(m, m, n, n));
+					}
+					n = sheet.getNextNonEmptyCell(m, n + 1);
+				}
+				continue;
+			}
+			
 			for (int n = range.getFirstColumn(); n <= range.getLastColumn(); n++) {	
 					
 				CellRangeAddress thisMerged = null;
-				for(CellRangeAddress merged: mergedAreas.keySet()){
+				for(CellRangeAddress merged: activeMerged){
 					if(merged.isInRange(m,n)){
 						thisMerged = merged;
 						break;
@@ -92,33 +159,24 @@ public class CellAnnotationsExporter {
 				}
 		
 				if(thisMerged==null){
-					Cell cell = row.getCell(n);
-					if(cell!=null && (withHidden || !(sheet.isColumnHidden(n) || sheet.getColumnWidth(n)==0))){
-						String cellValue = CellUtils.getCellValue(cell, eval);
-
-						if(cell.getCellTypeEnum()==CellType.FORMULA || cell.getCellTypeEnum()==CellType.ERROR ||
-								(cellValue.length()>0 && !cellValue.matches("^\\s+$"))){ // cell is not empty or blank (i.e., containing only white spaces) 
+					if(sheet.containsCell(m, n) && (withHidden || !sheet.isColumnHidden(n))){
+						if(sheet.isNonEmptyCell(m, n)){ // cell is not empty or blank (i.e., containing only white spaces) 
 							cells.add(new CellRangeAddress(m, m, n, n));
 						}
 					}
 				}else{
 					if(asMerged){				
 						// if true export the whole merged area, 
-						Cell topLeftCell = mergedAreas.get(thisMerged);
-						if(topLeftCell!=null && !cells.contains(thisMerged)){
+						if(mergedAreas.get(thisMerged) && exportedMerged.add(thisMerged)){
 							cells.add(thisMerged);
 						}
 						
 					}
 					else{
 						// otherwise export the individual cells of the merged area
-						Cell topLeftCell = mergedAreas.get(thisMerged);
-						if(topLeftCell!=null)
+						if(mergedAreas.get(thisMerged))
 							cells.add(new CellRangeAddress(m, m, n, n));
 					}
-					
-					if(thisMerged.getLastRow()==m && thisMerged.getLastColumn()==n)
-						mergedAreas.remove(thisMerged);
 				}				
 			}
 		}		
@@ -126,6 +184,105 @@ public class CellAnnotationsExporter {
 	}
 	
 	
+	/**
+	 * Get the annotations of the valid cells from the given excel file
+	 * 
+	 * @param file the annotated excel file
+	 * @param exportAsMerged whether to treat merged areas as a single cell or as multiple individual cells
+	 * @return the list of cell annotations, or null if there are no annotations in the file
+	 * @throws Exception a generic exception, containing a string message with clarifications
+	 */
+	public static List<CellAnnotationRecord> exportWorkbook(File file, boolean exportAsMerged) throws Exception{
+		return exportWorkbook(file, exportAsMerged, false);
+	}
+	
+	
+	/**
+	 * Get the annotations of the valid cells from the given excel file
+	 * 
+	 * @param file the annotated excel file
+	 * @param exportAsMerged whether to treat merged areas as a single cell or as multiple individual cells
+	 * @param exportAsRectangles whether to cover the valid cells of each annotation with rectangles (see CellRectangles), 
+	 * instead of exporting them one by one. Not supported together with exportAsMerged.
+	 * @return the list of cell annotations, or null if there are no annotations in the file
+	 * @throws Exception a generic exception, containing a string message with clarifications
+	 */
+	public static List<CellAnnotationRecord> exportWorkbook(File file, boolean exportAsMerged, boolean exportAsRectangles) throws Exception{
+		
+		if(exportAsMerged && exportAsRectangles){
+			throw new Exception("The merged areas cannot be exported as rectangles.");
+		}
+		
+		// read annotations and the order of the sheets from the excel file. 
+		// the cells are loaded later, only for the selected sheet 
+		AnnotatedWorkbook awb = WorkbookUtils.openAnnotatedWorkbook(file);
+		try{									
+			WorkbookAnnotation wa = awb.getWorkbookAnnotation();
+			
+			// ensure that there is at least one annotated sheet per file
+			if (wa==null || wa.getWorksheetsMap().isEmpty()){
+				return null;
+			}
+			
+			// identify the annotated sheet. if multiple, consider the first one, from left to right (following the order of the tabs). 
+			WorksheetAnnotation firstAnnotated = null;
+			for(WorksheetAnnotation sha: wa.getWorksheetsMap().values()){
+				if(firstAnnotated==null || awb.getSheetIndex(firstAnnotated.getSheetName()) > awb.getSheetIndex(sha.getSheetName())){
+					firstAnnotated = sha;
+				}
+			}
+					
+			// get all range annotations from the selected sheet
+			// these ranges might have empty and or hidden cells, among those with a value
+			ArrayList<RangeAnnotation> allAnnotations = 
+					new ArrayList<RangeAnnotation>(wa.getRangeAnnotationsForSheet(firstAnnotated.getKey()));
+			String fileName = file.getName();
+			String sheetName = firstAnnotated.getSheetName();
+			int sheetIndex = firstAnnotated.getSheetIndex();
+			
+			// load the cells of the selected sheet, used to identify valid (non-empty) cells
+			SheetData sheet = awb.loadSheet(firstAnnotated.getSheetName());
+			
+			// for each range annotation identify the non-empty cells, and collect their annotation-info
+			List<CellAnnotationRecord> records = new ArrayList<CellAnnotationRecord>();
+			for(RangeAnnotation ra: allAnnotations){					
+				if(ra.getAnnotationLabel() != AnnotationLabel.Table){ // table annotations are treated separately
+					
+					// if the cell is part of table annotation, get the table name.
+					// otherwise export an empty string.
+					String tableName = "";
+					if(ra.getParent() instanceof TableAnnotation){
+						tableName = ((TableAnnotation) ra.getParent()).getTableName();		
+					}
+					
+					String shortTableName = "";
+					if(tableName!=null && tableName.length()>0){
+						int str_ix = tableName.lastIndexOf("TABLE");
+						shortTableName = "Table".concat(tableName.substring(str_ix+5));
+					}else{
+						shortTableName = tableName;
+					}
+					
+					// identify valid (non-empty) cells
+					CellRangeAddress cra = CellRangeAddress.valueOf(ra.getRangeAddress());						
+					List<CellRangeAddress> validCellAddresses = getValidCellAddressesInRange(cra, sheet, exportAsMerged, false); // omit hidden cells
+					if(exportAsRectangles){
+						validCellAddresses = CellRectangles.cover(validCellAddresses);
+					}
+					for(CellRangeAddress cellAddress: validCellAddresses){
+						records.add(new CellAnnotationRecord(fileName, sheetName, sheetIndex, shortTableName, ra.getAnnotationLabel(), cellAddress));
+					}			
+				}		
+			}
+			return records;
+			
+		}finally{
+			// release the excel file
+			awb.close();
+		}
+	}
+	
+	
 	/**
 	 * Export annotations from all excel files in the specified directory
 	 * 
@@ -134,146 +291,260 @@ public class CellAnnotationsExporter {
 	 * @param exportAsMerged whether to treat merged areas as a single cell or as multiple individual cells
 	 */
 	public static void exportAnnotations(String dirPath, String exportPath, boolean exportAsMerged){
+		exportAnnotations(dirPath, exportPath, exportAsMerged, new ExportOptions());
+	}
+	
+	
+	/**
+	 * Export annotations from all excel files in the specified directory. 
+	 * The files are processed in parallel, while the annotations are written in the order of the files (as in a sequential run).
+	 * 
+	 * @param dirPath the directory where the annotated excel files are found
+	 * @param exportPath the path to the file where the annotations will be exported (written). 
+	 * it is ignored, when the annotations are loaded into a database (see ExportOptions.setDatabase)
+	 * @param exportAsMerged whether to treat merged areas as a single cell or as multiple individual cells
+	 * @param options the number of files to process in parallel, whether to use virtual threads, and the format of the export
+	 */
+	public static void exportAnnotations(String dirPath, String exportPath, final boolean exportAsMerged, ExportOptions options){
 		
+		final boolean rectangles = options.isRectangles();
+		final boolean watch = options.isWatch();
 		
 		File annotations_dir = new File(dirPath);
 		if(!annotations_dir.exists()){
 			System.err.println("The specified inPath does not exists!\n"+dirPath);
-			System.exit(1);
+			abortExport(watch);
+			return;
 		}
 			
 		File[] annotatedFiles = FileUtils.getExcelFiles(new File(dirPath));
-		if(annotatedFiles.length==0){			
+		// when the directory is watched, an empty directory is exported as well (i.e., the rows of the deleted files are dropped)
+		if(annotatedFiles.length==0 && !watch){			
 			System.err.println("There are no annotated excel files in the specified directory!!!");
 			System.exit(1);
 		}
 		System.out.println("There are "+annotatedFiles.length+" files in the directory\n");
 		
+		// the options that affect the rows, which must be the same as those of the previous (or the aborted) export
+		String rowOptions = "cells csv" + (exportAsMerged ? " asMerged" : "") + (rectangles ? " asRectangles" : "");
+		
+		// an uncompressed csv export file is checkpointed, so that it can be resumed (-resume), if it is aborted
+		boolean resumable = options.getDatabase()==null && options.getShardSize()<=0 && !options.isCompress() 
+				&& options.getFormat()==ExportFormat.CSV && !options.isIncremental();
+		if(options.isResume() && !resumable){
+			System.err.println("The resumable export is only available for an uncompressed csv export file, without an incremental export.");
+			abortExport(watch);
+			return;
+		}
+		
+		// with a checkpoint of an aborted export, only the files that were not completed are processed
+		ExportCheckpoint exportCheckpoint = null;
+		if(resumable){
+			try{
+				exportCheckpoint = new ExportCheckpoint(new File(exportPath), rowOptions, options.isResume());
+			}catch(IOException ioEx){
+				System.err.println("An i/o exception occurred while attemting to read the checkpoint:\n"+ioEx.getMessage());
+				abortExport(watch);
+				return;
+			}
+			if(exportCheckpoint.isResumed()){
+				annotatedFiles = exportCheckpoint.getRemainingFiles(annotatedFiles);
+				System.out.println("The export is resumed from its last checkpoint. "+exportCheckpoint.getCompletedCount()
+						+" files were already exported\n");
+			}
+		}
+		final ExportCheckpoint checkpoint = exportCheckpoint;
+		
+		// the files with the same content are processed once. they are hashed on all the cores, before the processing starts
+		DuplicateWorkbooks<List<CellAnnotationRecord>> duplicateWorkbooks = null;
+		if(options.isDeduplicate()){
+			try{
+				duplicateWorkbooks = new DuplicateWorkbooks<List<CellAnnotationRecord>>(annotatedFiles, Runtime.getRuntime().availableProcessors());
+			}catch(IOException ioEx){
+				System.err.println("An i/o exception occurred while attemting to hash the excel files:\n"+ioEx.getMessage());
+				abortExport(watch);
+				return;
+			}
+			System.out.println("There are "+duplicateWorkbooks.getCopyCount()+" files with the same content as another file\n");
+		}
+		final DuplicateWorkbooks<List<CellAnnotationRecord>> duplicates = duplicateWorkbooks;
+		
+		// the results that are kept for the copies are held against the heap budget, along with the files in process
+		HeapBudgetScheduler scheduler = OrderedWorkbookExecutor.createScheduler(options);
+		if(duplicates!=null){
+			duplicates.setScheduler(scheduler);
+		}
+		
 		
-		// create the export file. if it already exists delete and re-create it
-		File exportFile = new File(exportPath);
+		// create the export file. if it already exists it is replaced
+		File exportFile = options.getDatabase()!=null ? null : new File(exportPath);
+		AnnotationWriter<CellAnnotationRecord> exportWriter = null;
+		IncrementalExport incrementalExport = null;
 		try{
-			if(exportFile.isDirectory()){
+			// when the annotations are loaded into a database, there is no export file
+			if(exportFile!=null && options.getShardSize()<=0 && exportFile.isDirectory()){
 				throw new IllegalArgumentException("The specified export path is a directory. Please, provide a path to a file, instead.");
 			}
+			if(exportFile!=null && options.getShardSize()>0 && exportFile.isFile()){
+				throw new IllegalArgumentException("The specified export path is a file. Please, provide a path to a directory for the part files, instead.");
+			}
+			
+			if(options.isIncremental()){
+				if(exportFile==null || options.getShardSize()>0 || options.isCompress() || options.getFormat()!=ExportFormat.CSV){
+					throw new IllegalArgumentException("The incremental export is only available for an uncompressed csv export file.");
+				}
+				// the previous export file is kept aside, before the new one is created
+				incrementalExport = new IncrementalExport(exportFile, rowOptions);
+			}
 			
-			if (!exportFile.exists()){
-				exportFile.createNewFile();
+			// the file stays open until all the annotations are written
+			if(checkpoint!=null && checkpoint.isResumed()){
+				// the export file is cut at the last checkpoint, and the rows of the remaining files are appended
+				exportWriter = new CsvCellAnnotationWriter(exportFile, checkpoint.getOffset());
+				if(options.isMappedOutput()){
+					exportWriter = new MappedAnnotationWriter<CellAnnotationRecord>((CsvCellAnnotationWriter) exportWriter, exportFile);
+				}
 			}else{
-				exportFile.delete();
-				exportFile.createNewFile();
+				exportWriter = createWriter(exportFile, options);
+			}
+			if(checkpoint!=null){
+				checkpoint.start((SplicingAnnotationWriter<CellAnnotationRecord>) exportWriter);
 			}
 			
 		}catch(IOException ioEx){
 			System.err.println("An i/o exception occurred while attemting to create the export file:\n"+ioEx.getMessage());
-			System.exit(1);
+			abortExport(watch);
+			return;
 		}catch(SecurityException secEx){
 			System.err.println("A security exception occurred while attemting to create the export file:\n"+secEx.getMessage());
-			System.exit(1);
+			abortExport(watch);
+			return;
 		}catch(IllegalArgumentException argEx){
 			System.err.println(argEx.getMessage());
-			System.exit(1);
+			abortExport(watch);
+			return;
 		}
-
+		final AnnotationWriter<CellAnnotationRecord> writer = exportWriter;
 		
-		// create a string builder to collect the annotation info 
-		StringBuilder sb = new StringBuilder();
+		// with a mapped output, the rows are encoded by the worker threads, as soon as each file is processed
+		final MappedAnnotationWriter<CellAnnotationRecord> mappedWriter = writer instanceof MappedAnnotationWriter ? 
+				(MappedAnnotationWriter<CellAnnotationRecord>) writer : null;
 		
-		// create the header row for the csv file
-		sb.append("FileName");
-		sb.append(",").append("SheetName");
-		sb.append(",").append("SheetIndex");
-		sb.append(",").append("TableName");
-		sb.append(",").append("AnnotationLabel");
-		sb.append(",").append("AnnotationAddress");
-		sb.append(",").append(String.valueOf("FirstColumn"));
-		sb.append(",").append(String.valueOf("FirstRow"));
-		sb.append(",").append(String.valueOf("LastColumn"));
-		sb.append(",").append(String.valueOf("LastRow"));
-		sb.append("\n");
-			
+		// with an incremental export, the rows of the unchanged files are copied from the previous export file
+		final IncrementalExport incremental = incrementalExport;
+		final SplicingAnnotationWriter<CellAnnotationRecord> splicingWriter = incremental!=null ? 
+				(SplicingAnnotationWriter<CellAnnotationRecord>) writer : null;
 		
-		for (File file : annotatedFiles) {	// for each excel file in the directory	
-			System.out.println(file.getName());
-			
-			try{									
-				// read annotations from the excel workbook
-				Workbook wb = WorkbookUtils.createWorkbook(file);
-				WorkbookAnnotation wa = WorkbookUtils.readAnnotationData(wb, file.getName());
-				
-				// ensure that there is at least one annotated sheet per file
-				if (wa==null || wa.getWorksheetsMap().isEmpty()){
-					System.err.println("\nError: There are no annotations in the file \""+file.getName()+"\". ");
-					System.exit(1);
-				}
-				
-				// identify the annotated sheet. if multiple, consider the first one, from left to right (following the order of the tabs). 
-				WorksheetAnnotation firstAnnotated = null;
-				for(WorksheetAnnotation sha: wa.getWorksheetsMap().values()){
-					if(firstAnnotated==null || wb.getSheetIndex(firstAnnotated.getSheetName()) > wb.getSheetIndex(sha.getSheetName())){
-						firstAnnotated = sha;
+		boolean completed = false;
+		try{
+			// the files are processed by the task (in parallel), and their annotations are written by the handler (in order)
+			OrderedWorkbookExecutor.run(annotatedFiles, options, scheduler, new OrderedWorkbookExecutor.WorkbookTask<List<CellAnnotationRecord>>() {
+				@Override
+				public List<CellAnnotationRecord> process(File file) throws Exception {
+					if(duplicates!=null && duplicates.isCopy(file)){
+						// the rows are those of the first file with the same content (see the handler)
+						return new ArrayList<CellAnnotationRecord>();
 					}
+					if(incremental!=null && incremental.check(file, duplicates!=null ? duplicates.getCopies(file) : new ArrayList<File>())){
+						return new ArrayList<CellAnnotationRecord>();
+					}
+					List<CellAnnotationRecord> records = exportWorkbook(file, exportAsMerged, rectangles);
+					if(records!=null && mappedWriter!=null){
+						mappedWriter.encodeWorkbook(file.getName(), records);
+					}
+					return records;
 				}
-						
-				// get all range annotations from the selected sheet
-				// these ranges might have empty and or hidden cells, among those with a value
-				ArrayList<RangeAnnotation> allAnnotations = 
-						new ArrayList<RangeAnnotation>(wa.getRangeAnnotationsForSheet(firstAnnotated.getKey()));
-				String fileName = file.getName();
-				String sheetName = firstAnnotated.getSheetName();
-				int sheetIndex = firstAnnotated.getSheetIndex();
-				
-				// create Apache POI objects, used to identify valid (non-empty) cells
-				Sheet sheet = wb.getSheet(firstAnnotated.getSheetName());
-				FormulaEvaluator frmlEval = wb.getCreationHelper().createFormulaEvaluator(); 
-				
-				// for each range annotation identify the non-empty cells, and append their annotation-info
-				for(RangeAnnotation ra: allAnnotations){					
-					if(ra.getAnnotationLabel() != AnnotationLabel.Table){ // table annotations are treated separately
-						
-						String label = ra.getAnnotationLabel().name();	
-						
-						// if the cell is part of table annotation, get the table name.
-						// otherwise export an empty string.
-						String tableName = "";
-						if(ra.getParent() instanceof TableAnnotation){
-							tableName = ((TableAnnotation) ra.getParent()).getTableName();		
+			}, new OrderedWorkbookExecutor.ResultHandler<List<CellAnnotationRecord>>() {
+				@Override
+				public void handle(File file, List<CellAnnotationRecord> records, Exception error) throws IOException {
+					System.out.println(file.getName());
+					
+					boolean isCopy = duplicates!=null && duplicates.isCopy(file);
+					if(isCopy){
+						try{
+							records = duplicates.take(file);
+						}catch(Exception ex){
+							error = ex;
 						}
-						
-						String shortTableName = "";
-						if(tableName!=null && tableName.length()>0){
-							int str_ix = tableName.lastIndexOf("TABLE");
-							shortTableName = "Table".concat(tableName.substring(str_ix+5));
-						}else{
-							shortTableName = tableName;
+					}else if(duplicates!=null){
+						duplicates.keep(file, records, error);
+					}
+					
+					if(error!=null){
+						error.printStackTrace();
+						if(checkpoint!=null){
+							// the file is skipped, as in a run without a checkpoint
+							checkpoint.completed(file);
 						}
-						
-						// identify valid (non-empty) cells
-						CellRangeAddress cra = CellRangeAddress.valueOf(ra.getRangeAddress());						
-						List<CellRangeAddress> validCellAddresses = getValidCellAddressesInRange(cra, sheet, frmlEval, exportAsMerged, false); // omit hidden cells
-						for(CellRangeAddress cellAddress: validCellAddresses){
-								// export the annotation for each valid cell 
-								sb.append("\"").append(fileName).append("\"").append(",");
-								sb.append("\"").append(sheetName).append("\"").append(",");
-								sb.append(sheetIndex).append(",");
-								sb.append("\"").append(shortTableName).append("\"").append(",");
-								
-								sb.append(label).append(",");
-								sb.append(cellAddress.formatAsString()).append(",");		
-								sb.append(String.valueOf(cellAddress.getFirstColumn())).append(",");
-								sb.append(String.valueOf(cellAddress.getFirstRow())).append(",");
-								sb.append(String.valueOf(cellAddress.getLastColumn())).append(",");
-								sb.append(String.valueOf(cellAddress.getLastRow()));
-								sb.append("\n");
-						}			
-					}		
-				}			
-				
-				FileUtils.appendToFile(exportFile, sb.toString());
-				sb.setLength(0);
-				
-			}catch(Exception ex){				
-				ex.printStackTrace();
+						return;
+					}
+					
+					// ensure that there is at least one annotated sheet per file
+					if(records==null){
+						System.err.println("\nError: There are no annotations in the file \""+file.getName()+"\". ");
+						if(watch){
+							// the file is exported again, once it is modified
+							return;
+						}
+						if(checkpoint!=null){
+							checkpoint.checkpoint(); // resume from this file, once it is fixed
+						}
+						writer.close(); // keep the annotations of the previous files
+						System.exit(1);
+					}
+					
+					long offset = splicingWriter!=null ? splicingWriter.getOffset() : 0;
+					
+					// export the annotation for each valid cell (unless the rows are already encoded, or copied)
+					if(incremental!=null && incremental.isUnchanged(file)){
+						incremental.splice(file, splicingWriter);
+					}else if(isCopy){
+						for(CellAnnotationRecord record: records){
+							writer.write(record.withFileName(file.getName()));
+						}
+					}else if(mappedWriter==null){
+						for(CellAnnotationRecord record: records){
+							writer.write(record);
+						}
+					}
+					writer.endWorkbook(file.getName());
+					
+					if(incremental!=null){
+						incremental.record(file, offset, splicingWriter.getOffset() - offset);
+					}
+					if(checkpoint!=null){
+						checkpoint.completed(file);
+					}
+				}
+			});
+			completed = true;
+		}catch(Exception ex){
+			ex.printStackTrace();
+		}finally{
+			try{
+				if(checkpoint!=null && !completed){
+					// the rows of the completed files are kept for the next run
+					checkpoint.checkpoint();
+				}
+				writer.close();
+				if(checkpoint!=null){
+					if(completed){
+						checkpoint.delete();
+					}else{
+						checkpoint.close();
+						System.err.println("\nThe export was aborted. Run it again with -resume, to continue from the last checkpoint");
+					}
+				}
+				if(incremental!=null){
+					if(completed){
+						incremental.commit();
+						System.out.println("\nThe rows of "+incremental.getUnchangedCount()+" unchanged files were copied from the previous export");
+					}else{
+						incremental.close();
+					}
+				}
+			}catch(IOException ioEx){
+				System.err.println("An i/o exception occurred while attemting to write the export file:\n"+ioEx.getMessage());
 			}
 		}
 		
@@ -281,6 +552,74 @@ public class CellAnnotationsExporter {
 	}
 	
 	
+	/**
+	 * Stop the export after an error. When the directory is watched, the process keeps running, 
+	 * and the export runs again after the next change in the directory (see DirectoryWatcher)
+	 * 
+	 * @param watch whether the directory is watched
+	 */
+	private static void abortExport(boolean watch){
+		if(!watch){
+			System.exit(1);
+		}
+	}
+	
+	
+	/**
+	 * Create the writer for the cell annotations, in the format specified by the options
+	 * 
+	 * @param exportFile the path to the file where the annotations will be exported (written), 
+	 * or to the directory of the part files, when the export is sharded
+	 * @param options the format of the export file, whether to compress it, and the number of files per part,
+	 * or the database where the annotations are loaded, instead
+	 * @return the writer, which keeps the file (or the database) open until it is closed
+	 * @throws IOException if the file cannot be created
+	 */
+	public static AnnotationWriter<CellAnnotationRecord> createWriter(File exportFile, final ExportOptions options) throws IOException{
+		
+		if(options.getDatabase()!=null){
+			return new JdbcCellAnnotationWriter(options.getDatabase(), options.getTransactionSize());
+		}
+		
+		if(options.getShardSize()>0){
+			String extension = options.getFormat().getExtension() + (options.isCompress() ? ".gz" : "");
+			return new ShardedAnnotationWriter<CellAnnotationRecord>(exportFile, options.getShardSize(), extension, 
+					new ShardedAnnotationWriter.PartWriterFactory<CellAnnotationRecord>() {
+				@Override
+				public FileAnnotationWriter<CellAnnotationRecord> create(File part) throws IOException {
+					return createFileWriter(part, options);
+				}
+			});
+		}
+		return createFileWriter(exportFile, options);
+	}
+	
+	
+	/**
+	 * @param exportFile the path to the file where the annotations will be exported (written)
+	 * @param options the format of the export file, whether to compress it, and whether the rows are encoded by the worker threads
+	 * @return the writer of the file
+	 * @throws IOException if the file cannot be created
+	 */
+	private static FileAnnotationWriter<CellAnnotationRecord> createFileWriter(File exportFile, ExportOptions options) throws IOException{
+		
+		switch(options.getFormat()){
+		case ARROW:
+			if(options.isCompress()){
+				throw new IllegalArgumentException("The arrow export file cannot be compressed, since its readers memory map it.");
+			}
+			return new ArrowCellAnnotationWriter(exportFile);
+		case BINARY:
+			return new BinaryCellAnnotationWriter(exportFile, options.isCompress());
+		default:
+			if(options.isMappedOutput()){
+				return new MappedAnnotationWriter<CellAnnotationRecord>(new CsvCellAnnotationWriter(exportFile, options.isCompress()), exportFile);
+			}
+			return new CsvCellAnnotationWriter(exportFile, options.isCompress());
+		}
+	}
+	
+	
 	/**
 	 * @param args
 	 */
@@ -289,9 +628,16 @@ public class CellAnnotationsExporter {
 		String inPath = null;
 		String outPath = null;
 		boolean asMerged = false;
+		String maxSize = null;
+		String threads = null;
+		String heapBudget = null;
+		String shardSize = null;
+		String format = null;
+		String transactionSize = null;
+		ExportOptions options = new ExportOptions();
 		
-		if(args.length<4 || args.length>5){
-			System.err.println("Expected 4 + 1 optional arguments, instead was given " + args.length);
+		if(args.length<4 || args.length>27){
+			System.err.println("Expected 4 + 23 optional arguments, instead was given " + args.length);
 			System.exit(1);
 		}		
 
@@ -309,6 +655,72 @@ public class CellAnnotationsExporter {
         	if(args[j].compareToIgnoreCase("-asMerged")==0){
         		asMerged = true;
         	}
+        	
+        	if(args[j].compareToIgnoreCase("-asRectangles")==0){
+        		options.setRectangles(true);
+        	}
+        	
+        	if(args[j].compareToIgnoreCase("-maxSize")==0){
+        		if (j+1<args.length)
+        			maxSize = args[j+1];
+        	}
+        	
+        	if(args[j].compareToIgnoreCase("-threads")==0){
+        		if (j+1<args.length)
+        			threads = args[j+1];
+        	}
+        	
+        	if(args[j].compareToIgnoreCase("-virtualThreads")==0){
+        		options.setVirtualThreads(true);
+        	}
+        	
+        	if(args[j].compareToIgnoreCase("-heapBudget")==0){
+        		if (j+1<args.length)
+        			heapBudget = args[j+1];
+        	}
+        	
+        	if(args[j].compareToIgnoreCase("-format")==0){
+        		if (j+1<args.length)
+        			format = args[j+1];
+        	}
+        	
+        	if(args[j].compareToIgnoreCase("-compress")==0){
+        		options.setCompress(true);
+        	}
+        	
+        	if(args[j].compareToIgnoreCase("-shardSize")==0){
+        		if (j+1<args.length)
+        			shardSize = args[j+1];
+        	}        	
+        	if(args[j].compareToIgnoreCase("-outDb")==0){
+        		if (j+1<args.length)
+        			options.setDatabase(args[j+1]);
+        	}
+        	
+        	if(args[j].compareToIgnoreCase("-transactionSize")==0){
+        		if (j+1<args.length)
+        			transactionSize = args[j+1];
+        	}
+        	
+        	if(args[j].compareToIgnoreCase("-mappedOutput")==0){
+        		options.setMappedOutput(true);
+        	}
+        	
+        	if(args[j].compareToIgnoreCase("-incremental")==0){
+        		options.setIncremental(true);
+        	}
+        	
+        	if(args[j].compareToIgnoreCase("-dedup")==0){
+        		options.setDeduplicate(true);
+        	}
+        	
+        	if(args[j].compareToIgnoreCase("-watch")==0){
+        		options.setWatch(true);
+        	}
+        	
+        	if(args[j].compareToIgnoreCase("-resume")==0){
+        		options.setResume(true);
+        	}
         }
         
         if(inPath==null){
@@ -316,11 +728,151 @@ public class CellAnnotationsExporter {
 			System.exit(1);
         }
         
-        if(outPath==null){
-        	System.err.println("Missing argument -outPath!");
+        if(outPath==null && options.getDatabase()==null){
+        	System.err.println("Missing argument -outPath, or -outDb!");
+			System.exit(1);
+        }
+        
+        if(outPath!=null && options.getDatabase()!=null){
+        	System.err.println("The arguments -outPath and -outDb cannot be used together!");
+			System.exit(1);
+        }
+        
+        if(options.getDatabase()!=null && (format!=null || options.isCompress() || shardSize!=null)){
+        	System.err.println("The argument -outDb cannot be used together with -format, -compress, or -shardSize!");
+			System.exit(1);
+        }
+        
+        // an arrow file is memory mapped by its readers, without parsing
+        if(options.isCompress() && format!=null && format.compareToIgnoreCase("arrow")==0){
+        	System.err.println("The argument -compress cannot be used together with -format arrow!");
+			System.exit(1);
+        }
+        
+        if(options.isMappedOutput() && (options.getDatabase()!=null || shardSize!=null 
+        		|| (format!=null && format.compareToIgnoreCase("csv")!=0))){
+        	System.err.println("The argument -mappedOutput is only available for a csv export file, without -shardSize!");
 			System.exit(1);
         }
+        
+        // the watch mode exports only the new and modified files, each time
+        if(options.isWatch()){
+        	options.setIncremental(true);
+        }
+        
+        if(options.isIncremental() && (options.getDatabase()!=null || shardSize!=null || options.isCompress()
+        		|| (format!=null && format.compareToIgnoreCase("csv")!=0))){
+        	System.err.println("The arguments -incremental and -watch are only available for an uncompressed csv export file, without -shardSize!");
+			System.exit(1);
+        }
+        
+        if(options.isResume() && (options.getDatabase()!=null || shardSize!=null || options.isCompress() || options.isIncremental()
+        		|| (format!=null && format.compareToIgnoreCase("csv")!=0))){
+        	System.err.println("The argument -resume is only available for an uncompressed csv export file, without -shardSize, -incremental, or -watch!");
+			System.exit(1);
+        }
+        
+        if(asMerged && options.isRectangles()){
+        	System.err.println("The arguments -asMerged and -asRectangles cannot be used together!");
+			System.exit(1);
+        }
+        
+        if(maxSize!=null){
+        	try{
+        		// the ceiling is given in megabytes
+        		WorkbookUtils.setMaxUncompressedSize(Long.parseLong(maxSize)*1024*1024);
+        	}catch(NumberFormatException nfEx){
+        		System.err.println("The argument -maxSize expects the size in megabytes, instead was given " + maxSize);
+        		System.exit(1);
+        	}
+        }
+             
+        // with virtual threads, the default is to parse as many files as the available cores
+        if(options.isVirtualThreads()){
+        	if(!OrderedWorkbookExecutor.isVirtualThreadsSupported()){
+        		System.err.println("The argument -virtualThreads requires Java 21 or newer, instead is running on Java " + System.getProperty("java.version"));
+        		System.exit(1);
+        	}
+        	options.setThreads(Runtime.getRuntime().availableProcessors());
+        }
+        if(threads!=null){
+        	try{
+        		options.setThreads(Integer.parseInt(threads));
+        	}catch(NumberFormatException nfEx){
+        		System.err.println("The argument -threads expects the number of threads, instead was given " + threads);
+        		System.exit(1);
+        	}
+        }
+        
+        if(heapBudget!=null){
+        	try{
+        		// the budget is given in megabytes
+        		options.setHeapBudget(Long.parseLong(heapBudget)*1024*1024);
+        	}catch(NumberFormatException nfEx){
+        		System.err.println("The argument -heapBudget expects the size in megabytes, instead was given " + heapBudget);
+        		System.exit(1);
+        	}
+        }
+        
+        if(shardSize!=null){
+        	try{
+        		options.setShardSize(Integer.parseInt(shardSize));
+        	}catch(NumberFormatException nfEx){
+        		System.err.println("The argument -shardSize expects the number of files per part, instead was given " + shardSize);
+        		System.exit(1);
+        	}
+        }
+        
+        if(transactionSize!=null){
+        	try{
+        		options.setTransactionSize(Integer.parseInt(transactionSize));
+        	}catch(NumberFormatException nfEx){
+        		System.err.println("The argument -transactionSize expects the number of files per transaction, instead was given " + transactionSize);
+        		System.exit(1);
+        	}
+        }
+        
+        if(format!=null){
+        	try{
+        		options.setFormat(ExportFormat.valueOf(format.toUpperCase()));
+        		if(options.getFormat()==ExportFormat.JSONL){
+        			throw new IllegalArgumentException();
+        		}
+        	}catch(IllegalArgumentException argEx){
+        		System.err.println("The argument -format expects one of csv, arrow, or binary, instead was given " + format);
+        		System.exit(1);
+        	}
+        }
              
-		exportAnnotations(inPath, outPath, asMerged);		
+		if(options.isWatch()){
+			watchAnnotations(inPath, outPath, asMerged, options);
+		}else{
+			exportAnnotations(inPath, outPath, asMerged, options);
+		}
+	}
+	
+	
+	/**
+	 * Export annotations from all excel files in the specified directory, and export them again whenever excel files are added, 
+	 * modified, or deleted in the directory. Only the new and modified files are parsed each time (see IncrementalExport).
+	 * This runs until the process is stopped.
+	 * 
+	 * @param dirPath the directory where the annotated excel files are found
+	 * @param exportPath the path to the file where the annotations will be exported (written)
+	 * @param exportAsMerged whether to treat merged areas as a single cell or as multiple individual cells
+	 * @param options the options of the export, which is incremental
+	 */
+	private static void watchAnnotations(final String dirPath, final String exportPath, final boolean exportAsMerged, final ExportOptions options){
+		try{
+			DirectoryWatcher.watch(new File(dirPath), DirectoryWatcher.DEFAULT_QUIET_PERIOD, new Runnable() {
+				@Override
+				public void run() {
+					exportAnnotations(dirPath, exportPath, exportAsMerged, options);
+				}
+			});
+		}catch(IOException ioEx){
+			System.err.println("An i/o exception occurred while watching the directory:\n"+ioEx.getMessage());
+			System.exit(1);
+		}
 	}
 }
@@ -0,0 +1,216 @@
+/**
+ * 
+ */
+package de.tudresden.xr.main;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import de.tudresden.xr.export.BinaryCellAnnotationReader;
+import de.tudresden.xr.export.BinaryCellAnnotationWriter;
+import de.tudresden.xr.export.CellAnnotationRecord;
+import de.tudresden.xr.export.ExportFileStream;
+import de.tudresden.xr.export.ExportFormat;
+import de.tudresden.xr.export.ExportManifest;
+
+
+/**
+ * Merge the part files of a sharded export (see the -shardSize option of the exporters) into a single file.
+ * The parts are verified against the checksums in the manifest, and they are concatenated in the order of the manifest,
+ * i.e., in the order of the excel files. Thus, the result is the same as the export of a run without sharding.
+ * Csv, json lines, and binary parts are supported, compressed or not.
+ */
+public class ExportPartsMerger {
+
+
+	/**
+	 * Merge the parts listed in the manifest of the given directory
+	 *
+	 * @param directory the directory of the part files
+	 * @param exportFile the file where the merged export will be written
+	 * @throws Exception a generic exception, containing a string message with clarifications
+	 */
+	public static void mergeParts(File directory, File exportFile) throws Exception{
+
+		List<ExportManifest.Part> parts = ExportManifest.read(directory).getParts();
+		if(parts.isEmpty()){
+			throw new Exception("There are no parts in the manifest of the directory \""+directory.getPath()+"\".");
+		}
+
+		// the parts are verified before anything is written
+		for (ExportManifest.Part part : parts) {
+			File file = new File(directory, part.getName());
+			if(!file.exists()){
+				throw new Exception("The part \""+part.getName()+"\" does not exist.");
+			}
+			if(ExportManifest.checksum(file)!=part.getChecksum()){
+				throw new Exception("The checksum of the part \""+part.getName()+"\" does not match the manifest.");
+			}
+		}
+
+		String name = parts.get(0).getName();
+		boolean compress = name.endsWith(".gz");
+		if(compress){
+			name = name.substring(0, name.length() - 3);
+		}
+
+		if(name.endsWith(ExportFormat.CSV.getExtension())){
+			mergeTextParts(directory, parts, exportFile, compress, true);
+		}else if(name.endsWith(ExportFormat.JSONL.getExtension())){
+			mergeTextParts(directory, parts, exportFile, compress, false);
+		}else if(name.endsWith(ExportFormat.BINARY.getExtension())){
+			mergeBinaryParts(directory, parts, exportFile, compress);
+		}else{
+			throw new Exception("The parts of the format of \""+parts.get(0).getName()+"\" cannot be merged. Please, read the parts directly.");
+		}
+	}
+
+
+	/**
+	 * Concatenate the csv, or json lines, parts. The header row of the csv parts is kept only from the first part.
+	 *
+	 * @param directory the directory of the part files
+	 * @param parts the parts, in order
+	 * @param exportFile the file where the merged export will be written
+	 * @param compress whether the parts, and the merged export, are gzip streams
+	 * @param hasHeader whether the parts start with a header row
+	 * @throws IOException if a part cannot be read, or the merged export cannot be written
+	 */
+	private static void mergeTextParts(File directory, List<ExportManifest.Part> parts, File exportFile, boolean compress, boolean hasHeader) throws IOException{
+
+		OutputStream os = new ExportFileStream(exportFile, compress);
+		try{
+			byte[] buffer = new byte[1 << 16];
+			for (int i = 0; i < parts.size(); i++) {
+				System.out.println(parts.get(i).getName());
+
+				InputStream is = openPart(new File(directory, parts.get(i).getName()), compress);
+				try{
+					// skip the header row, except for the first part
+					if(hasHeader && i>0){
+						int b;
+						while((b = is.read())>=0 && b!='\n'){
+							// the rest of the header row
+						}
+					}
+
+					int read;
+					while((read = is.read(buffer))>=0){
+						os.write(buffer, 0, read);
+					}
+				}finally{
+					is.close();
+				}
+			}
+		}finally{
+			os.close();
+		}
+	}
+
+
+	/**
+	 * Re-encode the records of the binary parts in a single file, since each part has its own dictionaries of names
+	 *
+	 * @param directory the directory of the part files
+	 * @param parts the parts, in order
+	 * @param exportFile the file where the merged export will be written
+	 * @param compress whether the merged export is a gzip stream
+	 * @throws IOException if a part cannot be read, or the merged export cannot be written
+	 */
+	private static void mergeBinaryParts(File directory, List<ExportManifest.Part> parts, File exportFile, boolean compress) throws IOException{
+
+		BinaryCellAnnotationWriter writer = new BinaryCellAnnotationWriter(exportFile, compress);
+		try{
+			for (ExportManifest.Part part : parts) {
+				System.out.println(part.getName());
+
+				BinaryCellAnnotationReader reader = new BinaryCellAnnotationReader(new File(directory, part.getName()));
+				try{
+					CellAnnotationRecord record;
+					while((record = reader.read())!=null){
+						writer.write(record);
+					}
+				}finally{
+					reader.close();
+				}
+				writer.endWorkbook(part.getName());
+			}
+		}finally{
+			writer.close();
+		}
+	}
+
+
+	/**
+	 * @param file a part file
+	 * @param compress whether the part is a gzip stream
+	 * @return the (decompressed) content of the part
+	 * @throws IOException if the part cannot be opened
+	 */
+	private static InputStream openPart(File file, boolean compress) throws IOException{
+
+		InputStream is = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+		if(compress){
+			is = new BufferedInputStream(new GZIPInputStream(is, 1 << 16), 1 << 16);
+		}
+		return is;
+	}
+
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+
+		String inPath = null;
+		String outPath = null;
+
+		if(args.length!=4){
+			System.err.println("Expected 4 arguments, instead was given " + args.length);
+			System.exit(1);
+		}
+
+        for (int j=0; j<args.length; j++) {
+        	if(args[j].compareToIgnoreCase("-inPath")==0){
+        		if (j+1<args.length)
+        			inPath = args[j+1];
+        	}
+
+        	if(args[j].compareToIgnoreCase("-outPath")==0){
+        		if (j+1<args.length)
+        			outPath = args[j+1];
+        	}
+        }
+
+        if(inPath==null){
+        	System.err.println("Missing argument -inPath!");
+			System.exit(1);
+        }
+
+        if(outPath==null){
+        	System.err.println("Missing argument -outPath!");
+			System.exit(1);
+        }
+
+        File directory = new File(inPath);
+        if(!directory.isDirectory()){
+        	System.err.println("The specified inPath is not a directory!\n"+inPath);
+			System.exit(1);
+        }
+
+        try{
+        	mergeParts(directory, new File(outPath));
+        }catch(Exception ex){
+        	System.err.println(ex.getMessage());
+        	System.exit(1);
+        }
+
+        System.out.println("\nDone!");
+	}
+}
@@ -4,23 +4,106 @@
 package de.tudresden.xr.main;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.ss.util.CellRangeAddress;
-
-
+import de.tudresden.xr.export.AnnotationWriter;
+import de.tudresden.xr.export.CsvRangeAnnotationWriter;
+import de.tudresden.xr.export.DuplicateWorkbooks;
+import de.tudresden.xr.export.ExportFormat;
+import de.tudresden.xr.export.ExportOptions;
+import de.tudresden.xr.export.FileAnnotationWriter;
+import de.tudresden.xr.export.HeapBudgetScheduler;
+import de.tudresden.xr.export.IncrementalExport;
+import de.tudresden.xr.export.JdbcRangeAnnotationWriter;
+import de.tudresden.xr.export.JsonlRangeAnnotationWriter;
+import de.tudresden.xr.export.OrderedWorkbookExecutor;
+import de.tudresden.xr.export.RangeAnnotationRecord;
+import de.tudresden.xr.export.ShardedAnnotationWriter;
+import de.tudresden.xr.export.SplicingAnnotationWriter;
 import de.tudresden.xr.model.annotation.RangeAnnotation;
 import de.tudresden.xr.model.annotation.TableAnnotation;
 import de.tudresden.xr.model.annotation.WorkbookAnnotation;
 import de.tudresden.xr.model.annotation.WorksheetAnnotation;
 import de.tudresden.xr.model.enums.AnnotationLabel;
+import de.tudresden.xr.utils.AnnotationCache;
+import de.tudresden.xr.utils.DirectoryWatcher;
 import de.tudresden.xr.utils.FileUtils;
 import de.tudresden.xr.utils.WorkbookUtils;
 
 
 
 public class RangeAnnotationsExporter {
-
+	
+	// the default limit for the size of the annotation cache (in bytes)
+	private static final long DEFAULT_CACHE_SIZE = 256L*1024*1024;
+	
+	
+	/**
+	 * Get the table and range annotations from the given excel file
+	 * 
+	 * @param file the annotated excel file
+	 * @return the list of annotations, sheet by sheet. For each sheet the table annotations precede the range annotations.
+	 * @throws Exception a generic exception, containing a string message with clarifications
+	 */
+	public static List<RangeAnnotationRecord> exportWorkbook(File file) throws Exception{
+		
+		WorkbookAnnotation wa = WorkbookUtils.readAnnotationData(file);
+		
+		if(wa==null)
+			throw new Exception("The file \""+file.getName()+"\" does not contain annotations!!!");
+		
+		List<RangeAnnotationRecord> records = new ArrayList<RangeAnnotationRecord>();
+		for (String sheetKey : wa.getWorksheetsMap().keySet()){	
+			
+			// export table annotations from the sheet
+			for(TableAnnotation ta: wa.getTablesForSheet(sheetKey)){
+				if (!(ta.getParent() instanceof WorksheetAnnotation)){
+					throw new Exception("TableAnnotations can only have WorksheetAnnotations as parents!!!");
+				}
+				
+				records.add(new RangeAnnotationRecord(file.getName(), ta.getSheetName(), ta.getSheetIndex(), ta.getTableName(), 
+						AnnotationLabel.Table, ta.getSheetName(), ta.getRangeAddress()));
+			}
+								
+			
+			// export range annotations from the sheet
+			for (RangeAnnotation ra : wa.getRangeAnnotationsForSheet(sheetKey)){				
+					
+				// the parent can be either a table or a worksheet
+				String parentName = null;
+				if (ra.getParent() instanceof TableAnnotation){
+					parentName = ((TableAnnotation) ra.getParent()).getTableName();
+				}else if (ra.getParent() instanceof WorksheetAnnotation){
+					parentName = ra.getSheetName();
+				}else{
+					throw new Exception("RangeAnnotations can have as parent either a WorksheetAnnotation or TableAnnotation!!!");
+				}
+				
+				records.add(new RangeAnnotationRecord(file.getName(), ra.getSheetName(), ra.getSheetIndex(), ra.getName(), 
+						ra.getAnnotationLabel(), parentName, ra.getRangeAddress()));
+			}
+		}
+		return records;
+	}
+	
+	
+	/**
+	 * @param exportFile the path to the file where the annotations will be exported (written)
+	 * @param options the format of the export file, and whether to compress it
+	 * @return the writer of the file
+	 * @throws IOException if the file cannot be created
+	 */
+	private static FileAnnotationWriter<RangeAnnotationRecord> createFileWriter(File exportFile, ExportOptions options) throws IOException{
+		
+		if(options.getFormat()==ExportFormat.JSONL){
+			return new JsonlRangeAnnotationWriter(exportFile, options.isCompress());
+		}
+		return new CsvRangeAnnotationWriter(exportFile, options.isCompress());
+	}
+	
+	
 	/**
 	 * @param args
 	 */
@@ -28,9 +111,18 @@ public class RangeAnnotationsExporter {
 		
 		String dirPath = null;
 		String outputPath = null;
+		String maxSize = null;
+		String threads = null;
+		String heapBudget = null;
+		String shardSize = null;
+		String format = null;
+		String transactionSize = null;
+		String cacheDir = null;
+		String cacheSize = null;
+		ExportOptions options = new ExportOptions();
 		
-		if(args.length!=4){
-			System.err.println("Expected 4 arguments, instead was given " + args.length);
+		if(args.length<4 || args.length>27){
+			System.err.println("Expected 4 + 23 optional arguments, instead was given " + args.length);
 			System.exit(1);
 		}		
 
@@ -44,6 +136,71 @@ public class RangeAnnotationsExporter {
         		if (j+1<args.length)
         			outputPath = args[j+1];
         	}
+        	
+        	if(args[j].compareToIgnoreCase("-maxSize")==0){
+        		if (j+1<args.length)
+        			maxSize = args[j+1];
+        	}
+        	
+        	if(args[j].compareToIgnoreCase("-threads")==0){
+        		if (j+1<args.length)
+        			threads = args[j+1];
+        	}
+        	
+        	if(args[j].compareToIgnoreCase("-virtualThreads")==0){
+        		options.setVirtualThreads(true);
+        	}
+        	
+        	if(args[j].compareToIgnoreCase("-heapBudget")==0){
+        		if (j+1<args.length)
+        			heapBudget = args[j+1];
+        	}
+        	
+        	if(args[j].compareToIgnoreCase("-compress")==0){
+        		options.setCompress(true);
+        	}
+        	
+        	if(args[j].compareToIgnoreCase("-shardSize")==0){
+        		if (j+1<args.length)
+        			shardSize = args[j+1];
+        	}
+        	
+        	if(args[j].compareToIgnoreCase("-format")==0){
+        		if (j+1<args.length)
+        			format = args[j+1];
+        	}
+        	
+        	if(args[j].compareToIgnoreCase("-outDb")==0){
+        		if (j+1<args.length)
+        			options.setDatabase(args[j+1]);
+        	}
+        	
+        	if(args[j].compareToIgnoreCase("-transactionSize")==0){
+        		if (j+1<args.length)
+        			transactionSize = args[j+1];
+        	}
+        	
+        	if(args[j].compareToIgnoreCase("-incremental")==0){
+        		options.setIncremental(true);
+        	}
+        	
+        	if(args[j].compareToIgnoreCase("-dedup")==0){
+        		options.setDeduplicate(true);
+        	}
+        	
+        	if(args[j].compareToIgnoreCase("-watch")==0){
+        		options.setWatch(true);
+        	}
+        	
+        	if(args[j].compareToIgnoreCase("-cache")==0){
+        		if (j+1<args.length)
+        			cacheDir = args[j+1];
+        	}
+        	
+        	if(args[j].compareToIgnoreCase("-cacheSize")==0){
+        		if (j+1<args.length)
+        			cacheSize = args[j+1];
+        	}
         }
         
 		
@@ -52,116 +209,339 @@ public class RangeAnnotationsExporter {
 			System.exit(1);
         }
         
-        if(outputPath==null){
-        	System.err.println("Missing argument -outPath!");
+        if(outputPath==null && options.getDatabase()==null){
+        	System.err.println("Missing argument -outPath, or -outDb!");
+			System.exit(1);
+        }
+        
+        if(outputPath!=null && options.getDatabase()!=null){
+        	System.err.println("The arguments -outPath and -outDb cannot be used together!");
+			System.exit(1);
+        }
+        
+        if(options.getDatabase()!=null && (format!=null || options.isCompress() || shardSize!=null)){
+        	System.err.println("The argument -outDb cannot be used together with -format, -compress, or -shardSize!");
+			System.exit(1);
+        }
+        
+        if(options.isWatch()){
+        	options.setIncremental(true);
+        }
+        
+        if(options.isIncremental() && (options.getDatabase()!=null || shardSize!=null || options.isCompress())){
+        	System.err.println("The arguments -incremental and -watch are only available for an uncompressed csv, or jsonl, export file, without -shardSize!");
 			System.exit(1);
         }
         
+        if(maxSize!=null){
+        	try{
+        		// the ceiling is given in megabytes
+        		WorkbookUtils.setMaxUncompressedSize(Long.parseLong(maxSize)*1024*1024);
+        	}catch(NumberFormatException nfEx){
+        		System.err.println("The argument -maxSize expects the size in megabytes, instead was given " + maxSize);
+        		System.exit(1);
+        	}
+        }
+        
+        // with virtual threads, the default is to parse as many files as the available cores
+        if(options.isVirtualThreads()){
+        	if(!OrderedWorkbookExecutor.isVirtualThreadsSupported()){
+        		System.err.println("The argument -virtualThreads requires Java 21 or newer, instead is running on Java " + System.getProperty("java.version"));
+        		System.exit(1);
+        	}
+        	options.setThreads(Runtime.getRuntime().availableProcessors());
+        }
+        if(threads!=null){
+        	try{
+        		options.setThreads(Integer.parseInt(threads));
+        	}catch(NumberFormatException nfEx){
+        		System.err.println("The argument -threads expects the number of threads, instead was given " + threads);
+        		System.exit(1);
+        	}
+        }
+        
+        if(heapBudget!=null){
+        	try{
+        		// the budget is given in megabytes
+        		options.setHeapBudget(Long.parseLong(heapBudget)*1024*1024);
+        	}catch(NumberFormatException nfEx){
+        		System.err.println("The argument -heapBudget expects the size in megabytes, instead was given " + heapBudget);
+        		System.exit(1);
+        	}
+        }
+        
+        if(shardSize!=null){
+        	try{
+        		options.setShardSize(Integer.parseInt(shardSize));
+        	}catch(NumberFormatException nfEx){
+        		System.err.println("The argument -shardSize expects the number of files per part, instead was given " + shardSize);
+        		System.exit(1);
+        	}
+        }
+        
+        if(format!=null){
+        	try{
+        		options.setFormat(ExportFormat.valueOf(format.toUpperCase()));
+        		if(options.getFormat()!=ExportFormat.CSV && options.getFormat()!=ExportFormat.JSONL){
+        			throw new IllegalArgumentException();
+        		}
+        	}catch(IllegalArgumentException argEx){
+        		System.err.println("The argument -format expects one of csv, or jsonl, instead was given " + format);
+        		System.exit(1);
+        	}
+        }
+        
+        if(transactionSize!=null){
+        	try{
+        		options.setTransactionSize(Integer.parseInt(transactionSize));
+        	}catch(NumberFormatException nfEx){
+        		System.err.println("The argument -transactionSize expects the number of files per transaction, instead was given " + transactionSize);
+        		System.exit(1);
+        	}
+        }
+        if(cacheSize!=null && cacheDir==null){
+        	System.err.println("The argument -cacheSize requires the argument -cache!");
+			System.exit(1);
+        }
+        
+        if(cacheDir!=null){
+        	// the limit is given in megabytes
+        	long limit = DEFAULT_CACHE_SIZE;
+        	try{
+        		if(cacheSize!=null)
+        			limit = Long.parseLong(cacheSize)*1024*1024;
+        	}catch(NumberFormatException nfEx){
+        		System.err.println("The argument -cacheSize expects the size in megabytes, instead was given " + cacheSize);
+        		System.exit(1);
+        	}
+        	try{
+        		WorkbookUtils.setAnnotationCache(new AnnotationCache(new File(cacheDir), limit));
+        	}catch(IOException ioEx){
+        		System.err.println(ioEx.getMessage());
+        		System.exit(1);
+        	}
+        }
+        
+        // the watch mode exports only the new and modified files, each time
+        if(options.isWatch()){
+        	watchAnnotations(dirPath, outputPath, options);
+        }else{
+        	exportAnnotations(dirPath, outputPath, options);
+        }
+	}
+	
 	
+	/**
+	 * Export the table and range annotations from all excel files in the specified directory.
+	 * The files are processed in parallel, while the annotations are written in the order of the files (as in a sequential run).
+	 * 
+	 * @param dirPath the directory where the annotated excel files are found
+	 * @param exportPath the path to the file where the annotations will be exported (written). 
+	 * it is ignored, when the annotations are loaded into a database (see ExportOptions.setDatabase)
+	 * @param options the number of files to process in parallel, the format of the export, and whether it is incremental
+	 */
+	public static void exportAnnotations(String dirPath, String exportPath, ExportOptions options){
+		
+		final boolean watch = options.isWatch();
+		
 		File annotations_dir = new File(dirPath);
 		if(!annotations_dir.exists()){
 			System.err.println("The specified inPath does not exists!\n"+dirPath);
-			System.exit(1);
+			abortExport(watch);
+			return;
 		}
 		
 		
 		File[] annotatedFiles = FileUtils.getExcelFiles(annotations_dir);
 		
-		if(annotatedFiles.length==0){			
+		// when the directory is watched, an empty directory is exported as well (i.e., the rows of the deleted files are dropped)
+		if(annotatedFiles.length==0 && !watch){			
 			System.err.println("There are no annotated excel files in the specified directory!!!");
 			System.exit(1);
 		}
 		System.out.println("There are "+annotatedFiles.length+" files in the directory\n");
+		
+		// the files with the same content are processed once. they are hashed on all the cores, before the processing starts
+		DuplicateWorkbooks<List<RangeAnnotationRecord>> duplicateWorkbooks = null;
+		if(options.isDeduplicate()){
+			try{
+				duplicateWorkbooks = new DuplicateWorkbooks<List<RangeAnnotationRecord>>(annotatedFiles, Runtime.getRuntime().availableProcessors());
+			}catch(IOException ioEx){
+				System.err.println("An i/o exception occurred while attemting to hash the excel files:\n"+ioEx.getMessage());
+				abortExport(watch);
+				return;
+			}
+			System.out.println("There are "+duplicateWorkbooks.getCopyCount()+" files with the same content as another file\n");
+		}
+		final DuplicateWorkbooks<List<RangeAnnotationRecord>> duplicates = duplicateWorkbooks;
+		
+		// the results that are kept for the copies are held against the heap budget, along with the files in process
+		HeapBudgetScheduler scheduler = OrderedWorkbookExecutor.createScheduler(options);
+		if(duplicates!=null){
+			duplicates.setScheduler(scheduler);
+		}
 			
-		StringBuilder sb = new StringBuilder();
-		sb.append("FileName");
-		sb.append(",").append("SheetName");
-		sb.append(",").append("SheetIndex");
-		sb.append(",").append("AnnotationName");
-		sb.append(",").append("AnnotationLabel");
-		sb.append(",").append("AnnotationParent");
-		sb.append(",").append("AnnotationAddress");
-		sb.append(",").append(String.valueOf("FirstColumn"));
-		sb.append(",").append(String.valueOf("FirstRow"));
-		sb.append(",").append(String.valueOf("LastColumn"));
-		sb.append(",").append(String.valueOf("LastRow"));
-		sb.append("\n");
-		
-		for (int i=0; i<annotatedFiles.length; i++) {
+		// the rows are written as each workbook is handled, so only the workbooks in flight are kept in memory
+		File output = options.getDatabase()!=null ? null : new File(exportPath);
+		AnnotationWriter<RangeAnnotationRecord> exportWriter = null;
+		IncrementalExport incrementalExport = null;
+		try{
+			// when the annotations are loaded into a database, there is no export file
+			if(output!=null && options.getShardSize()<=0 && output.isDirectory()){
+				throw new IllegalArgumentException("The specified export path is a directory. Please, provide a path to a file, instead.");
+			}
+			if(output!=null && options.getShardSize()>0 && output.isFile()){
+				throw new IllegalArgumentException("The specified export path is a file. Please, provide a path to a directory for the part files, instead.");
+			}
 			
-			File file = annotatedFiles[i];		
-			System.out.println(file.getName());
+			if(options.isIncremental()){
+				// the previous export file is kept aside, before the new one is created
+				incrementalExport = new IncrementalExport(output, "ranges " + options.getFormat().name().toLowerCase());
+			}
 			
-			try{
-				
-				Workbook wb = WorkbookUtils.createWorkbook(file);
-				WorkbookAnnotation wa = WorkbookUtils.readAnnotationData(wb, file.getName());
-				
-				if(wa==null)
-					throw new Exception("The file \""+file.getName()+"\" does not contain annotations!!!");
-				
-				for (String sheetKey : wa.getWorksheetsMap().keySet()){	
+			if(options.getDatabase()!=null){
+				exportWriter = new JdbcRangeAnnotationWriter(options.getDatabase(), options.getTransactionSize());
+			}else if(options.getShardSize()>0){
+				final ExportOptions partOptions = options;
+				exportWriter = new ShardedAnnotationWriter<RangeAnnotationRecord>(output, options.getShardSize(), 
+						options.getFormat().getExtension() + (options.isCompress() ? ".gz" : ""), new ShardedAnnotationWriter.PartWriterFactory<RangeAnnotationRecord>() {
+					@Override
+					public FileAnnotationWriter<RangeAnnotationRecord> create(File part) throws IOException {
+						return createFileWriter(part, partOptions);
+					}
+				});
+			}else{
+				exportWriter = createFileWriter(output, options);
+			}
+		}catch(IOException ioEx){
+			System.err.println("An i/o exception occurred while attemting to create the export file:\n"+ioEx.getMessage());
+			abortExport(watch);
+			return;
+		}catch(SecurityException secEx){
+			System.err.println("A security exception occurred while attemting to create the export file:\n"+secEx.getMessage());
+			abortExport(watch);
+			return;
+		}catch(IllegalArgumentException argEx){
+			System.err.println(argEx.getMessage());
+			abortExport(watch);
+			return;
+		}
+		final AnnotationWriter<RangeAnnotationRecord> writer = exportWriter;
+		
+		// with an incremental export, the rows of the unchanged files are copied from the previous export file
+		final IncrementalExport incremental = incrementalExport;
+		final SplicingAnnotationWriter<RangeAnnotationRecord> splicingWriter = incremental!=null ? 
+				(SplicingAnnotationWriter<RangeAnnotationRecord>) writer : null;
+		
+		boolean completed = false;
+		try{
+			// the files are processed by the task (in parallel), and their annotations are written by the handler (in order)
+			OrderedWorkbookExecutor.run(annotatedFiles, options, scheduler, new OrderedWorkbookExecutor.WorkbookTask<List<RangeAnnotationRecord>>() {
+				@Override
+				public List<RangeAnnotationRecord> process(File file) throws Exception {
+					if(duplicates!=null && duplicates.isCopy(file)){
+						// the rows are those of the first file with the same content (see the handler)
+						return new ArrayList<RangeAnnotationRecord>();
+					}
+					if(incremental!=null && incremental.check(file, duplicates!=null ? duplicates.getCopies(file) : new ArrayList<File>())){
+						return new ArrayList<RangeAnnotationRecord>();
+					}
+					return exportWorkbook(file);
+				}
+			}, new OrderedWorkbookExecutor.ResultHandler<List<RangeAnnotationRecord>>() {
+				@Override
+				public void handle(File file, List<RangeAnnotationRecord> records, Exception error) throws IOException {
+					System.out.println(file.getName());
 					
-					// export table annotations from the sheet
-					for(TableAnnotation ta: wa.getTablesForSheet(sheetKey)){
-						sb.append("\"").append(file.getName()).append("\"");
-						sb.append(",").append("\"").append(ta.getSheetName()).append("\"");
-						sb.append(",").append(ta.getSheetIndex());
-						sb.append(",").append("\"").append(ta.getTableName()).append("\"");
-						sb.append(",").append(AnnotationLabel.Table.name());	
-						
-						if (ta.getParent() instanceof WorksheetAnnotation){
-							sb.append(",").append("\"").append(ta.getSheetName()).append("\"");
-						}else{
-							throw new Exception("TableAnnotations can only have WorksheetAnnotations as parents!!!");
+					boolean isCopy = duplicates!=null && duplicates.isCopy(file);
+					if(isCopy){
+						try{
+							records = duplicates.take(file);
+						}catch(Exception ex){
+							error = ex;
 						}
-				
-						sb.append(",").append(ta.getRangeAddress());
-						CellRangeAddress cra = CellRangeAddress.valueOf(ta.getRangeAddress());
-						sb.append(",").append(String.valueOf(cra.getFirstColumn()));
-						sb.append(",").append(String.valueOf(cra.getFirstRow()));
-						sb.append(",").append(String.valueOf(cra.getLastColumn()));
-						sb.append(",").append(String.valueOf(cra.getLastRow()));
-						sb.append("\n");
-						
+					}else if(duplicates!=null){
+						duplicates.keep(file, records, error);
+					}
+					
+					if(error!=null){
+						error.printStackTrace();
+						return;
 					}
-										
 					
-					// export range annotations from the sheet
-					for (RangeAnnotation ra : wa.getRangeAnnotationsForSheet(sheetKey)){				
-						sb.append("\"").append(file.getName()).append("\"");
-						sb.append(",").append("\"").append(ra.getSheetName()).append("\"");
-						sb.append(",").append(ra.getSheetIndex());
-						sb.append(",").append("\"").append(ra.getName()).append("\"");
-						sb.append(",").append(ra.getAnnotationLabel().name());
-							
-						// the parent can be either a table or a worksheet
-						if (ra.getParent() instanceof TableAnnotation){
-							sb.append(",").append("\"").append(((TableAnnotation) ra.getParent()).getTableName()).append("\"");
-						}else if (ra.getParent() instanceof WorksheetAnnotation){
-							sb.append(",").append("\"").append(ra.getSheetName()).append("\"");
-						}else{
-							throw new Exception("RangeAnnotations can have as parent either a WorksheetAnnotation or TableAnnotation!!!");
+					long offset = splicingWriter!=null ? splicingWriter.getOffset() : 0;
+					
+					if(incremental!=null && incremental.isUnchanged(file)){
+						incremental.splice(file, splicingWriter);
+					}else{
+						for(RangeAnnotationRecord record: records){
+							writer.write(isCopy ? record.withFileName(file.getName()) : record);
 						}
-						
-						sb.append(",").append(ra.getRangeAddress());
-						CellRangeAddress cra = CellRangeAddress.valueOf(ra.getRangeAddress());
-						sb.append(",").append(String.valueOf(cra.getFirstColumn()));
-						sb.append(",").append(String.valueOf(cra.getFirstRow()));
-						sb.append(",").append(String.valueOf(cra.getLastColumn()));
-						sb.append(",").append(String.valueOf(cra.getLastRow()));
-						sb.append("\n");
 					}
-							
+					// the rows of the completed workbooks survive an aborted run
+					writer.endWorkbook(file.getName());
+					
+					if(incremental!=null){
+						incremental.record(file, offset, splicingWriter.getOffset() - offset);
+					}
+				}
+			});
+			completed = true;
+		}catch(Exception ex){
+			ex.printStackTrace();
+		}finally{
+			try{
+				writer.close();
+				if(incremental!=null){
+					if(completed){
+						incremental.commit();
+						System.out.println("\nThe rows of "+incremental.getUnchangedCount()+" unchanged files were copied from the previous export");
+					}else{
+						incremental.close();
+					}
 				}
-			}catch(Exception ex){				
-				ex.printStackTrace();
+			}catch(IOException ioEx){
+				System.err.println("An i/o exception occurred while attemting to write the export file:\n"+ioEx.getMessage());
 			}
 		}
 		
-		File output = new File(outputPath);
-		FileUtils.writeToFile(output, sb.toString());
-		
 		System.out.println("\nDone!");
 	}
+	
+	
+	/**
+	 * Stop the export after an error. When the directory is watched, the process keeps running, 
+	 * and the export runs again after the next change in the directory (see DirectoryWatcher)
+	 * 
+	 * @param watch whether the directory is watched
+	 */
+	private static void abortExport(boolean watch){
+		if(!watch){
+			System.exit(1);
+		}
+	}
+	
+	
+	/**
+	 * Export the table and range annotations from all excel files in the specified directory, and export them again whenever 
+	 * excel files are added, modified, or deleted in the directory. Only the new and modified files are parsed each time 
+	 * (see IncrementalExport). This runs until the process is stopped.
+	 * 
+	 * @param dirPath the directory where the annotated excel files are found
+	 * @param exportPath the path to the file where the annotations will be exported (written)
+	 * @param options the options of the export, which is incremental
+	 */
+	private static void watchAnnotations(final String dirPath, final String exportPath, final ExportOptions options){
+		try{
+			DirectoryWatcher.watch(new File(dirPath), DirectoryWatcher.DEFAULT_QUIET_PERIOD, new Runnable() {
+				@Override
+				public void run() {
+					exportAnnotations(dirPath, exportPath, options);
+				}
+			});
+		}catch(IOException ioEx){
+			System.err.println("An i/o exception occurred while watching the directory:\n"+ioEx.getMessage());
+			System.exit(1);
+		}
+	}
 }
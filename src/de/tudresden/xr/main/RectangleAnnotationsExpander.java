@@ -0,0 +1,184 @@
+/**
+ * 
+ */
+package de.tudresden.xr.main;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import de.tudresden.xr.export.AnnotationWriter;
+import de.tudresden.xr.export.BinaryCellAnnotationReader;
+import de.tudresden.xr.export.BinaryCellAnnotationWriter;
+import de.tudresden.xr.export.CellAnnotationRecord;
+import de.tudresden.xr.export.CellRectangles;
+import de.tudresden.xr.export.CsvCellAnnotationReader;
+import de.tudresden.xr.export.CsvCellAnnotationWriter;
+
+
+/**
+ * Expand a cell annotations export with rectangles (see the -asRectangles option of the CellAnnotationsExporter)
+ * to one row per cell, in the same format (csv or binary). The consecutive rectangles with the same file, sheet, table, and label
+ * are expanded together, and their cells are written in row-major order. Thus, the expanded export has the same set of rows
+ * as the export without rectangles. The export with rectangles does not record the names of the annotations, so two annotations 
+ * with the same label that follow each other in a table (e.g., Header_1 and Header_2) are expanded together, and their cells 
+ * are interleaved in row-major order, instead of being written annotation by annotation.
+ */
+public class RectangleAnnotationsExpander {
+
+
+	/**
+	 * Reads the records of a csv or a binary export
+	 */
+	private static abstract class RecordSource {
+		abstract CellAnnotationRecord read() throws IOException;
+		abstract void close() throws IOException;
+	}
+
+
+	/**
+	 * Expand the rectangles of the given export file
+	 *
+	 * @param inFile the export with rectangles (csv or binary, compressed or not)
+	 * @param outFile the file where the expanded export will be written
+	 * @param compress whether to write the expanded export as a gzip stream
+	 * @throws IOException if the export cannot be read, or the expanded export cannot be written
+	 */
+	public static void expandRectangles(File inFile, File outFile, boolean compress) throws IOException{
+
+		RecordSource source;
+		boolean isBinary;
+		try{
+			final BinaryCellAnnotationReader reader = new BinaryCellAnnotationReader(inFile);
+			source = new RecordSource() {
+				CellAnnotationRecord read() throws IOException { return reader.read(); }
+				void close() throws IOException { reader.close(); }
+			};
+			isBinary = true;
+		}catch(IOException ioEx){
+			// not a binary export, thus a csv export
+			final CsvCellAnnotationReader reader = new CsvCellAnnotationReader(inFile);
+			source = new RecordSource() {
+				CellAnnotationRecord read() throws IOException { return reader.read(); }
+				void close() throws IOException { reader.close(); }
+			};
+			isBinary = false;
+		}
+
+		AnnotationWriter<CellAnnotationRecord> writer;
+		try{
+			writer = isBinary ? new BinaryCellAnnotationWriter(outFile, compress) : new CsvCellAnnotationWriter(outFile, compress);
+		}catch(IOException ioEx){
+			source.close();
+			throw ioEx;
+		}
+
+		try{
+			List<CellRangeAddress> rectangles = new ArrayList<CellRangeAddress>();
+			CellAnnotationRecord first = null;
+			CellAnnotationRecord record;
+			do{
+				record = source.read();
+
+				// the end of the annotation
+				if(first!=null && (record==null || !isSameAnnotation(first, record))){
+					for (CellRangeAddress cell : CellRectangles.expand(rectangles)) {
+						writer.write(new CellAnnotationRecord(first.getFileName(), first.getSheetName(), first.getSheetIndex(),
+								first.getTableName(), first.getAnnotationLabel(), cell));
+					}
+					if(record==null || !record.getFileName().equals(first.getFileName())){
+						writer.endWorkbook(first.getFileName());
+					}
+					rectangles.clear();
+					first = null;
+				}
+
+				if(record!=null){
+					if(first==null){
+						first = record;
+					}
+					rectangles.add(record.getCellAddress());
+				}
+			}while(record!=null);
+
+		}finally{
+			try{
+				source.close();
+			}finally{
+				writer.close();
+			}
+		}
+	}
+
+
+	/**
+	 * @param a a cell annotation
+	 * @param b another cell annotation
+	 * @return true if both have the same file, sheet, table, and label (i.e., they might belong to the same annotation)
+	 */
+	private static boolean isSameAnnotation(CellAnnotationRecord a, CellAnnotationRecord b){
+		return a.getFileName().equals(b.getFileName()) && a.getSheetName().equals(b.getSheetName())
+				&& a.getSheetIndex()==b.getSheetIndex() && String.valueOf(a.getTableName()).equals(String.valueOf(b.getTableName()))
+				&& a.getAnnotationLabel()==b.getAnnotationLabel();
+	}
+
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) {
+
+		String inPath = null;
+		String outPath = null;
+		boolean compress = false;
+
+		if(args.length<4 || args.length>5){
+			System.err.println("Expected 4 + 1 optional arguments, instead was given " + args.length);
+			System.exit(1);
+		}
+
+        for (int j=0; j<args.length; j++) {
+        	if(args[j].compareToIgnoreCase("-inPath")==0){
+        		if (j+1<args.length)
+        			inPath = args[j+1];
+        	}
+
+        	if(args[j].compareToIgnoreCase("-outPath")==0){
+        		if (j+1<args.length)
+        			outPath = args[j+1];
+        	}
+
+        	if(args[j].compareToIgnoreCase("-compress")==0){
+        		compress = true;
+        	}
+        }
+
+        if(inPath==null){
+        	System.err.println("Missing argument -inPath!");
+			System.exit(1);
+        }
+
+        if(outPath==null){
+        	System.err.println("Missing argument -outPath!");
+			System.exit(1);
+        }
+
+        File inFile = new File(inPath);
+        if(!inFile.isFile()){
+        	System.err.println("The specified inPath is not a file!\n"+inPath);
+			System.exit(1);
+        }
+
+        try{
+        	expandRectangles(inFile, new File(outPath), compress);
+        }catch(IOException ioEx){
+        	System.err.println(ioEx.getMessage());
+        	System.exit(1);
+        }
+
+        System.out.println("\nDone!");
+	}
+}
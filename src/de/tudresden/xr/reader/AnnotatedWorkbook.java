@@ -0,0 +1,88 @@
+/**
+ * 
+ */
+package de.tudresden.xr.reader;
+
+import java.io.Closeable;
+import java.util.List;
+
+import de.tudresden.xr.model.annotation.WorkbookAnnotation;
+
+/**
+ * An annotated Excel file that is loaded in two phases. First, on opening, only the annotation data
+ * and the order of the sheets (tabs) are read. Then, on request, the cells of a single worksheet are loaded.
+ * The other sheets of the workbook are never materialized.
+ * The file stays open between the two phases, and it is released when this object is closed.
+ */
+public abstract class AnnotatedWorkbook implements Closeable {
+
+	private String fileName;
+	private WorkbookAnnotation workbookAnnotation;
+	private List<String> sheetNames;
+
+
+	/**
+	 * @param fileName a string that represents the name of the excel file
+	 */
+	protected AnnotatedWorkbook(String fileName) {
+		this.fileName = fileName;
+	}
+
+
+	/**
+	 * Load the given worksheet (phase 2)
+	 * @param sheetName the name of the worksheet
+	 * @return an object that provides the cells, merged regions, and the visibility of rows and columns of the worksheet
+	 * @throws Exception a generic exception, containing a string message with clarifications
+	 */
+	public abstract SheetData loadSheet(String sheetName) throws Exception;
+
+
+	/**
+	 * @return the name of the excel file
+	 */
+	public String getFileName() {
+		return fileName;
+	}
+
+	/**
+	 * @return the annotations of the workbook
+	 */
+	public WorkbookAnnotation getWorkbookAnnotation() {
+		return workbookAnnotation;
+	}
+
+	/**
+	 * @param workbookAnnotation the annotations of the workbook
+	 */
+	protected void setWorkbookAnnotation(WorkbookAnnotation workbookAnnotation) {
+		this.workbookAnnotation = workbookAnnotation;
+	}
+
+	/**
+	 * @return the names of the sheets, in the order of the tabs
+	 */
+	public List<String> getSheetNames() {
+		return sheetNames;
+	}
+
+	/**
+	 * @param sheetNames the names of the sheets, in the order of the tabs
+	 */
+	protected void setSheetNames(List<String> sheetNames) {
+		this.sheetNames = sheetNames;
+	}
+
+	/**
+	 * Get the index of the sheet with the given name (case insensitive), as in Workbook.getSheetIndex
+	 * @param sheetName the name of the sheet
+	 * @return the (0-based) index of the sheet, or -1 if there is no sheet with the given name
+	 */
+	public int getSheetIndex(String sheetName){
+		for (int i = 0; i < sheetNames.size(); i++) {
+			if(sheetNames.get(i).equalsIgnoreCase(sheetName))
+				return i;
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,99 @@
+/**
+ * 
+ */
+package de.tudresden.xr.reader;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import de.tudresden.xr.model.annotation.WorkbookAnnotation;
+import de.tudresden.xr.utils.WorkbookUtils;
+
+/**
+ * Re-creates the WorkbookAnnotation from the cells of the annotation data sheet,
+ * as they are streamed (row by row) by the event-based readers.
+ * The first row that has cells is treated as the header row, the following ones as annotation data.
+ */
+class AnnotationDataCollector {
+
+	private String fileName;
+	private WorkbookAnnotation wa;
+
+	private int currentRowNum = -1;
+	private TreeMap<Integer, String> currentCells;
+
+	private int firstColumnNum;
+	private int lastColumnNum;
+
+
+	/**
+	 * @param fileName a string that represents the name of the excel file
+	 */
+	AnnotationDataCollector(String fileName) {
+		this.fileName = fileName;
+		this.currentCells = new TreeMap<Integer, String>();
+	}
+
+
+	/**
+	 * Add the next cell of the annotation data sheet. The cells are expected in row order.
+	 * @param rowNum the (0-based) index of the row where the cell is located
+	 * @param columnNum the (0-based) index of the column where the cell is located
+	 * @param value the string value of the cell. An empty string for blank cells.
+	 * @throws Exception a generic exception, containing a string message with clarifications
+	 */
+	void addCell(int rowNum, int columnNum, String value) throws Exception{
+		if(rowNum!=currentRowNum){
+			endRow();
+			currentRowNum = rowNum;
+		}
+		currentCells.put(columnNum, value);
+	}
+
+
+	/**
+	 * @return the WorkbookAnnotation that was re-created from the streamed cells
+	 * @throws Exception a generic exception, containing a string message with clarifications
+	 */
+	WorkbookAnnotation getWorkbookAnnotation() throws Exception{
+		endRow();
+
+		if(wa==null){
+			throw new Exception("The sheet holding the annotation data for the file \""+fileName+"\" is empty");
+		}
+		return wa;
+	}
+
+
+	/**
+	 * Process the cells collected for the current row
+	 * @throws Exception a generic exception, containing a string message with clarifications
+	 */
+	private void endRow() throws Exception{
+
+		if(currentCells.isEmpty())
+			return;
+
+		if(wa==null){
+			// the header row determines the columns that hold the annotation data
+			firstColumnNum = currentCells.firstKey();
+			lastColumnNum = currentCells.lastKey() + 1;
+
+			String[] fieldNames = new String[lastColumnNum - firstColumnNum];
+			for(Map.Entry<Integer, String> entry: currentCells.entrySet()){
+				fieldNames[entry.getKey() - firstColumnNum] = entry.getValue();
+			}
+			WorkbookUtils.checkAnnotationDataFields(fieldNames, firstColumnNum, fileName);
+
+			wa = new WorkbookAnnotation(fileName);
+		}else{
+			String[] annotationData = new String[lastColumnNum - firstColumnNum];
+			for(Map.Entry<Integer, String> entry: currentCells.subMap(firstColumnNum, lastColumnNum).entrySet()){
+				annotationData[entry.getKey() - firstColumnNum] = entry.getValue();
+			}
+			WorkbookUtils.addAnnotationData(wa, annotationData, fileName);
+		}
+
+		currentCells.clear();
+	}
+}
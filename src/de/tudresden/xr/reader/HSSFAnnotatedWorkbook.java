@@ -0,0 +1,202 @@
+/**
+ * 
+ */
+package de.tudresden.xr.reader;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.poi.hssf.record.BlankRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.CellValueRecordInterface;
+import org.apache.poi.hssf.record.ColumnInfoRecord;
+import org.apache.poi.hssf.record.DefaultColWidthRecord;
+import org.apache.poi.hssf.record.DefaultRowHeightRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.MergeCellsRecord;
+import org.apache.poi.hssf.record.MulBlankRecord;
+import org.apache.poi.hssf.record.MulRKRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.RKRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.RowRecord;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
+
+import de.tudresden.xr.utils.CellUtils;
+
+/**
+ * An annotated .xls file, loaded in two phases (see AnnotatedWorkbook).
+ * Both phases use the event model of Apache POI. The second phase keeps only the records of the requested worksheet.
+ */
+public class HSSFAnnotatedWorkbook extends AnnotatedWorkbook {
+
+	private NPOIFSFileSystem fs;
+
+
+	/**
+	 * Open the given .xls file (read-only), and read its annotation data and the order of its sheets
+	 * @param excelFile a generic File object that provides access to the Excel file
+	 * @throws Exception a generic exception, containing a string message with clarifications
+	 */
+	public HSSFAnnotatedWorkbook(File excelFile) throws Exception {
+		this(excelFile.getName(), new NPOIFSFileSystem(excelFile, true));
+	}
+
+
+	/**
+	 * Read the annotation data and the order of the sheets from the given file system (e.g., opened from memory, see WorkbookContent)
+	 * @param fileName the name of the excel file
+	 * @param fs the open file system of the .xls file, which is released when this object is closed (or if it cannot be read)
+	 * @throws Exception a generic exception, containing a string message with clarifications
+	 */
+	public HSSFAnnotatedWorkbook(String fileName, NPOIFSFileSystem fs) throws Exception {
+		super(fileName);
+
+		this.fs = fs;
+		try{
+			HSSFAnnotationReader.AnnotationSheetListener listener = HSSFAnnotationReader.readAnnotationSheet(fs.getRoot(), getFileName());
+			setWorkbookAnnotation(listener.getCollector().getWorkbookAnnotation());
+			setSheetNames(listener.getSheetNames());
+		}catch(Exception ex){
+			fs.close();
+			throw ex;
+		}
+	}
+
+
+	/**
+	 * Phase 2: stream the records of the given worksheet
+	 */
+	@Override
+	public SheetData loadSheet(String sheetName) throws Exception {
+
+		if(getSheetIndex(sheetName)<0){
+			throw new Exception("The sheet \""+sheetName+"\" was not found in the file \""+getFileName()+"\".");
+		}
+
+		SheetDataListener listener = new SheetDataListener(getSheetNames().get(getSheetIndex(sheetName)));
+		listener.process(fs.getRoot());
+		return listener.getSheetData();
+	}
+
+
+	/**
+	 * Release the file system
+	 */
+	@Override
+	public void close() throws IOException {
+		fs.close();
+	}
+
+
+	/**
+	 * Collects the SheetData from the records of one worksheet.
+	 * The cells are classified as in the Apache POI usermodel (HSSFCell), without keeping their values.
+	 */
+	private static class SheetDataListener extends SheetStreamListener {
+
+		private static final short[] SIDS = {RowRecord.sid, DefaultRowHeightRecord.sid, DefaultColWidthRecord.sid,
+				ColumnInfoRecord.sid, MergeCellsRecord.sid, LabelSSTRecord.sid, LabelRecord.sid, NumberRecord.sid,
+				RKRecord.sid, MulRKRecord.sid, BlankRecord.sid, MulBlankRecord.sid, BoolErrRecord.sid, FormulaRecord.sid};
+
+		private String sheetName;
+		private StreamedSheetData sheetData = new StreamedSheetData();
+
+		// the defaults of the sheet, as in InternalSheet when the records are missing
+		private short defaultRowHeight = DefaultRowHeightRecord.DEFAULT_ROW_HEIGHT;
+
+		SheetDataListener(String sheetName) {
+			this.sheetName = sheetName;
+		}
+
+		@Override
+		protected boolean isTargetSheet(String sheetName) {
+			return this.sheetName.equals(sheetName);
+		}
+
+		@Override
+		protected short[] getSheetRecordSids() {
+			return SIDS;
+		}
+
+		@Override
+		protected void processSheetRecord(Record record) throws Exception {
+
+			switch (record.getSid()) {
+			case DefaultRowHeightRecord.sid:
+				defaultRowHeight = ((DefaultRowHeightRecord) record).getRowHeight();
+				break;
+
+			case DefaultColWidthRecord.sid:
+				sheetData.setDefaultColumnHidden(((DefaultColWidthRecord) record).getColWidth()==0);
+				break;
+
+			case RowRecord.sid:
+				// as HSSFRow.getZeroHeight and HSSFRow.getHeight
+				RowRecord rr = (RowRecord) record;
+				short height = rr.getHeight();
+				height = (height & 0x8000)!=0 ? defaultRowHeight : (short) (height & 0x7FFF);
+				sheetData.addRow(rr.getRowNumber(), rr.getZeroHeight() || height==0);
+				break;
+
+			case ColumnInfoRecord.sid:
+				// as HSSFSheet.isColumnHidden and HSSFSheet.getColumnWidth
+				ColumnInfoRecord cir = (ColumnInfoRecord) record;
+				sheetData.addColumns(cir.getFirstColumn(), cir.getLastColumn(), cir.getHidden() || cir.getColumnWidth()==0);
+				break;
+
+			case MergeCellsRecord.sid:
+				MergeCellsRecord mcr = (MergeCellsRecord) record;
+				for (int i = 0; i < mcr.getNumAreas(); i++) {
+					sheetData.addMergedRegion(mcr.getAreaAt(i));
+				}
+				break;
+
+			case LabelSSTRecord.sid:
+				LabelSSTRecord lsr = (LabelSSTRecord) record;
+				String value = getSST().getString(lsr.getSSTIndex()).getString();
+				sheetData.addCell(lsr.getRow(), lsr.getColumn(), !CellUtils.isBlankValue(value));
+				break;
+
+			case LabelRecord.sid:
+				LabelRecord lr = (LabelRecord) record;
+				sheetData.addCell(lr.getRow(), lr.getColumn(), !CellUtils.isBlankValue(lr.getValue()));
+				break;
+
+			case MulRKRecord.sid:
+				MulRKRecord mrkr = (MulRKRecord) record;
+				for (int i = 0; i < mrkr.getNumColumns(); i++) {
+					sheetData.addCell(mrkr.getRow(), mrkr.getFirstColumn() + i, true);
+				}
+				break;
+
+			case BlankRecord.sid:
+				BlankRecord br = (BlankRecord) record;
+				sheetData.addCell(br.getRow(), br.getColumn(), false);
+				break;
+
+			case MulBlankRecord.sid:
+				MulBlankRecord mbr = (MulBlankRecord) record;
+				for (int i = 0; i < mbr.getNumColumns(); i++) {
+					sheetData.addCell(mbr.getRow(), mbr.getFirstColumn() + i, false);
+				}
+				break;
+
+			case NumberRecord.sid:
+			case RKRecord.sid:
+			case BoolErrRecord.sid:
+			case FormulaRecord.sid:
+				// numeric and boolean values are never blank, formulas and errors are always accepted
+				CellValueRecordInterface cvr = (CellValueRecordInterface) record;
+				sheetData.addCell(cvr.getRow(), cvr.getColumn(), true);
+				break;
+			}
+		}
+
+		StreamedSheetData getSheetData() {
+			return sheetData;
+		}
+	}
+}
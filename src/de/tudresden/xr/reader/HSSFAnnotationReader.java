@@ -0,0 +1,187 @@
+/**
+ * 
+ */
+package de.tudresden.xr.reader;
+
+import java.io.File;
+
+import org.apache.poi.hssf.record.BlankRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.MulBlankRecord;
+import org.apache.poi.hssf.record.MulRKRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.RKRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.StringRecord;
+import org.apache.poi.poifs.filesystem.DirectoryNode;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
+import org.apache.poi.ss.usermodel.FormulaError;
+import org.apache.poi.ss.util.NumberToTextConverter;
+
+import de.tudresden.xr.model.annotation.RangeAnnotationsSheet;
+import de.tudresden.xr.model.annotation.WorkbookAnnotation;
+
+/**
+ * Reads the annotation data from .xls files, using the event model of Apache POI (HSSFListener),
+ * instead of creating the HSSFWorkbook object. Only the shared strings table (SST)
+ * and the cell records of the annotation data sheet are kept. Processing stops at the end of the annotation data sheet.
+ */
+public class HSSFAnnotationReader {
+
+	/**
+	 * Read the annotation data for the given .xls file.
+	 *
+	 * @param excelFile a generic File object that provides access to the Excel file
+	 * @return a WorkbookAnnotation object that provides access to all the RangeAnnotations for the given Workbook.
+	 * @throws Exception a generic exception, containing a string message with clarifications
+	 */
+	public static WorkbookAnnotation readAnnotationData(File excelFile) throws Exception{
+
+		NPOIFSFileSystem fs = new NPOIFSFileSystem(excelFile, true);
+		try{
+			return readAnnotationData(fs.getRoot(), excelFile.getName());
+		}finally{
+			fs.close();
+		}
+	}
+
+
+	/**
+	 * Read the annotation data from the given (open) file system.
+	 *
+	 * @param dir the root directory of the .xls file system, which holds the workbook stream
+	 * @param fileName a string that represents the name of the excel file
+	 * @return a WorkbookAnnotation object that provides access to all the RangeAnnotations for the given Workbook.
+	 * @throws Exception a generic exception, containing a string message with clarifications
+	 */
+	public static WorkbookAnnotation readAnnotationData(DirectoryNode dir, String fileName) throws Exception{
+		return readAnnotationSheet(dir, fileName).getCollector().getWorkbookAnnotation();
+	}
+
+
+	/**
+	 * Stream the workbook records, up to the end of the annotation data sheet.
+	 *
+	 * @param dir the root directory of the .xls file system, which holds the workbook stream
+	 * @param fileName a string that represents the name of the excel file
+	 * @return the listener, which holds the collected annotation data and the names of the sheets
+	 * @throws Exception a generic exception, containing a string message with clarifications
+	 */
+	static AnnotationSheetListener readAnnotationSheet(DirectoryNode dir, String fileName) throws Exception{
+
+		AnnotationSheetListener listener = new AnnotationSheetListener(fileName);
+		listener.process(dir);
+
+		if(!listener.isSheetFound()){
+			throw new Exception("RangeAnnotationData sheet was not found in the file \""+fileName+"\".");
+		}
+		return listener;
+	}
+
+
+	/**
+	 * Passes the cells of the annotation data sheet to the collector
+	 */
+	static class AnnotationSheetListener extends SheetStreamListener {
+
+		private static final short[] SIDS = {LabelSSTRecord.sid, LabelRecord.sid, NumberRecord.sid, RKRecord.sid, MulRKRecord.sid,
+				BlankRecord.sid, MulBlankRecord.sid, BoolErrRecord.sid, FormulaRecord.sid, StringRecord.sid};
+
+		private AnnotationDataCollector collector;
+		private FormulaRecord stringFormula;
+
+		AnnotationSheetListener(String fileName) {
+			this.collector = new AnnotationDataCollector(fileName);
+		}
+
+		@Override
+		protected boolean isTargetSheet(String sheetName) {
+			return sheetName.equalsIgnoreCase(RangeAnnotationsSheet.getName());
+		}
+
+		@Override
+		protected short[] getSheetRecordSids() {
+			return SIDS;
+		}
+
+		/**
+		 * Pass the value of the given cell record to the collector
+		 * @param record a cell record of the annotation data sheet
+		 * @throws Exception a generic exception, containing a string message with clarifications
+		 */
+		@Override
+		protected void processSheetRecord(Record record) throws Exception{
+
+			switch (record.getSid()) {
+			case LabelSSTRecord.sid:
+				LabelSSTRecord lsr = (LabelSSTRecord) record;
+				collector.addCell(lsr.getRow(), lsr.getColumn(), getSST().getString(lsr.getSSTIndex()).getString());
+				break;
+
+			case LabelRecord.sid:
+				LabelRecord lr = (LabelRecord) record;
+				collector.addCell(lr.getRow(), lr.getColumn(), lr.getValue());
+				break;
+
+			case NumberRecord.sid:
+				NumberRecord nr = (NumberRecord) record;
+				collector.addCell(nr.getRow(), nr.getColumn(), NumberToTextConverter.toText(nr.getValue()));
+				break;
+
+			case RKRecord.sid:
+				RKRecord rkr = (RKRecord) record;
+				collector.addCell(rkr.getRow(), rkr.getColumn(), NumberToTextConverter.toText(rkr.getRKNumber()));
+				break;
+
+			case MulRKRecord.sid:
+				MulRKRecord mrkr = (MulRKRecord) record;
+				for (int i = 0; i < mrkr.getNumColumns(); i++) {
+					collector.addCell(mrkr.getRow(), mrkr.getFirstColumn() + i, NumberToTextConverter.toText(mrkr.getRKNumberAt(i)));
+				}
+				break;
+
+			case BlankRecord.sid:
+				BlankRecord br = (BlankRecord) record;
+				collector.addCell(br.getRow(), br.getColumn(), "");
+				break;
+
+			case MulBlankRecord.sid:
+				MulBlankRecord mbr = (MulBlankRecord) record;
+				for (int i = 0; i < mbr.getNumColumns(); i++) {
+					collector.addCell(mbr.getRow(), mbr.getFirstColumn() + i, "");
+				}
+				break;
+
+			case BoolErrRecord.sid:
+				BoolErrRecord ber = (BoolErrRecord) record;
+				String value = ber.isBoolean() ? String.valueOf(ber.getBooleanValue()).toUpperCase() :
+					FormulaError.forInt(ber.getErrorValue()).getString();
+				collector.addCell(ber.getRow(), ber.getColumn(), value);
+				break;
+
+			case FormulaRecord.sid:
+				FormulaRecord fr = (FormulaRecord) record;
+				if(fr.hasCachedResultString()){
+					stringFormula = fr; // the cached value follows in a StringRecord
+				}else{
+					collector.addCell(fr.getRow(), fr.getColumn(), NumberToTextConverter.toText(fr.getValue()));
+				}
+				break;
+
+			case StringRecord.sid:
+				if(stringFormula!=null){
+					collector.addCell(stringFormula.getRow(), stringFormula.getColumn(), ((StringRecord) record).getString());
+					stringFormula = null;
+				}
+				break;
+			}
+		}
+
+		AnnotationDataCollector getCollector() {
+			return collector;
+		}
+	}
+}
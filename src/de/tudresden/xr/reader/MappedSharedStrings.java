@@ -0,0 +1,152 @@
+/**
+ * 
+ */
+package de.tudresden.xr.reader;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.xml.sax.SAXException;
+
+/**
+ * A shared strings table that is kept off the heap. While streaming the shared strings part, the decoded strings
+ * are written (as UTF-16 chars) to a temporary file, and only their offsets are kept in memory.
+ * The file is then memory mapped, and each string is decoded on demand.
+ * Thus, the heap usage depends on the number of strings (8 bytes each), but not on their content.
+ */
+class MappedSharedStrings implements SharedStrings {
+
+	// the file is mapped in segments, as a single buffer is limited to 2GB. the size is even, so chars never span two segments
+	private static final int SEGMENT_BITS = 30;
+	private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+	private File file;
+	private long[] offsets;
+	private int count;
+	private MappedByteBuffer[] segments;
+
+
+	private MappedSharedStrings(File file, long[] offsets, int count) {
+		this.file = file;
+		this.offsets = offsets;
+		this.count = count;
+	}
+
+
+	/**
+	 * Stream the shared strings part of the given package to a temporary file, and map the file in memory
+	 * @param pkg the package of the .xlsx file
+	 * @return the shared strings table of the package (empty if there is none)
+	 * @throws IOException if the part cannot be read, or the temporary file cannot be written
+	 * @throws SAXException if the part is not well formed
+	 */
+	static MappedSharedStrings load(OPCPackage pkg) throws IOException, SAXException {
+
+		// the file is deleted by close(), or here if the table cannot be loaded
+		final File file = File.createTempFile("sharedStrings", ".tmp");
+		boolean loaded = false;
+		try{
+			final long[][] offsets = {new long[1024]};
+			final int[] count = {0};
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+			try{
+				new SharedStringsHandler() {
+					private long offset = 0;
+
+					@Override
+					protected void string(int index, String value) throws SAXException {
+						try{
+							out.writeChars(value);
+						}catch(IOException ioEx){
+							throw new SAXException(ioEx);
+						}
+
+						// the offset of the next string is the end of this one
+						if(index + 2 > offsets[0].length){
+							offsets[0] = Arrays.copyOf(offsets[0], offsets[0].length * 2);
+						}
+						offsets[0][index] = offset;
+						offset += value.length();
+						offsets[0][index + 1] = offset;
+						count[0] = index + 1;
+					}
+				}.parse(pkg);
+			}finally{
+				out.close();
+			}
+
+			MappedSharedStrings sst = new MappedSharedStrings(file, offsets[0], count[0]);
+			sst.map();
+			loaded = true;
+			return sst;
+		}finally{
+			if(!loaded){
+				file.delete();
+			}
+		}
+	}
+
+
+	/**
+	 * Map the temporary file (read-only)
+	 * @throws IOException if the file cannot be mapped
+	 */
+	private void map() throws IOException {
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try{
+			FileChannel channel = raf.getChannel();
+			long size = channel.size();
+			segments = new MappedByteBuffer[(int) ((size >> SEGMENT_BITS) + 1)];
+			for (int i = 0; i < segments.length; i++) {
+				long position = (long) i << SEGMENT_BITS;
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(SEGMENT_MASK + 1, size - position));
+			}
+		}finally{
+			// the mapping stays valid after the channel is closed
+			raf.close();
+		}
+	}
+
+
+	@Override
+	public int getCount() {
+		return count;
+	}
+
+	@Override
+	public String getString(int index) {
+
+		if(index<0 || index>=count){
+			throw new IndexOutOfBoundsException("The shared string "+index+" does not exist. The table has "+count+" strings.");
+		}
+
+		long first = offsets[index];
+		char[] chars = new char[(int) (offsets[index + 1] - first)];
+		for (int i = 0; i < chars.length; i++) {
+			long position = (first + i) * 2;
+			chars[i] = segments[(int) (position >> SEGMENT_BITS)].getChar((int) (position & SEGMENT_MASK));
+		}
+		return new String(chars);
+	}
+
+
+	/**
+	 * Release the mapping, and delete the temporary file
+	 */
+	@Override
+	public void close() {
+		segments = null;
+		offsets = null;
+		count = 0;
+		file.delete();
+	}
+}
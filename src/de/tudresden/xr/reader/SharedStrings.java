@@ -0,0 +1,23 @@
+/**
+ * 
+ */
+package de.tudresden.xr.reader;
+
+import java.io.Closeable;
+
+/**
+ * Provides read access to the shared strings table of an .xlsx file.
+ */
+interface SharedStrings extends Closeable {
+
+	/**
+	 * @return the number of strings in the table
+	 */
+	public int getCount();
+
+	/**
+	 * @param index the (0-based) index of the string in the shared strings table
+	 * @return the decoded string
+	 */
+	public String getString(int index);
+}
@@ -0,0 +1,155 @@
+/**
+ * 
+ */
+package de.tudresden.xr.reader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.util.SAXHelper;
+import org.apache.poi.xssf.usermodel.XSSFRelation;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * A SAX handler for the shared strings part of an .xlsx file.
+ * Each string item (i.e., si element) is decoded and passed to the subclass, together with its index in the table.
+ * Phonetic runs are skipped, as in the Apache POI usermodel.
+ */
+abstract class SharedStringsHandler extends DefaultHandler {
+
+	/**
+	 * Thrown by subclasses to stop parsing, once they have the strings they need
+	 */
+	static class StopParsingException extends SAXException {
+		private static final long serialVersionUID = 1L;
+	}
+
+	private int index = -1;
+	private StringBuilder value = new StringBuilder();
+	private boolean isText = false;
+	private boolean isPhonetic = false;
+
+
+	/**
+	 * Receive the next string of the table
+	 * @param index the (0-based) index of the string in the shared strings table
+	 * @param value the decoded string
+	 * @throws SAXException to abort parsing
+	 */
+	protected abstract void string(int index, String value) throws SAXException;
+
+
+	@Override
+	public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+		if("si".equals(localName)){
+			index++;
+			value.setLength(0);
+		}else if("t".equals(localName)){
+			isText = !isPhonetic;
+		}else if("rPh".equals(localName)){
+			isPhonetic = true;
+		}
+	}
+
+	@Override
+	public void endElement(String uri, String localName, String qName) throws SAXException {
+		if("si".equals(localName)){
+			string(index, decode(value));
+		}else if("t".equals(localName)){
+			isText = false;
+		}else if("rPh".equals(localName)){
+			isPhonetic = false;
+		}
+	}
+
+	@Override
+	public void characters(char[] ch, int start, int length) throws SAXException {
+		if(isText){
+			value.append(ch, start, length);
+		}
+	}
+
+
+	/**
+	 * Stream the shared strings part of the given package (if any) through this handler.
+	 * @param pkg the package of the .xlsx file
+	 * @throws IOException if the part cannot be read
+	 * @throws SAXException if the part is not well formed
+	 */
+	void parse(OPCPackage pkg) throws IOException, SAXException {
+		List<PackagePart> parts = pkg.getPartsByContentType(XSSFRelation.SHARED_STRINGS.getContentType());
+		if(parts.isEmpty())
+			return;
+
+		InputStream is = parts.get(0).getInputStream();
+		try{
+			parse(is, this);
+		}catch(StopParsingException spEx){
+			// the subclass has all the strings it needs
+		}finally{
+			is.close();
+		}
+	}
+
+
+	/**
+	 * Parse the given xml stream with a (secure) SAX reader
+	 * @param is the xml stream
+	 * @param handler the content handler that will receive the SAX events
+	 * @throws IOException if the stream cannot be read
+	 * @throws SAXException if the xml is not well formed
+	 */
+	static void parse(InputStream is, DefaultHandler handler) throws IOException, SAXException {
+		XMLReader reader;
+		try {
+			reader = SAXHelper.newXMLReader();
+		} catch (ParserConfigurationException pcEx) {
+			throw new SAXException(pcEx);
+		}
+		reader.setContentHandler(handler);
+		reader.parse(new InputSource(is));
+	}
+
+
+	/**
+	 * Decode the escaped characters (e.g., _x000D_) used by the OOXML format
+	 * @param text the text as stored in the xml
+	 * @return the decoded string
+	 */
+	static String decode(CharSequence text){
+
+		String str = text.toString();
+		if(str.indexOf("_x")<0)
+			return str;
+
+		StringBuilder sb = new StringBuilder(str.length());
+		int i = 0;
+		while(i<str.length()){
+			if(i+6<str.length() && str.charAt(i)=='_' && str.charAt(i+1)=='x' && str.charAt(i+6)=='_' && isHex(str, i+2, i+6)){
+				sb.append((char) Integer.parseInt(str.substring(i+2, i+6), 16));
+				i += 7;
+			}else{
+				sb.append(str.charAt(i));
+				i++;
+			}
+		}
+		return sb.toString();
+	}
+
+	private static boolean isHex(String str, int from, int to){
+		for (int i = from; i < to; i++) {
+			if(Character.digit(str.charAt(i), 16)<0)
+				return false;
+		}
+		return true;
+	}
+}
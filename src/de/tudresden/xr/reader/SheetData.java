@@ -0,0 +1,60 @@
+/**
+ * 
+ */
+package de.tudresden.xr.reader;
+
+import java.util.List;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+
+/**
+ * Provides the information about the cells of a worksheet that is needed to identify the valid (non-empty, visible) cells of an annotation.
+ * Implemented over the Apache POI Sheet, as well as over sheets that are streamed from the file (without creating the workbook object).
+ */
+public interface SheetData {
+
+	/**
+	 * @return the merged regions of the sheet
+	 */
+	public List<CellRangeAddress> getMergedRegions();
+
+	/**
+	 * @param rowNum the (0-based) index of the row
+	 * @return true if the row is defined in the sheet (i.e., Sheet.getRow does not return null)
+	 */
+	public boolean containsRow(int rowNum);
+
+	/**
+	 * @param rowNum the (0-based) index of the row
+	 * @return true if the row is hidden, or its height is zero
+	 */
+	public boolean isRowHidden(int rowNum);
+
+	/**
+	 * @param rowNum the (0-based) index of the row
+	 * @param columnNum the (0-based) index of the column
+	 * @return true if the cell is defined in the sheet (i.e., Row.getCell does not return null), even when it is blank
+	 */
+	public boolean containsCell(int rowNum, int columnNum);
+
+	/**
+	 * @param columnNum the (0-based) index of the column
+	 * @return true if the column is hidden, or its width is zero
+	 */
+	public boolean isColumnHidden(int columnNum);
+
+	/**
+	 * @param rowNum the (0-based) index of the row
+	 * @param columnNum the (0-based) index of the column
+	 * @return true if the cell contains a formula or an error, or a value with characters other than just white spaces
+	 */
+	public boolean isNonEmptyCell(int rowNum, int columnNum);
+
+	/**
+	 * Find the next non-empty cell of the row, starting from the given column
+	 * @param rowNum the (0-based) index of the row
+	 * @param columnNum the (0-based) index of the column where the search starts (inclusive)
+	 * @return the (0-based) index of the column of the next non-empty cell, or -1 if there is none
+	 */
+	public int getNextNonEmptyCell(int rowNum, int columnNum);
+}
@@ -0,0 +1,155 @@
+/**
+ * 
+ */
+package de.tudresden.xr.reader;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.hssf.eventusermodel.AbortableHSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.eventusermodel.HSSFUserException;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BoundSheetRecord;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.poifs.filesystem.DirectoryNode;
+
+/**
+ * Listens to the records of an .xls workbook stream, and passes to the subclass only the records of one (target) sheet.
+ * The names of the sheets are collected from the workbook globals, in the order of the tabs.
+ * Processing stops at the end of the target sheet.
+ */
+abstract class SheetStreamListener extends AbortableHSSFListener {
+
+	private List<BoundSheetRecord> boundSheets = new ArrayList<BoundSheetRecord>();
+	private BoundSheetRecord[] orderedSheets;
+	private SSTRecord sst;
+
+	private int sheetIndex = -1;
+	private int depth = 0;
+	private boolean isTargetSheet = false;
+	private boolean isSheetFound = false;
+
+
+	/**
+	 * @param sheetName the name of a sheet of the workbook
+	 * @return true if the records of this sheet should be passed to processSheetRecord
+	 */
+	protected abstract boolean isTargetSheet(String sheetName);
+
+
+	/**
+	 * Process the next record of the target sheet
+	 * @param record a record of the target sheet (nested streams, e.g. embedded charts, excluded)
+	 * @throws Exception a generic exception, containing a string message with clarifications
+	 */
+	protected abstract void processSheetRecord(Record record) throws Exception;
+
+
+	/**
+	 * @return the ids of the sheet records that processSheetRecord expects
+	 */
+	protected abstract short[] getSheetRecordSids();
+
+
+	/**
+	 * Stream the records of the workbook in the given directory through this listener
+	 * @param dir the root directory of the .xls file system, which holds the workbook stream
+	 * @throws Exception a generic exception, containing a string message with clarifications
+	 */
+	void process(DirectoryNode dir) throws Exception{
+
+		HSSFRequest request = new HSSFRequest();
+		for(short sid: new short[]{BOFRecord.sid, EOFRecord.sid, BoundSheetRecord.sid, SSTRecord.sid}){
+			request.addListener(this, sid);
+		}
+		for(short sid: getSheetRecordSids()){
+			request.addListener(this, sid);
+		}
+
+		try{
+			new HSSFEventFactory().abortableProcessWorkbookEvents(request, dir);
+		}catch(HSSFUserException userEx){
+			if(userEx.getCause() instanceof Exception)
+				throw (Exception) userEx.getCause();
+			throw userEx;
+		}
+	}
+
+
+	@Override
+	public short abortableProcessRecord(Record record) throws HSSFUserException {
+
+		try{
+			switch (record.getSid()) {
+			case BoundSheetRecord.sid:
+				boundSheets.add((BoundSheetRecord) record);
+				break;
+
+			case SSTRecord.sid:
+				sst = (SSTRecord) record;
+				break;
+
+			case BOFRecord.sid:
+				if(((BOFRecord) record).getType()!=BOFRecord.TYPE_WORKBOOK){
+					depth++;
+					if(depth==1){
+						// the sheet streams follow the order of their offsets (i.e., BOF positions)
+						if(orderedSheets==null)
+							orderedSheets = BoundSheetRecord.orderByBofPosition(boundSheets);
+						sheetIndex++;
+						isTargetSheet = sheetIndex<orderedSheets.length && isTargetSheet(orderedSheets[sheetIndex].getSheetname());
+						isSheetFound = isSheetFound || isTargetSheet;
+					}
+				}
+				break;
+
+			case EOFRecord.sid:
+				if(depth>0){
+					depth--;
+					if(depth==0 && isTargetSheet)
+						return 1; // no need to process the rest of the workbook
+				}
+				break;
+
+			default:
+				if(isTargetSheet && depth==1)
+					processSheetRecord(record);
+			}
+		}catch(Exception ex){
+			throw new HSSFUserException(ex.getMessage(), ex);
+		}
+		return 0;
+	}
+
+
+	/**
+	 * @return the shared strings table of the workbook
+	 */
+	protected SSTRecord getSST() {
+		return sst;
+	}
+
+
+	/**
+	 * @return the names of the sheets, in the order of the tabs
+	 */
+	List<String> getSheetNames() {
+		List<String> sheetNames = new ArrayList<String>();
+		for(BoundSheetRecord bsr: boundSheets){
+			sheetNames.add(bsr.getSheetname());
+		}
+		return sheetNames;
+	}
+
+
+	/**
+	 * @return true if the target sheet was found in the workbook
+	 */
+	boolean isSheetFound() {
+		return isSheetFound;
+	}
+}
@@ -0,0 +1,145 @@
+/**
+ * 
+ */
+package de.tudresden.xr.reader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+
+/**
+ * The SheetData of a single worksheet, as collected while streaming the sheet from the file.
+ * Keeps only the position of the cells, their classification (empty or not), the visibility of the rows and columns,
+ * and the merged regions. The values of the cells are never stored. Each row keeps a single bit set, with two bits per column:
+ * the first marks that the cell exists, the second that it is non-empty.
+ */
+class StreamedSheetData implements SheetData {
+
+	private BitSet definedRows = new BitSet();
+	private BitSet hiddenRows = new BitSet();
+	private BitSet[] rowCells = new BitSet[64];
+	private List<CellRangeAddress> mergedRegions = new ArrayList<CellRangeAddress>();
+
+	private BitSet definedColumns = new BitSet();
+	private BitSet hiddenColumns = new BitSet();
+	private boolean isDefaultColumnHidden = false;
+
+
+	/**
+	 * Add a row to the sheet. If the row already exists, update its visibility.
+	 * @param rowNum the (0-based) index of the row
+	 * @param isHidden true if the row is hidden, or its height is zero
+	 */
+	void addRow(int rowNum, boolean isHidden){
+		definedRows.set(rowNum);
+		hiddenRows.set(rowNum, isHidden);
+	}
+
+	/**
+	 * Add a cell to the sheet. The row is created (visible), if it was not added before.
+	 * @param rowNum the (0-based) index of the row
+	 * @param columnNum the (0-based) index of the column
+	 * @param isNonEmpty true if the cell contains a formula or an error, or a value with characters other than just white spaces
+	 */
+	void addCell(int rowNum, int columnNum, boolean isNonEmpty){
+		definedRows.set(rowNum);
+
+		if(rowNum >= rowCells.length){
+			rowCells = Arrays.copyOf(rowCells, Math.max(rowNum + 1, rowCells.length * 2));
+		}
+		BitSet cells = rowCells[rowNum];
+		if(cells==null){
+			cells = new BitSet();
+			rowCells[rowNum] = cells;
+		}
+		cells.set(2 * columnNum);
+		cells.set(2 * columnNum + 1, isNonEmpty);
+	}
+
+	/**
+	 * Set the visibility of the given columns. Columns that were already set are not changed.
+	 * @param firstColumnNum the (0-based) index of the first column
+	 * @param lastColumnNum the (0-based) index of the last column, inclusive
+	 * @param isHidden true if the columns are hidden, or their width is zero
+	 */
+	void addColumns(int firstColumnNum, int lastColumnNum, boolean isHidden){
+		for (int n = firstColumnNum; n <= lastColumnNum; n++) {
+			if(!definedColumns.get(n)){
+				definedColumns.set(n);
+				hiddenColumns.set(n, isHidden);
+			}
+		}
+	}
+
+	/**
+	 * @param isHidden true if the columns that are not set explicitly have zero width
+	 */
+	void setDefaultColumnHidden(boolean isHidden){
+		this.isDefaultColumnHidden = isHidden;
+	}
+
+	/**
+	 * @param region a merged region of the sheet
+	 */
+	void addMergedRegion(CellRangeAddress region){
+		mergedRegions.add(region);
+	}
+
+
+	@Override
+	public List<CellRangeAddress> getMergedRegions() {
+		return mergedRegions;
+	}
+
+	@Override
+	public boolean containsRow(int rowNum) {
+		return definedRows.get(rowNum);
+	}
+
+	@Override
+	public boolean isRowHidden(int rowNum) {
+		return hiddenRows.get(rowNum);
+	}
+
+	@Override
+	public boolean containsCell(int rowNum, int columnNum) {
+		BitSet cells = getCells(rowNum);
+		return cells!=null && cells.get(2 * columnNum);
+	}
+
+	@Override
+	public boolean isColumnHidden(int columnNum) {
+		return definedColumns.get(columnNum) ? hiddenColumns.get(columnNum) : isDefaultColumnHidden;
+	}
+
+	@Override
+	public boolean isNonEmptyCell(int rowNum, int columnNum) {
+		BitSet cells = getCells(rowNum);
+		return cells!=null && cells.get(2 * columnNum + 1);
+	}
+
+	@Override
+	public int getNextNonEmptyCell(int rowNum, int columnNum) {
+		BitSet cells = getCells(rowNum);
+		if(cells==null)
+			return -1;
+
+		// the non-empty cells are marked at the odd bits
+		for (int i = cells.nextSetBit(2 * columnNum + 1); i >= 0; i = cells.nextSetBit(i + 1)) {
+			if(i % 2 == 1)
+				return i / 2;
+		}
+		return -1;
+	}
+
+	/**
+	 * @param rowNum the (0-based) index of the row
+	 * @return the bits of the cells of the row, or null if the row has no cells
+	 */
+	private BitSet getCells(int rowNum){
+		return rowNum < rowCells.length ? rowCells[rowNum] : null;
+	}
+}
@@ -0,0 +1,78 @@
+/**
+ * 
+ */
+package de.tudresden.xr.reader;
+
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import de.tudresden.xr.utils.CellUtils;
+
+/**
+ * Provides the SheetData of a worksheet, which is already loaded as an Apache POI Sheet object
+ */
+public class WorkbookSheetData implements SheetData {
+
+	private Sheet sheet;
+	private List<CellRangeAddress> mergedRegions;
+
+	/**
+	 * @param sheet an object that represents the worksheet
+	 */
+	public WorkbookSheetData(Sheet sheet) {
+		this.sheet = sheet;
+	}
+
+	@Override
+	public List<CellRangeAddress> getMergedRegions() {
+		if(mergedRegions==null)
+			mergedRegions = sheet.getMergedRegions();
+		return mergedRegions;
+	}
+
+	@Override
+	public boolean containsRow(int rowNum) {
+		return sheet.getRow(rowNum)!=null;
+	}
+
+	@Override
+	public boolean isRowHidden(int rowNum) {
+		Row row = sheet.getRow(rowNum);
+		return row!=null && (row.getZeroHeight() || row.getHeight() == 0);
+	}
+
+	@Override
+	public boolean containsCell(int rowNum, int columnNum) {
+		Row row = sheet.getRow(rowNum);
+		return row!=null && row.getCell(columnNum)!=null;
+	}
+
+	@Override
+	public boolean isColumnHidden(int columnNum) {
+		return sheet.isColumnHidden(columnNum) || sheet.getColumnWidth(columnNum)==0;
+	}
+
+	@Override
+	public boolean isNonEmptyCell(int rowNum, int columnNum) {
+		Row row = sheet.getRow(rowNum);
+		Cell cell = row==null ? null : row.getCell(columnNum);
+		return cell!=null && CellUtils.isNonEmptyCell(cell);
+	}
+
+	@Override
+	public int getNextNonEmptyCell(int rowNum, int columnNum) {
+		Row row = sheet.getRow(rowNum);
+		if(row==null)
+			return -1;
+
+		for (int n = Math.max(columnNum, row.getFirstCellNum()); n < row.getLastCellNum(); n++) {
+			if(isNonEmptyCell(rowNum, n))
+				return n;
+		}
+		return -1;
+	}
+}
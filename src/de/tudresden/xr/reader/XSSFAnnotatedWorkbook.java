@@ -0,0 +1,130 @@
+/**
+ * 
+ */
+package de.tudresden.xr.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+
+import de.tudresden.xr.model.annotation.RangeAnnotationsSheet;
+import de.tudresden.xr.model.annotation.WorkbookAnnotation;
+
+/**
+ * An annotated .xlsx file, loaded in two phases (see AnnotatedWorkbook).
+ * The sheets are located through XSSFReader, and only the xml of the requested worksheet is parsed (SAX).
+ */
+public class XSSFAnnotatedWorkbook extends AnnotatedWorkbook {
+
+	private OPCPackage pkg;
+	private List<PackagePart> sheetParts = new ArrayList<PackagePart>();
+	private SharedStrings sharedStrings;
+
+
+	/**
+	 * Open the given .xlsx file (read-only), and read its annotation data and the order of its sheets
+	 * @param excelFile a generic File object that provides access to the Excel file
+	 * @throws Exception a generic exception, containing a string message with clarifications
+	 */
+	public XSSFAnnotatedWorkbook(File excelFile) throws Exception {
+		this(excelFile.getName(), OPCPackage.open(excelFile, PackageAccess.READ));
+	}
+
+
+	/**
+	 * Read the annotation data and the order of the sheets from the given package (e.g., opened from memory, see WorkbookContent)
+	 * @param fileName the name of the excel file
+	 * @param pkg the open package of the .xlsx file, which is released when this object is closed (or if it cannot be read)
+	 * @throws Exception a generic exception, containing a string message with clarifications
+	 */
+	public XSSFAnnotatedWorkbook(String fileName, OPCPackage pkg) throws Exception {
+		super(fileName);
+
+		this.pkg = pkg;
+		try{
+			readWorkbook();
+		}catch(Exception ex){
+			pkg.revert();
+			throw ex;
+		}
+	}
+
+
+	/**
+	 * Phase 1: read the annotation data, and the order of the sheets
+	 * @throws Exception a generic exception, containing a string message with clarifications
+	 */
+	private void readWorkbook() throws Exception{
+
+		XSSFReader reader = new XSSFReader(pkg);
+		XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+
+		List<String> sheetNames = new ArrayList<String>();
+		WorkbookAnnotation wa = null;
+		while(sheets.hasNext()){
+			InputStream is = sheets.next();
+			try{
+				sheetNames.add(sheets.getSheetName());
+				sheetParts.add(sheets.getSheetPart());
+
+				if(wa==null && sheets.getSheetName().equalsIgnoreCase(RangeAnnotationsSheet.getName())){
+					wa = XSSFAnnotationReader.readAnnotationSheet(pkg, is, getFileName());
+				}
+			}finally{
+				is.close();
+			}
+		}
+
+		if(wa==null){
+			throw new Exception("RangeAnnotationData sheet was not found in the file \""+getFileName()+"\".");
+		}
+		setWorkbookAnnotation(wa);
+		setSheetNames(sheetNames);
+	}
+
+
+	/**
+	 * Phase 2: parse the xml of the given worksheet
+	 */
+	@Override
+	public SheetData loadSheet(String sheetName) throws Exception {
+
+		int sheetIndex = getSheetIndex(sheetName);
+		if(sheetIndex<0){
+			throw new Exception("The sheet \""+sheetName+"\" was not found in the file \""+getFileName()+"\".");
+		}
+
+		// the shared strings are kept off the heap, in a memory mapped file
+		if(sharedStrings==null){
+			sharedStrings = MappedSharedStrings.load(pkg);
+		}
+
+		XSSFSheetDataHandler handler = new XSSFSheetDataHandler(sharedStrings);
+		InputStream is = sheetParts.get(sheetIndex).getInputStream();
+		try{
+			SharedStringsHandler.parse(is, handler);
+		}finally{
+			is.close();
+		}
+		return handler.getSheetData();
+	}
+
+
+	/**
+	 * Release the package (without saving), and the shared strings table
+	 */
+	@Override
+	public void close() throws IOException {
+		if(sharedStrings!=null){
+			sharedStrings.close();
+		}
+		pkg.revert();
+	}
+}
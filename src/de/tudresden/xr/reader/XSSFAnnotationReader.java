@@ -0,0 +1,223 @@
+/**
+ * 
+ */
+package de.tudresden.xr.reader;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import de.tudresden.xr.model.annotation.RangeAnnotationsSheet;
+import de.tudresden.xr.model.annotation.WorkbookAnnotation;
+
+/**
+ * Reads the annotation data from .xlsx files, without creating the Apache POI usermodel (DOM) for the workbook.
+ * Only the xml of the annotation data sheet is parsed (SAX), together with the shared strings that it refers to.
+ */
+public class XSSFAnnotationReader {
+
+	/**
+	 * Read the annotation data for the given .xlsx file.
+	 *
+	 * @param excelFile a generic File object that provides access to the Excel file
+	 * @return a WorkbookAnnotation object that provides access to all the RangeAnnotations for the given Workbook.
+	 * @throws Exception a generic exception, containing a string message with clarifications
+	 */
+	public static WorkbookAnnotation readAnnotationData(File excelFile) throws Exception{
+
+		OPCPackage pkg = OPCPackage.open(excelFile, PackageAccess.READ);
+		try{
+			return readAnnotationData(pkg, excelFile.getName());
+		}finally{
+			pkg.revert();
+		}
+	}
+
+
+	/**
+	 * Read the annotation data from the given (open) package.
+	 *
+	 * @param pkg the package of the .xlsx file
+	 * @param fileName a string that represents the name of the excel file
+	 * @return a WorkbookAnnotation object that provides access to all the RangeAnnotations for the given Workbook.
+	 * @throws Exception a generic exception, containing a string message with clarifications
+	 */
+	public static WorkbookAnnotation readAnnotationData(OPCPackage pkg, String fileName) throws Exception{
+
+		// find and parse the annotation data sheet
+		XSSFReader reader = new XSSFReader(pkg);
+		XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+
+		while(sheets.hasNext()){
+			InputStream is = sheets.next();
+			try{
+				if(sheets.getSheetName().equalsIgnoreCase(RangeAnnotationsSheet.getName())){
+					return readAnnotationSheet(pkg, is, fileName);
+				}
+			}finally{
+				is.close();
+			}
+		}
+
+		throw new Exception("RangeAnnotationData sheet was not found in the file \""+fileName+"\".");
+	}
+
+
+	/**
+	 * Read the annotation data from the xml of the annotation data sheet.
+	 *
+	 * @param pkg the package of the .xlsx file, which holds the shared strings
+	 * @param sheetData the xml stream of the annotation data sheet
+	 * @param fileName a string that represents the name of the excel file
+	 * @return a WorkbookAnnotation object that provides access to all the RangeAnnotations for the given Workbook.
+	 * @throws Exception a generic exception, containing a string message with clarifications
+	 */
+	static WorkbookAnnotation readAnnotationSheet(OPCPackage pkg, InputStream sheetData, String fileName) throws Exception{
+
+		AnnotationSheetHandler handler = new AnnotationSheetHandler();
+		SharedStringsHandler.parse(sheetData, handler);
+
+		// read only the shared strings used by the annotation data sheet
+		final BitSet required = handler.getSharedStringIndices();
+		final int requiredCount = required.cardinality();
+		final HashMap<Integer, String> sharedStrings = new HashMap<Integer, String>();
+		if(!required.isEmpty()){
+			new SharedStringsHandler() {
+				@Override
+				protected void string(int index, String value) throws SAXException {
+					if(required.get(index)){
+						sharedStrings.put(index, value);
+						if(sharedStrings.size()==requiredCount)
+							throw new StopParsingException();
+					}
+				}
+			}.parse(pkg);
+		}
+
+		AnnotationDataCollector collector = new AnnotationDataCollector(fileName);
+		for(CellEntry cell: handler.getCells()){
+			String value = cell.value;
+			if(cell.isSharedString){
+				value = sharedStrings.get(Integer.parseInt(value));
+				if(value==null){
+					throw new Exception("The shared string "+cell.value+" was not found in the file \""+fileName+"\".");
+				}
+			}
+			collector.addCell(cell.rowNum, cell.columnNum, value);
+		}
+		return collector.getWorkbookAnnotation();
+	}
+
+
+	/**
+	 * A cell of the annotation data sheet, as read from the sheet xml
+	 */
+	private static class CellEntry {
+		int rowNum;
+		int columnNum;
+		boolean isSharedString;
+		String value;
+	}
+
+
+	/**
+	 * A SAX handler that collects the cells of the annotation data sheet
+	 */
+	private static class AnnotationSheetHandler extends DefaultHandler {
+
+		private List<CellEntry> cells = new ArrayList<CellEntry>();
+		private BitSet sharedStringIndices = new BitSet();
+
+		private int rowNum = -1;
+		private int columnNum = -1;
+		private String cellType;
+		private StringBuilder value = new StringBuilder();
+		private boolean isValue = false;
+		private boolean isInlineString = false;
+		private boolean isPhonetic = false;
+
+		@Override
+		public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+
+			if("row".equals(localName)){
+				String r = attributes.getValue("r");
+				rowNum = r==null ? rowNum + 1 : Integer.parseInt(r) - 1;
+				columnNum = -1;
+
+			}else if("c".equals(localName)){
+				String r = attributes.getValue("r");
+				columnNum = r==null ? columnNum + 1 : new CellReference(r).getCol();
+				cellType = attributes.getValue("t");
+				value.setLength(0);
+
+			}else if("v".equals(localName)){
+				isValue = true;
+
+			}else if("is".equals(localName)){
+				isInlineString = true;
+
+			}else if("t".equals(localName)){
+				isValue = isInlineString && !isPhonetic;
+
+			}else if("rPh".equals(localName)){
+				isPhonetic = true;
+			}
+		}
+
+		@Override
+		public void endElement(String uri, String localName, String qName) throws SAXException {
+
+			if("c".equals(localName)){
+				CellEntry cell = new CellEntry();
+				cell.rowNum = rowNum;
+				cell.columnNum = columnNum;
+
+				if("s".equals(cellType) && value.length()>0){
+					cell.isSharedString = true;
+					cell.value = value.toString().trim();
+					sharedStringIndices.set(Integer.parseInt(cell.value));
+				}else if("inlineStr".equals(cellType)){
+					cell.value = SharedStringsHandler.decode(value);
+				}else{
+					cell.value = value.toString();
+				}
+				cells.add(cell);
+
+			}else if("v".equals(localName) || "t".equals(localName)){
+				isValue = false;
+
+			}else if("is".equals(localName)){
+				isInlineString = false;
+
+			}else if("rPh".equals(localName)){
+				isPhonetic = false;
+			}
+		}
+
+		@Override
+		public void characters(char[] ch, int start, int length) throws SAXException {
+			if(isValue){
+				value.append(ch, start, length);
+			}
+		}
+
+		List<CellEntry> getCells() {
+			return cells;
+		}
+
+		BitSet getSharedStringIndices() {
+			return sharedStringIndices;
+		}
+	}
+}
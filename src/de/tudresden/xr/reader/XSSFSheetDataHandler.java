@@ -0,0 +1,205 @@
+/**
+ * 
+ */
+package de.tudresden.xr.reader;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import de.tudresden.xr.utils.CellUtils;
+
+/**
+ * A SAX handler that collects the SheetData from the xml of an .xlsx worksheet.
+ * The cells are classified as in the Apache POI usermodel (XSSFCell), without keeping their values.
+ */
+class XSSFSheetDataHandler extends DefaultHandler {
+
+	private SharedStrings sharedStrings;
+	private StreamedSheetData sheetData = new StreamedSheetData();
+
+	// the defaults of the sheet, as in XSSFSheet when the sheetFormatPr element is missing
+	private float defaultRowHeight = 0;
+	private int defaultColumnWidth = 8;
+
+	private List<CellRangeAddress> arrayFormulas = new ArrayList<CellRangeAddress>();
+
+	private int rowNum = -1;
+	private int columnNum = -1;
+	private String cellType;
+	private boolean hasFormula;
+	private boolean hasValue;
+	private StringBuilder value = new StringBuilder();
+	private StringBuilder inlineValue = new StringBuilder();
+	private boolean isValue = false;
+	private boolean isInlineString = false;
+	private boolean isInlineText = false;
+	private boolean isPhonetic = false;
+
+
+	/**
+	 * @param sharedStrings the shared strings table of the workbook
+	 */
+	XSSFSheetDataHandler(SharedStrings sharedStrings) {
+		this.sharedStrings = sharedStrings;
+	}
+
+
+	@Override
+	public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+
+		if("c".equals(localName)){
+			String r = attributes.getValue("r");
+			columnNum = r==null ? columnNum + 1 : parseColumn(r);
+			cellType = attributes.getValue("t");
+			hasFormula = false;
+			hasValue = false;
+			value.setLength(0);
+			inlineValue.setLength(0);
+
+		}else if("v".equals(localName)){
+			isValue = true;
+			hasValue = true;
+
+		}else if("f".equals(localName)){
+			hasFormula = true;
+			if("array".equals(attributes.getValue("t")) && attributes.getValue("ref")!=null){
+				arrayFormulas.add(CellRangeAddress.valueOf(attributes.getValue("ref")));
+			}
+
+		}else if("is".equals(localName)){
+			isInlineString = true;
+
+		}else if("t".equals(localName)){
+			isInlineText = isInlineString && !isPhonetic;
+
+		}else if("rPh".equals(localName)){
+			isPhonetic = true;
+
+		}else if("row".equals(localName)){
+			String r = attributes.getValue("r");
+			rowNum = r==null ? rowNum + 1 : Integer.parseInt(r) - 1;
+			columnNum = -1;
+
+			// as XSSFRow.getZeroHeight and XSSFRow.getHeight
+			String ht = attributes.getValue("ht");
+			float height = ht==null ? defaultRowHeight : (float) Double.parseDouble(ht);
+			sheetData.addRow(rowNum, isTrue(attributes.getValue("hidden")) || (short)(int)(height*20f)==0);
+
+		}else if("col".equals(localName)){
+			// as XSSFSheet.isColumnHidden and XSSFSheet.getColumnWidth
+			String width = attributes.getValue("width");
+			double columnWidth = width==null ? defaultColumnWidth : Double.parseDouble(width);
+			sheetData.addColumns(Integer.parseInt(attributes.getValue("min")) - 1, Integer.parseInt(attributes.getValue("max")) - 1,
+					isTrue(attributes.getValue("hidden")) || (int)(columnWidth*256)==0);
+
+		}else if("mergeCell".equals(localName)){
+			sheetData.addMergedRegion(CellRangeAddress.valueOf(attributes.getValue("ref")));
+
+		}else if("sheetFormatPr".equals(localName)){
+			String rowHeight = attributes.getValue("defaultRowHeight");
+			defaultRowHeight = rowHeight==null ? 0 : (float) Double.parseDouble(rowHeight);
+			String baseColWidth = attributes.getValue("baseColWidth");
+			defaultColumnWidth = baseColWidth==null ? 8 : Integer.parseInt(baseColWidth);
+			sheetData.setDefaultColumnHidden(defaultColumnWidth==0);
+		}
+	}
+
+	@Override
+	public void endElement(String uri, String localName, String qName) throws SAXException {
+
+		if("c".equals(localName)){
+			sheetData.addCell(rowNum, columnNum, isNonEmptyCell());
+
+		}else if("v".equals(localName)){
+			isValue = false;
+
+		}else if("t".equals(localName)){
+			isInlineText = false;
+
+		}else if("is".equals(localName)){
+			isInlineString = false;
+
+		}else if("rPh".equals(localName)){
+			isPhonetic = false;
+		}
+	}
+
+	@Override
+	public void characters(char[] ch, int start, int length) throws SAXException {
+		if(isValue){
+			value.append(ch, start, length);
+		}else if(isInlineText){
+			inlineValue.append(ch, start, length);
+		}
+	}
+
+
+	/**
+	 * Classify the current cell, following XSSFCell.getCellTypeEnum and the string values of the cell
+	 * @return true if the cell contains a formula or an error, or a value with characters other than just white spaces
+	 */
+	private boolean isNonEmptyCell(){
+
+		if(hasFormula || isInArrayFormula() || "e".equals(cellType))
+			return true;
+
+		if(cellType==null || "n".equals(cellType)){
+			return hasValue; // numeric, or blank when there is no value
+		}else if("s".equals(cellType)){
+			return hasValue && !CellUtils.isBlankValue(sharedStrings.getString(Integer.parseInt(value.toString().trim())));
+		}else if("inlineStr".equals(cellType)){
+			return !CellUtils.isBlankValue(SharedStringsHandler.decode(hasValue ? value : inlineValue));
+		}else if("str".equals(cellType)){
+			return hasValue && !CellUtils.isBlankValue(SharedStringsHandler.decode(value));
+		}
+		return true; // boolean
+	}
+
+	/**
+	 * @return true if the current cell is part of an array formula (i.e., it is a formula cell in the usermodel)
+	 */
+	private boolean isInArrayFormula(){
+		for(CellRangeAddress range: arrayFormulas){
+			if(range.isInRange(rowNum, columnNum))
+				return true;
+		}
+		return false;
+	}
+
+
+	/**
+	 * @return the data collected from the sheet
+	 */
+	StreamedSheetData getSheetData() {
+		return sheetData;
+	}
+
+
+	/**
+	 * @param value the value of a boolean attribute
+	 * @return true if the value is "1" or "true"
+	 */
+	private static boolean isTrue(String value){
+		return "1".equals(value) || "true".equals(value);
+	}
+
+	/**
+	 * @param reference a cell reference in A1 format (e.g., AB12)
+	 * @return the (0-based) index of the column
+	 */
+	private static int parseColumn(String reference){
+		int column = 0;
+		for (int i = 0; i < reference.length(); i++) {
+			char c = reference.charAt(i);
+			if(c<'A' || c>'Z')
+				break;
+			column = column*26 + (c - 'A' + 1);
+		}
+		return column - 1;
+	}
+}
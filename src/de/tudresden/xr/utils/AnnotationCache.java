@@ -0,0 +1,275 @@
+/**
+ * 
+ */
+package de.tudresden.xr.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.tudresden.xr.model.annotation.RangeAnnotation;
+import de.tudresden.xr.model.annotation.TableAnnotation;
+import de.tudresden.xr.model.annotation.WorkbookAnnotation;
+import de.tudresden.xr.model.annotation.WorksheetAnnotation;
+
+/**
+ * A persistent cache of the annotation data of excel files, on the local disk.
+ * <p>
+ * The entries are addressed by the SHA-256 hash of the content of the excel files, so a file that is renamed, copied,
+ * or touched is still found in the cache, while a file that was edited is not. Each entry holds the rows of the annotation
+ * data sheet in a compact binary form (the tables before the ranges they contain), and the WorkbookAnnotation is re-created
+ * from these rows as it is done for the sheet itself, without opening the excel file.
+ * The least recently used entries are deleted once the total size of the cache exceeds its limit.
+ * The cache can be shared by several processes, since the entries are written to a temporary file and then moved in place.
+ */
+public class AnnotationCache {
+
+	private static final String ENTRY_SUFFIX = ".wa";
+
+	// the first bytes of an entry, and the version of its format
+	private static final int MAGIC = 0x58524143;
+	private static final int VERSION = 1;
+
+	private File directory;
+	private long maxSize;
+	private AtomicLong size = new AtomicLong(0);
+
+
+	/**
+	 * Open the cache in the given directory, which is created if it does not exist
+	 * @param directory the directory that holds the entries of the cache
+	 * @param maxSize the limit for the total size of the entries (in bytes)
+	 * @throws IOException if the directory cannot be created
+	 */
+	public AnnotationCache(File directory, long maxSize) throws IOException {
+		if(!directory.isDirectory() && !directory.mkdirs()){
+			throw new IOException("The cache directory \""+directory.getPath()+"\" cannot be created.");
+		}
+		this.directory = directory;
+		this.maxSize = maxSize;
+
+		for (File entry : listEntries()) {
+			size.addAndGet(entry.length());
+		}
+	}
+
+
+	/**
+	 * Get the annotation data of the given excel file from the cache
+	 * @param excelFile the excel file
+	 * @return the WorkbookAnnotation re-created from the cache entry, or null if the file is not in the cache
+	 * @throws Exception if the excel file cannot be read, or the annotation data in the entry is not valid
+	 */
+	public WorkbookAnnotation get(File excelFile) throws Exception {
+		return get(excelFile, FileUtils.getContentHash(excelFile));
+	}
+
+	/**
+	 * @param excelFile the excel file
+	 * @param key the hash of the content of the excel file (see FileUtils.getContentHash)
+	 * @return the WorkbookAnnotation re-created from the cache entry, or null if the file is not in the cache
+	 * @throws Exception if the annotation data in the entry is not valid
+	 */
+	public WorkbookAnnotation get(File excelFile, String key) throws Exception {
+
+		File entry = getEntry(key);
+		List<String[]> rows;
+		try{
+			rows = readEntry(entry);
+		}catch(IOException ioEx){
+			// the entry does not exist, or it was written by another version, or it was evicted by another process
+			return null;
+		}
+
+		// the entry was used recently
+		entry.setLastModified(System.currentTimeMillis());
+
+		WorkbookAnnotation wa = new WorkbookAnnotation(excelFile.getName());
+		for (String[] row : rows) {
+			WorkbookUtils.addAnnotationData(wa, row, excelFile.getName());
+		}
+		return wa;
+	}
+
+
+	/**
+	 * Store the annotation data of the given excel file in the cache
+	 * @param key the hash of the content of the excel file (see FileUtils.getContentHash)
+	 * @param wa the annotation data of the excel file
+	 * @throws IOException if the entry cannot be written
+	 */
+	public void put(String key, WorkbookAnnotation wa) throws IOException {
+
+		File entry = getEntry(key);
+		File temp = File.createTempFile(key + ".", ".tmp", directory);
+		try{
+			writeEntry(temp, getRows(wa));
+			long previous = entry.length();
+			Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			size.addAndGet(entry.length() - previous);
+		}finally{
+			temp.delete();
+		}
+
+		if(size.get() > maxSize){
+			evict();
+		}
+	}
+
+
+	/**
+	 * @return the total size of the entries of the cache (in bytes)
+	 */
+	public long getSize() {
+		return size.get();
+	}
+
+	/**
+	 * @return the directory that holds the entries of the cache
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+
+	/**
+	 * Get the rows of the annotation data sheet that re-create the given WorkbookAnnotation.
+	 * The tables of a worksheet precede the ranges, since a table must exist before the ranges it contains.
+	 * @param wa the annotation data of an excel file
+	 * @return the rows, in the order specified by RangeAnnotationsSheet.getFields()
+	 */
+	private static List<String[]> getRows(WorkbookAnnotation wa) {
+
+		List<String[]> rows = new ArrayList<String[]>();
+		for (WorksheetAnnotation sheet : wa.getWorksheetsList()) {
+			for (TableAnnotation table : wa.getTablesForSheet(sheet.getKey())) {
+				rows.add(new String[]{table.getSheetName(), String.valueOf(table.getSheetIndex()), "Table",
+						table.getTableName(), table.getRangeAddress(), sheet.getKey()});
+			}
+			for (RangeAnnotation ra : wa.getRangeAnnotationsForSheet(sheet.getKey())) {
+				// the parent is either a table or the worksheet
+				String parentName = ra.getParent() instanceof TableAnnotation ? ((TableAnnotation) ra.getParent()).getTableName() : sheet.getKey();
+				rows.add(new String[]{ra.getSheetName(), String.valueOf(ra.getSheetIndex()), ra.getAnnotationLabel().name(),
+						ra.getName(), ra.getRangeAddress(), parentName});
+			}
+		}
+		return rows;
+	}
+
+
+	/**
+	 * @param file the file to write the entry to
+	 * @param rows the rows of the annotation data sheet
+	 * @throws IOException if the file cannot be written
+	 */
+	private static void writeEntry(File file, List<String[]> rows) throws IOException {
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(rows.size());
+			for (String[] row : rows) {
+				out.writeUTF(row[0]);
+				out.writeInt(Integer.parseInt(row[1]));
+				out.writeUTF(row[2]);
+				out.writeUTF(row[3]);
+				out.writeUTF(row[4]);
+				out.writeUTF(row[5]);
+			}
+		}finally{
+			out.close();
+		}
+	}
+
+	/**
+	 * @param file the file of the entry
+	 * @return the rows of the annotation data sheet
+	 * @throws IOException if the file cannot be read, or it is not an entry of this version
+	 */
+	private static List<String[]> readEntry(File file) throws IOException {
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try{
+			if(in.readInt()!=MAGIC || in.readInt()!=VERSION){
+				throw new IOException("The file \""+file.getPath()+"\" is not an entry of the annotation cache.");
+			}
+
+			int count = in.readInt();
+			List<String[]> rows = new ArrayList<String[]>(count);
+			for (int i = 0; i < count; i++) {
+				String sheetName = in.readUTF();
+				String sheetIndex = String.valueOf(in.readInt());
+				rows.add(new String[]{sheetName, sheetIndex, in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF()});
+			}
+			return rows;
+		}finally{
+			in.close();
+		}
+	}
+
+
+	/**
+	 * Delete the least recently used entries, until the total size of the cache is below its limit
+	 */
+	private synchronized void evict() {
+
+		if(size.get() <= maxSize)
+			return;
+
+		File[] entries = listEntries();
+		final long[] modified = new long[entries.length];
+		Integer[] order = new Integer[entries.length];
+		long total = 0;
+		for (int i = 0; i < entries.length; i++) {
+			modified[i] = entries[i].lastModified();
+			order[i] = i;
+			total += entries[i].length();
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer i1, Integer i2) {
+				return Long.compare(modified[i1], modified[i2]);
+			}
+		});
+
+		// the oldest entries are deleted first
+		for (int i = 0; i < order.length && total > maxSize; i++) {
+			File entry = entries[order[i]];
+			long length = entry.length();
+			if(entry.delete()){
+				total -= length;
+			}
+		}
+		size.set(total);
+	}
+
+	private File getEntry(String key) {
+		return new File(directory, key + ENTRY_SUFFIX);
+	}
+
+	private File[] listEntries() {
+		File[] entries = directory.listFiles();
+		if(entries==null)
+			return new File[0];
+
+		List<File> results = new ArrayList<File>();
+		for (File entry : entries) {
+			if(entry.isFile() && entry.getName().endsWith(ENTRY_SUFFIX))
+				results.add(entry);
+		}
+		return results.toArray(new File[results.size()]);
+	}
+}
@@ -0,0 +1,171 @@
+/**
+ * 
+ */
+package de.tudresden.xr.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+
+import org.apache.poi.openxml4j.util.ZipEntrySource;
+
+/**
+ * The entries of a zip file (e.g., an .xlsx package) that is held in memory, for OPCPackage.open(ZipEntrySource).
+ * Only the central directory is read, when the source is created. Each entry is inflated when its stream is read,
+ * as with a ZipFile on the disk. Thus, unlike OPCPackage.open(InputStream), the parts that are not read (e.g., the other sheets)
+ * are never inflated, and the parts that are read are not kept in memory.
+ * Zip64 archives are not supported (their content is larger than the arrays that hold it).
+ */
+public class ByteArrayZipEntrySource implements ZipEntrySource {
+
+	// the signatures of the zip records
+	private static final int LOCAL_HEADER = 0x04034b50;
+	private static final int CENTRAL_HEADER = 0x02014b50;
+	private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+
+	/**
+	 * An entry of the central directory, with the position of its local header
+	 */
+	private static class Entry extends ZipEntry {
+		int localHeader;
+
+		Entry(String name, int localHeader) {
+			super(name);
+			this.localHeader = localHeader;
+		}
+	}
+
+	private ByteBuffer content;
+	private List<Entry> entries = new ArrayList<Entry>();
+	private Map<String, Entry> entriesByName = new HashMap<String, Entry>();
+	private boolean isClosed = false;
+
+
+	/**
+	 * Read the central directory of the given zip file
+	 * @param content the content of the zip file
+	 * @throws IOException if the content is not a zip file, or it is a zip64 archive
+	 */
+	public ByteArrayZipEntrySource(byte[] content) throws IOException {
+		this.content = ByteBuffer.wrap(content).order(ByteOrder.LITTLE_ENDIAN);
+
+		// the end of the central directory is followed only by a comment, of at most 64KB
+		int end = -1;
+		for (int i = content.length - 22; i >= Math.max(0, content.length - 22 - 0xFFFF); i--) {
+			if(this.content.getInt(i)==END_OF_CENTRAL_DIRECTORY){
+				end = i;
+				break;
+			}
+		}
+		if(end<0){
+			throw new IOException("The content is not a zip file.");
+		}
+
+		int count = getUnsignedShort(end + 10);
+		long offset = this.content.getInt(end + 16) & 0xFFFFFFFFL;
+		if(count==0xFFFF || offset==0xFFFFFFFFL){
+			throw new IOException("The zip64 archives cannot be read from memory.");
+		}
+
+		int position = (int) offset;
+		for (int i = 0; i < count; i++) {
+			if(position + 46 > end || this.content.getInt(position)!=CENTRAL_HEADER){
+				throw new IOException("The central directory of the zip file is corrupt.");
+			}
+			int nameLength = getUnsignedShort(position + 28);
+			int extraLength = getUnsignedShort(position + 30);
+			int commentLength = getUnsignedShort(position + 32);
+			String name = new String(content, position + 46, nameLength, StandardCharsets.UTF_8);
+
+			Entry entry = new Entry(name, this.content.getInt(position + 42));
+			entry.setMethod(getUnsignedShort(position + 10));
+			entry.setCrc(this.content.getInt(position + 16) & 0xFFFFFFFFL);
+			entry.setCompressedSize(this.content.getInt(position + 20) & 0xFFFFFFFFL);
+			entry.setSize(this.content.getInt(position + 24) & 0xFFFFFFFFL);
+			entries.add(entry);
+			entriesByName.put(name, entry);
+
+			position += 46 + nameLength + extraLength + commentLength;
+		}
+	}
+
+
+	/**
+	 * @return the sum of the uncompressed sizes of the entries, as recorded in the central directory
+	 */
+	public long getUncompressedSize() {
+		long size = 0;
+		for (Entry entry : entries) {
+			size += entry.getSize();
+		}
+		return size;
+	}
+
+
+	@Override
+	public Enumeration<? extends ZipEntry> getEntries() {
+		return Collections.enumeration(entries);
+	}
+
+	@Override
+	public InputStream getInputStream(ZipEntry zipEntry) throws IOException {
+
+		Entry entry = zipEntry instanceof Entry ? (Entry) zipEntry : entriesByName.get(zipEntry.getName());
+		if(entry==null){
+			throw new IOException("The entry \""+zipEntry.getName()+"\" is not in the zip file.");
+		}
+
+		int position = entry.localHeader;
+		if(position<0 || position + 30 > content.capacity() || content.getInt(position)!=LOCAL_HEADER){
+			throw new IOException("The local header of the entry \""+entry.getName()+"\" is corrupt.");
+		}
+		int start = position + 30 + getUnsignedShort(position + 26) + getUnsignedShort(position + 28);
+		if(start + entry.getCompressedSize() > content.capacity()){
+			throw new IOException("The entry \""+entry.getName()+"\" ends after the zip file.");
+		}
+
+		InputStream data = new ByteArrayInputStream(content.array(), start, (int) entry.getCompressedSize());
+		if(entry.getMethod()==ZipEntry.STORED)
+			return data;
+		if(entry.getMethod()!=ZipEntry.DEFLATED){
+			throw new IOException("The compression method "+entry.getMethod()+" of the entry \""+entry.getName()+"\" is not supported.");
+		}
+
+		final Inflater inflater = new Inflater(true);
+		return new InflaterInputStream(data, inflater, 1 << 16) {
+			@Override
+			public void close() throws IOException {
+				// the native memory of the inflater is released at once, rather than by the garbage collector
+				super.close();
+				inflater.end();
+			}
+		};
+	}
+
+	@Override
+	public void close() throws IOException {
+		isClosed = true;
+	}
+
+	@Override
+	public boolean isClosed() {
+		return isClosed;
+	}
+
+
+	private int getUnsignedShort(int position) {
+		return content.getShort(position) & 0xFFFF;
+	}
+}
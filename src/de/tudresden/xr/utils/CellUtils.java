@@ -251,6 +251,44 @@ public class CellUtils {
 		return formulaValue;
 	}
 	
+	/**
+	 * Check if the cell is valid for export, i.e., it contains a formula or an error, or a value with characters other than just white spaces.
+	 * The decision is taken from the type of the cell and its raw (string) content. Formulas are never evaluated.
+	 * @param cell an object representing the cell in consideration
+	 * @return true if the cell is not empty or blank, false otherwise
+	 */
+	public static boolean isNonEmptyCell(Cell cell){
+		
+		switch (cell.getCellTypeEnum()) {
+		case FORMULA:
+		case ERROR:
+		case NUMERIC:
+		case BOOLEAN:
+			return true;
+		case STRING:
+			return !isBlankValue(cell.getStringCellValue());
+		default:
+			return false; // BLANK
+		}
+	}
+	
+	
+	/**
+	 * Check if the value is blank, without creating intermediate strings
+	 * @param value the value of the cell
+	 * @return true if the value is empty, or it contains only white spaces (i.e., it matches ^\s*$)
+	 */
+	public static boolean isBlankValue(CharSequence value){
+		
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if(c!=' ' && c!='\t' && c!='\n' && c!='\u000B' && c!='\f' && c!='\r')
+				return false;
+		}
+		return true;
+	}
+	
+	
 	/**
 	 * Check if cell is blank
 	 * @param cell an object representing the cell in consideration
@@ -0,0 +1,131 @@
+/**
+ * 
+ */
+package de.tudresden.xr.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches a directory for excel files that are created, modified, or deleted (e.g., by the annotators, throughout the day).
+ * The changes are debounced: a change is reported once no excel file changed for a quiet period, so that a file
+ * that is still being written (or copied) is not read half-way. The other files of the directory (e.g., the export file) are ignored.
+ */
+public class DirectoryWatcher {
+
+	// the default time without changes (in milliseconds), before the changes are reported
+	public static final long DEFAULT_QUIET_PERIOD = 2000;
+
+	private File directory;
+	private WatchService service;
+
+
+	/**
+	 * Start watching the given directory. The changes made from now on are reported by awaitChanges.
+	 * @param directory the directory that holds the excel files
+	 * @throws IOException if the directory cannot be watched
+	 */
+	public DirectoryWatcher(File directory) throws IOException {
+		this.directory = directory;
+		this.service = FileSystems.getDefault().newWatchService();
+		directory.toPath().register(service, StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+	}
+
+
+	/**
+	 * Run the given export, and then run it again whenever excel files are created, modified, or deleted in the directory.
+	 * The directory is watched before the first export, so the changes made during an export are not missed.
+	 * The export must not stop the process on errors (e.g., a file deleted while it is listed), since it runs again after the next change.
+	 * This method returns only when the thread is interrupted.
+	 * @param directory the directory that holds the excel files
+	 * @param quietPeriod the time without changes (in milliseconds) before the export runs again
+	 * @param export the export of the excel files in the directory
+	 * @throws IOException if the directory cannot be watched, or it was deleted
+	 */
+	public static void watch(File directory, long quietPeriod, Runnable export) throws IOException {
+
+		DirectoryWatcher watcher = new DirectoryWatcher(directory);
+		try{
+			while(true){
+				// an empty directory is exported as well, so that the rows of the deleted files are dropped
+				export.run();
+
+				System.out.println("\nWatching the directory for new, modified, or deleted excel files...\n");
+				watcher.awaitChanges(quietPeriod);
+			}
+		}catch(InterruptedException iEx){
+			// the watch was stopped
+		}finally{
+			watcher.close();
+		}
+	}
+
+
+	/**
+	 * Wait until an excel file is created, modified, or deleted, and then until no excel file changes for the given period
+	 * @param quietPeriod the time without changes (in milliseconds)
+	 * @throws InterruptedException if the thread is interrupted while waiting
+	 * @throws IOException if the directory can no longer be watched (e.g., it was deleted)
+	 */
+	public void awaitChanges(long quietPeriod) throws InterruptedException, IOException {
+
+		// wait for the first change
+		while(!pollEvents(service.take())){
+			// only other files changed
+		}
+
+		// wait until the directory is quiet
+		long deadline = System.currentTimeMillis() + quietPeriod;
+		while(true){
+			long wait = deadline - System.currentTimeMillis();
+			if(wait<=0)
+				return;
+
+			WatchKey key = service.poll(wait, TimeUnit.MILLISECONDS);
+			if(key!=null && pollEvents(key)){
+				deadline = System.currentTimeMillis() + quietPeriod;
+			}
+		}
+	}
+
+	/**
+	 * Stop watching the directory
+	 * @throws IOException if the watch service cannot be closed
+	 */
+	public void close() throws IOException {
+		service.close();
+	}
+
+
+	/**
+	 * @param key the key of the directory, which is signalled
+	 * @return true if an excel file changed, or the events were lost (i.e., any file might have changed)
+	 * @throws IOException if the directory can no longer be watched
+	 */
+	private boolean pollEvents(WatchKey key) throws IOException {
+
+		boolean changed = false;
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if(event.kind()==StandardWatchEventKinds.OVERFLOW){
+				changed = true;
+			}else{
+				String name = ((Path) event.context()).getFileName().toString().toLowerCase();
+				if(name.endsWith(".xls") || name.endsWith(".xlsx"))
+					changed = true;
+			}
+		}
+
+		if(!key.reset()){
+			throw new IOException("The directory \""+directory.getPath()+"\" can no longer be watched.");
+		}
+		return changed;
+	}
+}
@@ -6,11 +6,23 @@ package de.tudresden.xr.utils;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileFilter;
+import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  */
@@ -43,6 +55,120 @@ public class FileUtils {
 	}
 	 
 	
+	/**
+	 * Group the given files by their content. Only the files that have the same size as another file are hashed, 
+	 * and they are hashed in parallel.
+	 * 
+	 * @param files the files to group
+	 * @param threads the number of threads that hash the files. when less than 2, the files are hashed on the calling thread
+	 * @return the groups of files with the same content, in the order of their first file. within a group, the files keep their order
+	 * @throws IOException if a file cannot be read
+	 */
+	public static List<List<File>> groupByContent(File[] files, int threads) throws IOException {
+		
+		// files of different sizes cannot have the same content
+		HashMap<Long, Integer> sizes = new HashMap<Long, Integer>();
+		for (File file : files) {
+			Long size = file.length();
+			sizes.put(size, sizes.containsKey(size) ? sizes.get(size) + 1 : 1);
+		}
+		
+		String[] hashes = new String[files.length];
+		ExecutorService executor = threads<2 ? null : Executors.newFixedThreadPool(threads);
+		try{
+			List<Future<String>> futures = new ArrayList<Future<String>>();
+			for (int i = 0; i < files.length; i++) {
+				final File file = files[i];
+				if(sizes.get(file.length())<2){
+					futures.add(null);
+				}else if(executor==null){
+					hashes[i] = getContentHash(file);
+					futures.add(null);
+				}else{
+					futures.add(executor.submit(new Callable<String>() {
+						@Override
+						public String call() throws Exception {
+							return getContentHash(file);
+						}
+					}));
+				}
+			}
+			for (int i = 0; i < files.length; i++) {
+				if(futures.get(i)!=null)
+					hashes[i] = futures.get(i).get();
+			}
+		}catch(InterruptedException iEx){
+			throw new IOException("The hashing of the files was interrupted.", iEx);
+		}catch(ExecutionException exEx){
+			if(exEx.getCause() instanceof IOException)
+				throw (IOException) exEx.getCause();
+			throw new IOException(exEx.getCause().getMessage(), exEx.getCause());
+		}finally{
+			if(executor!=null)
+				executor.shutdownNow();
+		}
+		
+		LinkedHashMap<String, List<File>> groups = new LinkedHashMap<String, List<File>>();
+		for (int i = 0; i < files.length; i++) {
+			// a file with a unique size is a group of its own
+			String key = hashes[i]==null ? "#" + i : hashes[i];
+			List<File> group = groups.get(key);
+			if(group==null){
+				group = new ArrayList<File>();
+				groups.put(key, group);
+			}
+			group.add(files[i]);
+		}
+		return new ArrayList<List<File>>(groups.values());
+	}
+	
+	
+	/**
+	 * @param file the file to hash. when its content is attached to the calling thread (see WorkbookContent), it is not read again
+	 * @return the SHA-256 hash of the content of the file, as a hex string
+	 * @throws IOException if the file cannot be read
+	 */
+	public static String getContentHash(File file) throws IOException {
+		
+		WorkbookContent content = WorkbookContent.get(file);
+		if(content!=null)
+			return content.getHash();
+		
+		MessageDigest digest;
+		try{
+			digest = MessageDigest.getInstance("SHA-256");
+		}catch(NoSuchAlgorithmException nsaEx){
+			throw new IOException(nsaEx.getMessage(), nsaEx);
+		}
+		
+		InputStream is = new FileInputStream(file);
+		try{
+			byte[] buffer = new byte[1 << 16];
+			int n;
+			while((n = is.read(buffer)) > 0){
+				digest.update(buffer, 0, n);
+			}
+		}finally{
+			is.close();
+		}
+		
+		return toHex(digest.digest());
+	}
+	
+	
+	/**
+	 * @param bytes a hash
+	 * @return the bytes as a hex string
+	 */
+	public static String toHex(byte[] bytes) {
+		StringBuilder sb = new StringBuilder();
+		for (byte b : bytes) {
+			sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+		}
+		return sb.toString();
+	}
+	
+	
 	/**
 	 * 
 	 * @param directory
@@ -116,7 +242,7 @@ public class FileUtils {
     			file.createNewFile();
     		}
     		
-    		FileWriter fileWritter = new FileWriter(file.getName());
+    		FileWriter fileWritter = new FileWriter(file);
 	        BufferedWriter bufferWritter = new BufferedWriter(fileWritter);
 	        bufferWritter.write(text);
 	        bufferWritter.close();
@@ -139,7 +265,7 @@ public class FileUtils {
     			file.createNewFile();
     		}
     		
-    		FileWriter fileWritter = new FileWriter(file.getName(), true);
+    		FileWriter fileWritter = new FileWriter(file, true);
 	        BufferedWriter bufferWritter = new BufferedWriter(fileWritter);
 	        bufferWritter.write(text);
 	        bufferWritter.close();
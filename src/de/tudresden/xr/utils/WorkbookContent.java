@@ -0,0 +1,114 @@
+/**
+ * 
+ */
+package de.tudresden.xr.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * The content of an excel file, read into memory before the file is parsed (see OrderedWorkbookExecutor.runVirtual).
+ * The content is attached to the thread that processes the file. While it is attached, the file is not read again:
+ * its format and size are checked (WorkbookUtils), it is opened (OPCPackage, NPOIFSFileSystem), and it is hashed
+ * (FileUtils.getContentHash) from memory. Thus, the i/o of a file is done before the file takes a permit to be parsed.
+ */
+public class WorkbookContent {
+
+	// the size of the largest file that is read into memory (in bytes). larger files are read from the disk, as they are parsed
+	public static final long MAX_SIZE = 1L << 30;
+
+	private static final ThreadLocal<WorkbookContent> attached = new ThreadLocal<WorkbookContent>();
+
+	private File file;
+	private byte[] bytes;
+	private String hash;
+
+
+	/**
+	 * @param file the excel file
+	 * @param bytes the content of the file
+	 * @param hash the SHA-256 hash of the content, or null if it was not computed
+	 */
+	private WorkbookContent(File file, byte[] bytes, String hash) {
+		this.file = file;
+		this.bytes = bytes;
+		this.hash = hash;
+	}
+
+
+	/**
+	 * Read the content of the given file
+	 * @param file the excel file
+	 * @param withHash true to hash the content as well (e.g., for the annotation cache, or an incremental export)
+	 * @return the content of the file, or null if the file is larger than MAX_SIZE
+	 * @throws IOException if the file cannot be read
+	 */
+	public static WorkbookContent read(File file, boolean withHash) throws IOException {
+		if(file.length() > MAX_SIZE)
+			return null;
+		byte[] bytes = Files.readAllBytes(file.toPath());
+		return new WorkbookContent(file, bytes, withHash ? hash(bytes) : null);
+	}
+
+
+	/**
+	 * Attach this content to the calling thread, until it is detached
+	 */
+	public void attach() {
+		attached.set(this);
+	}
+
+	/**
+	 * Detach the content from the calling thread, so that it can be released
+	 */
+	public static void detach() {
+		attached.remove();
+	}
+
+	/**
+	 * @param file an excel file
+	 * @return the content of the given file, if it is attached to the calling thread, or null
+	 */
+	public static WorkbookContent get(File file) {
+		WorkbookContent content = attached.get();
+		return content!=null && content.file.equals(file) ? content : null;
+	}
+
+
+	/**
+	 * @return the content of the file
+	 */
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return the SHA-256 hash of the content, as a hex string (see FileUtils.getContentHash)
+	 * @throws IOException if the hash algorithm is not available
+	 */
+	public String getHash() throws IOException {
+		if(hash==null){
+			hash = hash(bytes);
+		}
+		return hash;
+	}
+
+
+	/**
+	 * @param bytes the content of a file
+	 * @return the SHA-256 hash of the content, as a hex string
+	 * @throws IOException if the hash algorithm is not available
+	 */
+	private static String hash(byte[] bytes) throws IOException {
+		MessageDigest digest;
+		try{
+			digest = MessageDigest.getInstance("SHA-256");
+		}catch(NoSuchAlgorithmException nsaEx){
+			throw new IOException(nsaEx.getMessage(), nsaEx);
+		}
+		return FileUtils.toHex(digest.digest(bytes));
+	}
+}
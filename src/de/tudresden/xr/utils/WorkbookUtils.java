@@ -3,14 +3,22 @@
  */
 package de.tudresden.xr.utils;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
-
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
 import java.util.LinkedHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import org.apache.poi.EncryptedDocumentException;
 import org.apache.poi.hssf.OldExcelFormatException;
 import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.poifs.filesystem.FileMagic;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
@@ -25,6 +33,11 @@ import de.tudresden.xr.model.annotation.TableAnnotation;
 import de.tudresden.xr.model.annotation.WorkbookAnnotation;
 import de.tudresden.xr.model.annotation.WorksheetAnnotation;
 import de.tudresden.xr.model.enums.AnnotationLabel;
+import de.tudresden.xr.reader.AnnotatedWorkbook;
+import de.tudresden.xr.reader.HSSFAnnotatedWorkbook;
+import de.tudresden.xr.reader.HSSFAnnotationReader;
+import de.tudresden.xr.reader.XSSFAnnotatedWorkbook;
+import de.tudresden.xr.reader.XSSFAnnotationReader;
 
 
 
@@ -33,7 +46,117 @@ import de.tudresden.xr.model.enums.AnnotationLabel;
  * 
  */
 public class WorkbookUtils {
+	
+	// the ceiling for the uncompressed size of the excel files (in bytes). no limit, when negative
+	private static long maxUncompressedSize = -1;
+	
+	// the persistent cache of the annotation data. no cache, when null
+	private static AnnotationCache annotationCache = null;
+		
+	
+	/**
+	 * Read the annotation data for the given excel file.
+	 * Only the annotation data sheet is streamed (SAX for .xlsx, HSSF events for .xls), instead of creating the Workbook object for the whole file.
+	 * When an annotation cache is set (see setAnnotationCache), the annotation data of a file with the same content is taken from the cache,
+	 * without opening the excel file, and the annotation data that is read from the excel file is added to the cache.
+	 * 
+	 * @param excelFile a generic File object that provides access to the Excel file
+	 * @return a WorkbookAnnotation object that provides access to all the RangeAnnotations for the given Workbook.
+	 * @throws Exception a generic exception, containing a string message with clarifications
+	 */
+	public static WorkbookAnnotation readAnnotationData(File excelFile) throws Exception{
 		
+		if (!excelFile.exists())
+			return null;
+		
+		checkExtension(excelFile);
+		
+		AnnotationCache cache = annotationCache;
+		if(cache==null)
+			return parseAnnotationData(excelFile);
+		
+		String key = FileUtils.getContentHash(excelFile);
+		WorkbookAnnotation wa = cache.get(excelFile, key);
+		if(wa==null){
+			wa = parseAnnotationData(excelFile);
+			if(wa!=null){
+				cache.put(key, wa);
+			}
+		}
+		return wa;
+	}
+	
+	
+	/**
+	 * Read the annotation data from the given excel file, without the annotation cache
+	 * 
+	 * @param excelFile a generic File object that provides access to the Excel file
+	 * @return a WorkbookAnnotation object that provides access to all the RangeAnnotations for the given Workbook.
+	 * @throws Exception a generic exception, containing a string message with clarifications
+	 */
+	private static WorkbookAnnotation parseAnnotationData(File excelFile) throws Exception{
+		
+		checkUncompressedSize(excelFile);
+		FileMagic fm = getFileMagic(excelFile);
+		WorkbookContent content = WorkbookContent.get(excelFile);
+		if(content!=null && fm==FileMagic.OOXML){
+			OPCPackage pkg = OPCPackage.open(new ByteArrayZipEntrySource(content.getBytes()));
+			try{
+				return XSSFAnnotationReader.readAnnotationData(pkg, excelFile.getName());
+			}finally{
+				pkg.revert();
+			}
+		}else if(content!=null && fm==FileMagic.OLE2){
+			NPOIFSFileSystem fs = new NPOIFSFileSystem(new ByteArrayInputStream(content.getBytes()));
+			try{
+				return HSSFAnnotationReader.readAnnotationData(fs.getRoot(), excelFile.getName());
+			}finally{
+				fs.close();
+			}
+		}else if(fm==FileMagic.OOXML){
+			return XSSFAnnotationReader.readAnnotationData(excelFile);
+		}else if(fm==FileMagic.OLE2){
+			return HSSFAnnotationReader.readAnnotationData(excelFile);
+		}
+		
+		Workbook wb = createWorkbook(excelFile);
+		if(wb==null)
+			return null;
+		try{
+			return readAnnotationData(wb, excelFile.getName());
+		}finally{
+			wb.close();
+		}
+	}
+	
+	
+	/**
+	 * Open the given excel file for lazy (two-phase) loading. Only the annotation data and the order of the sheets are read at this point.
+	 * The cells of a worksheet are loaded on request, via AnnotatedWorkbook.loadSheet. The returned object must be closed by the caller.
+	 * When the content of the file is attached to the calling thread (see WorkbookContent), the workbook is parsed from memory.
+	 * 
+	 * @param excelFile a generic File object that provides access to the Excel file
+	 * @return an AnnotatedWorkbook object, holding the annotations for the given Workbook
+	 * @throws Exception a generic exception, containing a string message with clarifications
+	 */
+	public static AnnotatedWorkbook openAnnotatedWorkbook(File excelFile) throws Exception{
+		
+		checkExtension(excelFile);
+		checkUncompressedSize(excelFile);
+		FileMagic fm = getFileMagic(excelFile);
+		WorkbookContent content = WorkbookContent.get(excelFile);
+		if(content!=null && fm==FileMagic.OOXML){
+			return new XSSFAnnotatedWorkbook(excelFile.getName(), OPCPackage.open(new ByteArrayZipEntrySource(content.getBytes())));
+		}else if(content!=null && fm==FileMagic.OLE2){
+			return new HSSFAnnotatedWorkbook(excelFile.getName(), new NPOIFSFileSystem(new ByteArrayInputStream(content.getBytes())));
+		}else if(fm==FileMagic.OOXML){
+			return new XSSFAnnotatedWorkbook(excelFile);
+		}else if(fm==FileMagic.OLE2){
+			return new HSSFAnnotatedWorkbook(excelFile);
+		}
+		throw new Exception("The format of the file \""+excelFile.getName()+"\" is not recognized by this application: "+fm+" !");
+	}
+	
 	
 	/**
 	 * Read the annotation data for the given workbook.
@@ -59,33 +182,14 @@ public class WorkbookUtils {
 			Row firstRow = sheet.getRow(firstRowNum);		
 			int firstColumnNum = firstRow.getFirstCellNum();
 			int lastColumnNum = firstRow.getLastCellNum();
-					
-			LinkedHashMap<String,Integer> expectedFields = RangeAnnotationsSheet.getFields();
-			if(expectedFields.size() != (lastColumnNum - firstColumnNum)){
-				throw new Exception("The sheet holding the annotation data for the file \""+fileName+"\" has less or more fields than expected");
-			}
 			
 			// check if the format is correct
-			boolean isCorrectFormat = true;
+			String[] fieldNames = new String[lastColumnNum - firstColumnNum];
 			for (int j = firstColumnNum; j <lastColumnNum; j++) {
 				Cell cell = firstRow.getCell(j);
-				String value = cell.getStringCellValue();
-				
-				if(expectedFields.get(value)==null){
-					isCorrectFormat = false;
-					break;
-				}
-				
-				int fieldIndex = expectedFields.get(value); 
-				if(fieldIndex!=j){
-					isCorrectFormat = false;
-					break;
-				}
-			}
-				
-			if(!isCorrectFormat){
-				throw new Exception("The sheet holding the annotation data for the file \""+fileName+"\" it is not in the expected format");
+				fieldNames[j - firstColumnNum] = cell==null ? null : cell.getStringCellValue();
 			}
+			checkAnnotationDataFields(fieldNames, firstColumnNum, fileName);
 				
 			wa = new WorkbookAnnotation(fileName);				
 			for (int i = firstRowNum+1; i <=lastRowNum; i++) {
@@ -101,62 +205,7 @@ public class WorkbookUtils {
 					annotationData[n] = cell.getStringCellValue();
 				}
 				
-				// the following fields are obligatory for the re-creation of the annotations
-				String sheetName = annotationData[0];
-				int sheetIndex = Integer.valueOf(annotationData[1]);
-				String strLabel = annotationData[2];
-				String annotationName = annotationData[3];
-				String strRangeAdress = annotationData[4];
-				
-				// ensure that the range address is valid
-				try{
-					CellRangeAddress.valueOf(strRangeAdress);
-				}catch(Exception ex){
-					throw new Exception("The range address is not valid (A1 format expected!). "+strRangeAdress);
-				}
-				String parentName = annotationData[5];
-				
-				// check if the worksheet annotation exists. 
-				// if not, create new and appended to the workbook annotation.
-				String sheetKey = WorksheetAnnotation.getWorksheetKey(sheetName, sheetIndex, fileName);
-				if(!wa.getWorksheetsMap().containsKey(sheetKey)){
-					WorksheetAnnotation sha = new WorksheetAnnotation(sheetName, sheetIndex, wa);
-					wa.addWorksheetAnnotation(sheetKey, sha);
-				}	
-				
-				
-				// get the parent annotation if it exists
-				ContainerAnnotation<RangeAnnotation> parentAnnotation = wa.getParentOfRangeAnnotation(parentName);
-				if (parentAnnotation==null){
-					throw new Exception("Child annotation was created before parent annotation!!!"
-							+ "\nParent =\""+parentName+"\", Child=\""+annotationName+"\"");
-				}
-				
-				// determine the annotation label
-				AnnotationLabel annotationLabel = AnnotationLabel.valueOf(strLabel);	
-				
-				// if table annotation, treat separately
-				if(annotationLabel == AnnotationLabel.Table){
-					if(parentAnnotation instanceof WorksheetAnnotation){
-						// re-create the table annotation object 
-						TableAnnotation ta = new TableAnnotation((WorksheetAnnotation) parentAnnotation, annotationName, strRangeAdress);
-						wa.addTableAnnotation(((WorksheetAnnotation) parentAnnotation).getKey(), ta);
-					}else{
-						throw new Exception("For TableAnnotations expects a WorksheetAnnotation as parent."
-								+ "Instead got "+parentAnnotation.getClass().getName());
-					}				
-				}else{
-					if(parentAnnotation instanceof WorksheetAnnotation ||  parentAnnotation instanceof TableAnnotation){
-						// re-create the range annotation object 
-						RangeAnnotation ra = new RangeAnnotation(sheetName, sheetIndex, parentAnnotation, annotationLabel, 
-								annotationName, strRangeAdress); 
-							
-						wa.addRangeAnnotation(sheetKey, ra);
-					}else{
-						throw new Exception("For RangeAnnotation expects either WorksheetAnnotation or TableAnnotation as parent."
-								+ "Instead got "+parentAnnotation.getClass().getName());
-					}
-				}				
+				addAnnotationData(wa, annotationData, fileName);
 			}
 								
 		} catch (EncryptedDocumentException e) {
@@ -171,7 +220,115 @@ public class WorkbookUtils {
 	
 	
 	/**
-	 * Create a new Workbook object (Apache POI) using the given file
+	 * Check that the header row of the annotation data sheet holds the expected fields, in the expected order.
+	 * 
+	 * @param fieldNames the values of the header row, starting from the first (left-most) cell of the row
+	 * @param firstColumnNum the index of the column where the header row starts
+	 * @param fileName a string that represents the name of the excel file
+	 * @throws Exception a generic exception, containing a string message with clarifications
+	 */
+	public static void checkAnnotationDataFields(String[] fieldNames, int firstColumnNum, String fileName) throws Exception{
+		
+		LinkedHashMap<String,Integer> expectedFields = RangeAnnotationsSheet.getFields();
+		if(expectedFields.size() != fieldNames.length){
+			throw new Exception("The sheet holding the annotation data for the file \""+fileName+"\" has less or more fields than expected");
+		}
+		
+		boolean isCorrectFormat = true;
+		for (int j = 0; j <fieldNames.length; j++) {
+			String value = fieldNames[j];
+			
+			if(value==null || expectedFields.get(value)==null){
+				isCorrectFormat = false;
+				break;
+			}
+			
+			int fieldIndex = expectedFields.get(value); 
+			if(fieldIndex!=firstColumnNum + j){
+				isCorrectFormat = false;
+				break;
+			}
+		}
+			
+		if(!isCorrectFormat){
+			throw new Exception("The sheet holding the annotation data for the file \""+fileName+"\" it is not in the expected format");
+		}
+	}
+	
+	
+	/**
+	 * Re-create the annotation described by one row of the annotation data sheet, and add it to the given workbook annotation.
+	 * 
+	 * @param wa the workbook annotation that collects the annotations of the excel file
+	 * @param annotationData the values of the row, in the order specified by RangeAnnotationsSheet.getFields()
+	 * @param fileName a string that represents the name of the excel file
+	 * @throws Exception a generic exception, containing a string message with clarifications
+	 */
+	public static void addAnnotationData(WorkbookAnnotation wa, String[] annotationData, String fileName) throws Exception{
+		
+		// the following fields are obligatory for the re-creation of the annotations
+		String sheetName = annotationData[0];
+		int sheetIndex = Integer.valueOf(annotationData[1]);
+		String strLabel = annotationData[2];
+		String annotationName = annotationData[3];
+		String strRangeAdress = annotationData[4];
+		
+		// ensure that the range address is valid
+		try{
+			CellRangeAddress.valueOf(strRangeAdress);
+		}catch(Exception ex){
+			throw new Exception("The range address is not valid (A1 format expected!). "+strRangeAdress);
+		}
+		String parentName = annotationData[5];
+		
+		// check if the worksheet annotation exists. 
+		// if not, create new and appended to the workbook annotation.
+		String sheetKey = WorksheetAnnotation.getWorksheetKey(sheetName, sheetIndex, fileName);
+		if(!wa.getWorksheetsMap().containsKey(sheetKey)){
+			WorksheetAnnotation sha = new WorksheetAnnotation(sheetName, sheetIndex, wa);
+			wa.addWorksheetAnnotation(sheetKey, sha);
+		}	
+		
+		
+		// get the parent annotation if it exists
+		ContainerAnnotation<RangeAnnotation> parentAnnotation = wa.getParentOfRangeAnnotation(parentName);
+		if (parentAnnotation==null){
+			throw new Exception("Child annotation was created before parent annotation!!!"
+					+ "\nParent =\""+parentName+"\", Child=\""+annotationName+"\"");
+		}
+		
+		// determine the annotation label
+		AnnotationLabel annotationLabel = AnnotationLabel.valueOf(strLabel);	
+		
+		// if table annotation, treat separately
+		if(annotationLabel == AnnotationLabel.Table){
+			if(parentAnnotation instanceof WorksheetAnnotation){
+				// re-create the table annotation object 
+				TableAnnotation ta = new TableAnnotation((WorksheetAnnotation) parentAnnotation, annotationName, strRangeAdress);
+				wa.addTableAnnotation(((WorksheetAnnotation) parentAnnotation).getKey(), ta);
+			}else{
+				throw new Exception("For TableAnnotations expects a WorksheetAnnotation as parent."
+						+ "Instead got "+parentAnnotation.getClass().getName());
+			}				
+		}else{
+			if(parentAnnotation instanceof WorksheetAnnotation ||  parentAnnotation instanceof TableAnnotation){
+				// re-create the range annotation object 
+				RangeAnnotation ra = new RangeAnnotation(sheetName, sheetIndex, parentAnnotation, annotationLabel, 
+						annotationName, strRangeAdress); 
+					
+				wa.addRangeAnnotation(sheetKey, ra);
+			}else{
+				throw new Exception("For RangeAnnotation expects either WorksheetAnnotation or TableAnnotation as parent."
+						+ "Instead got "+parentAnnotation.getClass().getName());
+			}
+		}
+	}
+
+	
+	
+	/**
+	 * Create a new Workbook object (Apache POI) using the given file. 
+	 * The file is opened in read-only mode, and it stays open until the Workbook is closed by the caller.
 	 * 
 	 * @param excelFile a generic File object that provides access to the Excel file
 	 * @return a Workbook (Apache POI) object
@@ -184,19 +341,133 @@ public class WorkbookUtils {
 
 		Workbook wb = null;
 
+		checkExtension(excelFile);
+		checkUncompressedSize(excelFile);
+		try {
+			wb = WorkbookFactory.create(excelFile, null, true);
+		} catch (EncryptedDocumentException | InvalidFormatException | IOException e) {
+			e.printStackTrace();
+		}
+		return wb;
+	}
+	
+	
+	/**
+	 * Ensure that the given file has one of the excel extensions supported by this application (.xls or .xlsx)
+	 * 
+	 * @param excelFile a generic File object that provides access to the Excel file
+	 * @throws Exception a generic exception, containing a string message with clarifications
+	 */
+	public static void checkExtension(File excelFile) throws Exception {
+		
 		int index = excelFile.getAbsolutePath().lastIndexOf(".");
 		String extension = excelFile.getAbsolutePath().substring(index);
-		if (extension.compareToIgnoreCase(".xls") == 0 || extension.compareToIgnoreCase(".xlsx") == 0) {
-
-			try {
-				wb = WorkbookFactory.create(excelFile);
-			} catch (EncryptedDocumentException | InvalidFormatException | IOException e) {
-				e.printStackTrace();
-			}
-
-		} else {
+		if (extension.compareToIgnoreCase(".xls") != 0 && extension.compareToIgnoreCase(".xlsx") != 0) {
 			throw new Exception("The file extension is not recognized by this application: " + extension + " !");
 		}
-		return wb;
-	}	
+	}
+	
+	
+	/**
+	 * Detect the format of the given file from its first bytes (i.e., the file signature), rather than its extension
+	 * 
+	 * @param excelFile a generic File object that provides access to the Excel file
+	 * @return FileMagic.OOXML for .xlsx files, FileMagic.OLE2 for .xls files
+	 * @throws IOException if the file cannot be read
+	 */
+	public static FileMagic getFileMagic(File excelFile) throws IOException {
+		
+		WorkbookContent content = WorkbookContent.get(excelFile);
+		if(content!=null)
+			return FileMagic.valueOf(content.getBytes());
+		
+		InputStream is = FileMagic.prepareToCheckMagic(new FileInputStream(excelFile));
+		try{
+			return FileMagic.valueOf(is);
+		}finally{
+			is.close();
+		}
+	}
+	
+	
+	/**
+	 * Get the size of the given file when uncompressed. For .xlsx files (zip packages) this is the sum of the sizes of the 
+	 * package parts, as recorded in the central directory of the zip file. For the other files it is the size of the file itself.
+	 * 
+	 * @param excelFile a generic File object that provides access to the Excel file
+	 * @return the uncompressed size of the file, in bytes
+	 * @throws IOException if the file cannot be read
+	 */
+	public static long getUncompressedSize(File excelFile) throws IOException {
+		
+		if(getFileMagic(excelFile)!=FileMagic.OOXML)
+			return excelFile.length();
+		
+		WorkbookContent content = WorkbookContent.get(excelFile);
+		if(content!=null)
+			return new ByteArrayZipEntrySource(content.getBytes()).getUncompressedSize();
+		
+		long size = 0;
+		ZipFile zip = new ZipFile(excelFile);
+		try{
+			Enumeration<? extends ZipEntry> entries = zip.entries();
+			while(entries.hasMoreElements()){
+				ZipEntry entry = entries.nextElement();
+				size += entry.getSize() < 0 ? entry.getCompressedSize() : entry.getSize();
+			}
+		}finally{
+			zip.close();
+		}
+		return size;
+	}
+	
+	
+	/**
+	 * Ensure that the uncompressed size of the given file does not exceed the ceiling set via setMaxUncompressedSize. 
+	 * Files that are too large are rejected before they are opened, instead of exhausting the heap.
+	 * 
+	 * @param excelFile a generic File object that provides access to the Excel file
+	 * @throws Exception a generic exception, containing a string message with clarifications
+	 */
+	public static void checkUncompressedSize(File excelFile) throws Exception {
+		
+		if(maxUncompressedSize<0)
+			return;
+		
+		long size = getUncompressedSize(excelFile);
+		if(size > maxUncompressedSize){
+			throw new Exception("The file \""+excelFile.getName()+"\" was skipped. Its uncompressed size ("+size+" bytes) "
+					+ "exceeds the limit of "+maxUncompressedSize+" bytes!");
+		}
+	}
+	
+	
+	/**
+	 * @return the ceiling for the uncompressed size of the excel files (in bytes), or a negative value when there is no limit
+	 */
+	public static long getMaxUncompressedSize() {
+		return maxUncompressedSize;
+	}
+	
+	/**
+	 * @param maxUncompressedSize the ceiling for the uncompressed size of the excel files (in bytes). use a negative value for no limit
+	 */
+	public static void setMaxUncompressedSize(long maxUncompressedSize) {
+		WorkbookUtils.maxUncompressedSize = maxUncompressedSize;
+	}
+	
+	
+	/**
+	 * @return the persistent cache of the annotation data, or null when there is no cache
+	 */
+	public static AnnotationCache getAnnotationCache() {
+		return annotationCache;
+	}
+	
+	/**
+	 * @param annotationCache the persistent cache of the annotation data, used by readAnnotationData. use null for no cache
+	 */
+	public static void setAnnotationCache(AnnotationCache annotationCache) {
+		WorkbookUtils.annotationCache = annotationCache;
+	}
 }
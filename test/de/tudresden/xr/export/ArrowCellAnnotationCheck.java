@@ -0,0 +1,460 @@
+/**
+ * 
+ */
+package de.tudresden.xr.export;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import de.tudresden.xr.model.enums.AnnotationLabel;
+
+/**
+ * Writes a fixed set of cell annotations with the ArrowCellAnnotationWriter, and checks the file in two ways:
+ * <ul>
+ * <li>The file is compared byte by byte with the golden file (cells.arrow, next to this class), so that any change of the format is noticed.</li>
+ * <li>The file is decoded as specified by the Arrow IPC format (Schema.fbs, Message.fbs, File.fbs), independently of the
+ * FlatBufferBuilder: the magic strings, the footer, the schema, the encapsulated messages (both through the blocks of the footer,
+ * and as a stream, up to the end-of-stream marker), the alignment of the buffers, and the dictionaries. The decoded rows
+ * are compared with the rows of the csv export.</li>
+ * </ul>
+ * A second file, with more rows than fit in a record batch, is only decoded. The check exits with 1, if the file differs,
+ * or it cannot be decoded. It is run from the root of the repository, and -update re-writes the golden file
+ * (after an intended change of the format, which is then checked with a real Arrow reader, e.g., pyarrow.ipc.open_file).
+ * <p>
+ * $ java -cp "out:lib/*" de.tudresden.xr.export.ArrowCellAnnotationCheck [-update]
+ */
+public class ArrowCellAnnotationCheck {
+
+	private static final File GOLDEN_FILE = new File("test/de/tudresden/xr/export/cells.arrow");
+
+	private static final String[] COLUMNS = {"FileName", "SheetName", "SheetIndex", "TableName", "AnnotationLabel",
+			"AnnotationAddress", "FirstColumn", "FirstRow", "LastColumn", "LastRow"};
+
+	// true for the dictionary encoded utf8 columns, false for the int32 columns
+	private static final boolean[] IS_STRING = {true, true, false, true, true, true, false, false, false, false};
+
+	// the constants of the Arrow metadata
+	private static final int METADATA_V5 = 4;
+	private static final int HEADER_SCHEMA = 1;
+	private static final int HEADER_DICTIONARY_BATCH = 2;
+	private static final int HEADER_RECORD_BATCH = 3;
+	private static final int TYPE_INT = 2;
+	private static final int TYPE_UTF8 = 5;
+
+	private ByteBuffer bb;
+
+
+	/**
+	 * @param bytes the content of an Arrow file
+	 */
+	private ArrowCellAnnotationCheck(byte[] bytes) {
+		this.bb = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+	}
+
+
+	/**
+	 * Write the given records, one workbook after the other
+	 * @param file the path to the Arrow file
+	 * @param records the cell annotations
+	 * @throws Exception a generic exception, containing a string message with clarifications
+	 */
+	static void write(File file, List<CellAnnotationRecord> records) throws Exception {
+		ArrowCellAnnotationWriter writer = new ArrowCellAnnotationWriter(file);
+		try{
+			String fileName = null;
+			for (CellAnnotationRecord record : records) {
+				if(fileName!=null && !fileName.equals(record.getFileName())){
+					writer.endWorkbook(fileName);
+				}
+				fileName = record.getFileName();
+				writer.write(record);
+			}
+			if(fileName!=null){
+				writer.endWorkbook(fileName);
+			}
+		}finally{
+			writer.close();
+		}
+	}
+
+	/**
+	 * @param records the cell annotations
+	 * @return the rows of the records, as in the csv export (without quotes)
+	 */
+	static List<String[]> toRows(List<CellAnnotationRecord> records) {
+		List<String[]> rows = new ArrayList<String[]>();
+		for (CellAnnotationRecord record : records) {
+			CellRangeAddress cellAddress = record.getCellAddress();
+			rows.add(new String[]{record.getFileName(), record.getSheetName(), String.valueOf(record.getSheetIndex()),
+					record.getTableName(), record.getAnnotationLabel().name(), cellAddress.formatAsString(),
+					String.valueOf(cellAddress.getFirstColumn()), String.valueOf(cellAddress.getFirstRow()),
+					String.valueOf(cellAddress.getLastColumn()), String.valueOf(cellAddress.getLastRow())});
+		}
+		return rows;
+	}
+
+
+	/**
+	 * Decode the Arrow file, and compare its rows with the expected rows
+	 * @param bytes the content of the Arrow file
+	 * @param expected the expected rows, in order
+	 * @param minBatches the minimum number of record batches
+	 * @throws Exception a generic exception, containing a string message with clarifications
+	 */
+	static void decode(byte[] bytes, List<String[]> expected, int minBatches) throws Exception {
+
+		ArrowCellAnnotationCheck file = new ArrowCellAnnotationCheck(bytes);
+		List<String[]> rows = file.decode(minBatches);
+		if(rows.size()!=expected.size()){
+			throw new Exception("The file has "+rows.size()+" rows instead of "+expected.size()+".");
+		}
+		for (int i = 0; i < rows.size(); i++) {
+			if(!Arrays.equals(rows.get(i), expected.get(i))){
+				throw new Exception("The row "+i+" was decoded as\n  "+Arrays.toString(rows.get(i))
+						+ "\ninstead of\n  "+Arrays.toString(expected.get(i)));
+			}
+		}
+	}
+
+	/**
+	 * @param minBatches the minimum number of record batches
+	 * @return the decoded rows
+	 * @throws Exception if the file does not follow the Arrow IPC file format
+	 */
+	private List<String[]> decode(int minBatches) throws Exception {
+
+		int length = bb.capacity();
+		expect(length >= 8 + 10 && bytes(0, 6).equals("ARROW1") && bb.getShort(6)==0,
+				"The file does not start with the padded magic string.");
+		expect(bytes(length - 6, 6).equals("ARROW1"), "The file does not end with the magic string.");
+
+		// the footer
+		int footerLength = bb.getInt(length - 10);
+		int footerStart = length - 10 - footerLength;
+		expect(footerLength>0 && footerStart>=8, "The length of the footer is invalid: "+footerLength);
+		int footer = footerStart + bb.getInt(footerStart);
+		expect(bb.getShort(field(footer, 0))==METADATA_V5, "The footer is not of the metadata version V5.");
+		checkSchema(indirect(field(footer, 1)));
+
+		List<long[]> dictionaryBlocks = readBlocks(field(footer, 2));
+		List<long[]> batchBlocks = readBlocks(field(footer, 3));
+		expect(dictionaryBlocks.size()==5, "The footer has "+dictionaryBlocks.size()+" dictionary blocks instead of 5.");
+		expect(batchBlocks.size()>=minBatches, "The footer has "+batchBlocks.size()+" record batches, fewer than "+minBatches+".");
+
+		// the messages, read as a stream: the schema, the batches in any order, and the end-of-stream marker before the footer
+		List<Long> streamed = new ArrayList<Long>();
+		int position = 8;
+		while(true){
+			expect(position + 8 <= footerStart, "The stream of messages runs into the footer at "+position+".");
+			expect(bb.getInt(position)==0xFFFFFFFF, "The message at "+position+" does not start with the continuation marker.");
+			int metadataLength = bb.getInt(position + 4);
+			if(metadataLength==0){
+				position += 8;
+				break;
+			}
+			expect((8 + metadataLength) % 8==0, "The metadata of the message at "+position+" is not padded to 8 bytes.");
+			int message = position + 8 + bb.getInt(position + 8);
+			streamed.add((long) position);
+			position += 8 + metadataLength + (int) bb.getLong(field(message, 3));
+		}
+		expect(position==footerStart, "The footer does not follow the end-of-stream marker.");
+
+		List<Long> blocks = new ArrayList<Long>();
+		for (long[] block : dictionaryBlocks) {
+			blocks.add(block[0]);
+		}
+		for (long[] block : batchBlocks) {
+			blocks.add(block[0]);
+		}
+		expect(streamed.size()==blocks.size() + 1 && streamed.containsAll(blocks) && !blocks.contains(streamed.get(0)),
+				"The streamed messages "+streamed+" do not match the blocks of the footer "+blocks+" and the schema.");
+		int schemaMessage = 8 + 8 + bb.getInt(8 + 8);
+		expect(bb.get(field(schemaMessage, 1))==HEADER_SCHEMA, "The first message is not the schema.");
+		checkSchema(indirect(field(schemaMessage, 2)));
+
+		// the dictionaries
+		List<List<String>> dictionaries = new ArrayList<List<String>>();
+		for (int i = 0; i < dictionaryBlocks.size(); i++) {
+			dictionaries.add(null);
+		}
+		for (long[] block : dictionaryBlocks) {
+			int message = readMessage(block, HEADER_DICTIONARY_BATCH);
+			int dictionaryBatch = indirect(field(message, 2));
+			int id = (int) bb.getLong(field(dictionaryBatch, 0));
+			expect(id>=0 && id<dictionaries.size() && dictionaries.get(id)==null, "The dictionary id "+id+" is invalid, or repeated.");
+			int isDelta = field(dictionaryBatch, 2);
+			expect(isDelta==0 || bb.get(isDelta)==0, "The dictionary "+id+" is a delta.");
+
+			int body = (int) block[0] + (int) block[1];
+			int recordBatch = indirect(field(dictionaryBatch, 1));
+			long[][] nodes = readPairs(field(recordBatch, 1));
+			long[][] buffers = readPairs(field(recordBatch, 2));
+			int count = (int) bb.getLong(field(recordBatch, 0));
+			expect(nodes.length==1 && buffers.length==3 && nodes[0][0]==count && nodes[0][1]==0,
+					"The dictionary "+id+" is not a single utf8 column without nulls.");
+			checkBuffers(buffers, block[2]);
+
+			List<String> values = new ArrayList<String>();
+			int offsets = body + (int) buffers[1][0];
+			int data = body + (int) buffers[2][0];
+			expect(buffers[1][1] >= 4L * (count + 1), "The offsets of the dictionary "+id+" are too short.");
+			for (int i = 0; i < count; i++) {
+				int start = bb.getInt(offsets + 4*i);
+				int end = bb.getInt(offsets + 4*i + 4);
+				expect(start>=0 && start<=end && end<=buffers[2][1], "The offsets of the dictionary "+id+" are invalid.");
+				values.add(bytes(data + start, end - start));
+			}
+			dictionaries.set(id, values);
+		}
+
+		// the record batches, in the order of the footer
+		List<String[]> rows = new ArrayList<String[]>();
+		for (long[] block : batchBlocks) {
+			int message = readMessage(block, HEADER_RECORD_BATCH);
+			int recordBatch = indirect(field(message, 2));
+			int count = (int) bb.getLong(field(recordBatch, 0));
+			long[][] nodes = readPairs(field(recordBatch, 1));
+			long[][] buffers = readPairs(field(recordBatch, 2));
+			expect(count>0 && nodes.length==COLUMNS.length && buffers.length==2 * COLUMNS.length,
+					"The record batch at "+block[0]+" does not have a node, and two buffers per column.");
+			checkBuffers(buffers, block[2]);
+
+			int body = (int) block[0] + (int) block[1];
+			int first = rows.size();
+			for (int i = 0; i < count; i++) {
+				rows.add(new String[COLUMNS.length]);
+			}
+			int dictionary = 0;
+			for (int c = 0; c < COLUMNS.length; c++) {
+				expect(nodes[c][0]==count && nodes[c][1]==0, "The column "+COLUMNS[c]+" has nulls, or another length.");
+				expect(buffers[2*c + 1][1] >= 4L * count, "The values of the column "+COLUMNS[c]+" are too short.");
+				int values = body + (int) buffers[2*c + 1][0];
+				for (int i = 0; i < count; i++) {
+					int value = bb.getInt(values + 4*i);
+					if(IS_STRING[c]){
+						List<String> strings = dictionaries.get(dictionary);
+						expect(value>=0 && value<strings.size(), "The index "+value+" is not in the dictionary of "+COLUMNS[c]+".");
+						rows.get(first + i)[c] = strings.get(value);
+					}else{
+						rows.get(first + i)[c] = String.valueOf(value);
+					}
+				}
+				if(IS_STRING[c]){
+					dictionary++;
+				}
+			}
+		}
+		return rows;
+	}
+
+
+	/**
+	 * Check the fields of the schema: their names, types, and dictionaries (with consecutive ids, in the order of the columns)
+	 * @param schema the position of the schema table
+	 * @throws Exception if the schema is not the one of the cell annotations
+	 */
+	private void checkSchema(int schema) throws Exception {
+
+		int endianness = field(schema, 0);
+		expect(endianness==0 || bb.getShort(endianness)==0, "The schema is not little endian.");
+		int fields = indirect(field(schema, 1));
+		expect(bb.getInt(fields)==COLUMNS.length, "The schema has "+bb.getInt(fields)+" fields.");
+
+		int dictionary = 0;
+		for (int i = 0; i < COLUMNS.length; i++) {
+			int field = indirect(fields + 4 + 4*i);
+			expect(string(field(field, 0)).equals(COLUMNS[i]), "The field "+i+" is not "+COLUMNS[i]+".");
+			int children = field(field, 5);
+			expect(children==0 || bb.getInt(indirect(children))==0, "The field "+COLUMNS[i]+" has children.");
+
+			int type = indirect(field(field, 3));
+			int encoding = field(field, 4);
+			if(IS_STRING[i]){
+				expect(bb.get(field(field, 2))==TYPE_UTF8, "The field "+COLUMNS[i]+" is not utf8.");
+				expect(encoding!=0, "The field "+COLUMNS[i]+" is not dictionary encoded.");
+				encoding = indirect(encoding);
+				expect(bb.getLong(field(encoding, 0))==dictionary, "The field "+COLUMNS[i]+" does not use the dictionary "+dictionary+".");
+				checkInt32(indirect(field(encoding, 1)), COLUMNS[i]);
+				dictionary++;
+			}else{
+				expect(bb.get(field(field, 2))==TYPE_INT, "The field "+COLUMNS[i]+" is not an integer.");
+				expect(encoding==0, "The field "+COLUMNS[i]+" is dictionary encoded.");
+				checkInt32(type, COLUMNS[i]);
+			}
+		}
+	}
+
+	/**
+	 * @param type the position of an Int table
+	 * @param column the name of the column
+	 * @throws Exception if the type is not a signed 32-bit integer
+	 */
+	private void checkInt32(int type, String column) throws Exception {
+		int isSigned = field(type, 1);
+		expect(bb.getInt(field(type, 0))==32 && isSigned!=0 && bb.get(isSigned)==1, "The integers of "+column+" are not signed 32-bit.");
+	}
+
+	/**
+	 * @param block the block of a message (position, metadata length, body length)
+	 * @param headerType the expected type of the header
+	 * @return the position of the message table
+	 * @throws Exception if the message does not match its block
+	 */
+	private int readMessage(long[] block, int headerType) throws Exception {
+		int position = (int) block[0];
+		expect(position % 8==0 && block[1] % 8==0, "The message at "+position+" is not aligned to 8 bytes.");
+		expect(bb.getInt(position)==0xFFFFFFFF && 8 + bb.getInt(position + 4)==block[1],
+				"The metadata length of the message at "+position+" does not match its block.");
+		int message = position + 8 + bb.getInt(position + 8);
+		expect(bb.getShort(field(message, 0))==METADATA_V5, "The message at "+position+" is not of the metadata version V5.");
+		expect(bb.get(field(message, 1))==headerType, "The message at "+position+" is not of the header type "+headerType+".");
+		expect(bb.getLong(field(message, 3))==block[2], "The body length of the message at "+position+" does not match its block.");
+		return message;
+	}
+
+	/**
+	 * @param buffers the offset and length of each buffer
+	 * @param bodyLength the length of the body of the message
+	 * @throws Exception if a buffer is not aligned, or not in the body
+	 */
+	private static void checkBuffers(long[][] buffers, long bodyLength) throws Exception {
+		for (long[] buffer : buffers) {
+			expect(buffer[0] % 8==0 && buffer[0] + buffer[1] <= bodyLength && buffer[1]>=0,
+					"The buffer at "+buffer[0]+" (length "+buffer[1]+") is not aligned, or not in the body.");
+		}
+	}
+
+	/**
+	 * @param vector the position of the offset to a vector of Block structs
+	 * @return the blocks (position, metadata length, body length)
+	 */
+	private List<long[]> readBlocks(int vector) {
+		List<long[]> blocks = new ArrayList<long[]>();
+		int start = indirect(vector);
+		for (int i = 0; i < bb.getInt(start); i++) {
+			int block = start + 4 + 24*i;
+			blocks.add(new long[]{bb.getLong(block), bb.getInt(block + 8), bb.getLong(block + 16)});
+		}
+		return blocks;
+	}
+
+	/**
+	 * @param vector the position of the offset to a vector of structs of two longs (FieldNode, Buffer)
+	 * @return the structs
+	 */
+	private long[][] readPairs(int vector) {
+		int start = indirect(vector);
+		long[][] pairs = new long[bb.getInt(start)][];
+		for (int i = 0; i < pairs.length; i++) {
+			pairs[i] = new long[]{bb.getLong(start + 4 + 16*i), bb.getLong(start + 4 + 16*i + 8)};
+		}
+		return pairs;
+	}
+
+
+	/**
+	 * @param table the position of a table
+	 * @param field the index of the field
+	 * @return the position of the field, or 0 if it is not present
+	 */
+	private int field(int table, int field) {
+		int vtable = table - bb.getInt(table);
+		int vtableLength = bb.getShort(vtable) & 0xFFFF;
+		if(4 + 2*field >= vtableLength)
+			return 0;
+		int offset = bb.getShort(vtable + 4 + 2*field) & 0xFFFF;
+		return offset==0 ? 0 : table + offset;
+	}
+
+	/**
+	 * @param position the position of an offset to an object
+	 * @return the position of the object
+	 */
+	private int indirect(int position) {
+		return position + bb.getInt(position);
+	}
+
+	/**
+	 * @param position the position of the offset to a string
+	 * @return the string
+	 */
+	private String string(int position) {
+		int start = indirect(position);
+		return bytes(start + 4, bb.getInt(start));
+	}
+
+	/**
+	 * @param position the position of the bytes
+	 * @param length the number of bytes
+	 * @return the bytes, as utf-8
+	 */
+	private String bytes(int position, int length) {
+		return new String(bb.array(), position, length, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * @param condition the condition that holds for a valid file
+	 * @param message the message, if it does not hold
+	 * @throws Exception if the condition does not hold
+	 */
+	private static void expect(boolean condition, String message) throws Exception {
+		if(!condition){
+			throw new Exception(message);
+		}
+	}
+
+
+	/**
+	 * @param args -update, to re-write the golden file
+	 */
+	public static void main(String[] args) {
+
+		boolean update = false;
+        for (int j=0; j<args.length; j++) {
+        	if(args[j].compareToIgnoreCase("-update")==0){
+        		update = true;
+        	}
+        }
+
+		try{
+			List<CellAnnotationRecord> records = BinaryCellAnnotationCheck.createRecords();
+			File file = File.createTempFile("cells.", ".arrow");
+			file.deleteOnExit();
+			write(file, records);
+			byte[] bytes = Files.readAllBytes(file.toPath());
+			decode(bytes, toRows(records), 2);
+
+			if(update){
+				Files.write(GOLDEN_FILE.toPath(), bytes);
+				System.out.println("The golden file \""+GOLDEN_FILE.getPath()+"\" was re-written.");
+			}else if(!GOLDEN_FILE.isFile()){
+				throw new Exception("The golden file \""+GOLDEN_FILE.getPath()+"\" does not exist. Run the check from the root of the repository.");
+			}else if(!Arrays.equals(bytes, Files.readAllBytes(GOLDEN_FILE.toPath()))){
+				throw new Exception("The Arrow file differs from the golden file \""+GOLDEN_FILE.getPath()+"\".");
+			}
+
+			// more rows than fit in a record batch, in two workbooks
+			List<CellAnnotationRecord> large = new ArrayList<CellAnnotationRecord>();
+			AnnotationLabel[] labels = AnnotationLabel.values();
+			for (int i = 0; i < 80000; i++) {
+				large.add(new CellAnnotationRecord(i < 70000 ? "a.xlsx" : "b.xlsx", "Sheet" + (i % 3), i % 3, "T" + (i % 7),
+						labels[i % labels.length], new CellRangeAddress(i / 16, i / 16, i % 16, i % 16)));
+			}
+			write(file, large);
+			decode(Files.readAllBytes(file.toPath()), toRows(large), 3);
+		}catch(Exception ex){
+			System.err.println(ex.getMessage());
+			System.exit(1);
+		}
+
+		System.out.println("The Arrow check passed.");
+	}
+}
@@ -0,0 +1,141 @@
+/**
+ * 
+ */
+package de.tudresden.xr.export;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.poi.ss.util.CellRangeAddress;
+
+import de.tudresden.xr.model.enums.AnnotationLabel;
+
+/**
+ * Writes a fixed set of cell annotations with the BinaryCellAnnotationWriter, and reads them back with the BinaryCellAnnotationReader.
+ * The records cover negative deltas of the row and the column, a new sheet and a new file in the middle of the stream,
+ * names that are already in the dictionaries, merged areas, and every annotation label (i.e., the bound of the flags byte).
+ * The file is written both uncompressed and compressed. The check exits with 1, if a record does not come back as it was written.
+ * <p>
+ * $ java -cp "out:lib/*" de.tudresden.xr.export.BinaryCellAnnotationCheck
+ */
+public class BinaryCellAnnotationCheck {
+
+
+	/**
+	 * @return the records of the check, in the order they are written
+	 */
+	static List<CellAnnotationRecord> createRecords() {
+
+		List<CellAnnotationRecord> records = new ArrayList<CellAnnotationRecord>();
+		records.add(new CellAnnotationRecord("a.xlsx", "Sheet1", 0, "T1", AnnotationLabel.Header, new CellRangeAddress(4, 4, 0, 0)));
+		// a merged area
+		records.add(new CellAnnotationRecord("a.xlsx", "Sheet1", 0, "T1", AnnotationLabel.Header, new CellRangeAddress(4, 6, 3, 5)));
+		// a negative row delta
+		records.add(new CellAnnotationRecord("a.xlsx", "Sheet1", 0, "T1", AnnotationLabel.Data, new CellRangeAddress(2, 2, 7, 7)));
+		// a negative column delta, and a new table
+		records.add(new CellAnnotationRecord("a.xlsx", "Sheet1", 0, "T2", AnnotationLabel.Metadata, new CellRangeAddress(2, 2, 1, 1)));
+		// the last cell of an xlsx sheet, as a merged area of a single row
+		records.add(new CellAnnotationRecord("a.xlsx", "Sheet1", 0, "T2", AnnotationLabel.Notes,
+				new CellRangeAddress(1048575, 1048575, 16380, 16383)));
+		// a new sheet, with a table name that is already in the dictionary, and large negative deltas
+		records.add(new CellAnnotationRecord("a.xlsx", "Sheet2", 1, "T1", AnnotationLabel.Data, new CellRangeAddress(0, 0, 0, 0)));
+		// back to the first sheet, whose name is already in the dictionary
+		records.add(new CellAnnotationRecord("a.xlsx", "Sheet1", 0, "T1", AnnotationLabel.Data, new CellRangeAddress(9, 9, 2, 2)));
+		// the same sheet name, with another index
+		records.add(new CellAnnotationRecord("a.xlsx", "Sheet1", 2, "T1", AnnotationLabel.Data, new CellRangeAddress(9, 9, 2, 2)));
+		// a new file, with non-ascii names, and a cell that is not in a table
+		records.add(new CellAnnotationRecord("b \u00e4\u00f6\u00fc.xlsx", "Bl\u00e4tter \u65e5\u672c", 0, "", AnnotationLabel.Data,
+				new CellRangeAddress(3, 3, 3, 3)));
+
+		// every annotation label, with alternating deltas
+		AnnotationLabel[] labels = AnnotationLabel.values();
+		for (int i = 0; i < labels.length; i++) {
+			int row = i % 2==0 ? 100 + i : 50 - i;
+			int column = i % 2==0 ? i : 30 - i;
+			records.add(new CellAnnotationRecord("b \u00e4\u00f6\u00fc.xlsx", "Sheet1", 1, "T" + (i % 3), labels[i],
+					new CellRangeAddress(row, row + i % 2, column, column + i % 3)));
+		}
+
+		// a file that was already written before
+		records.add(new CellAnnotationRecord("a.xlsx", "Sheet2", 1, "", labels[labels.length - 1], new CellRangeAddress(0, 0, 0, 0)));
+		return records;
+	}
+
+
+	/**
+	 * Write the records, and compare them with the records that are read back
+	 * @param file the path to the binary file
+	 * @param compress true to write the file as a gzip stream
+	 * @throws Exception a generic exception, containing a string message with clarifications
+	 */
+	static void check(File file, boolean compress) throws Exception {
+
+		List<CellAnnotationRecord> records = createRecords();
+		BinaryCellAnnotationWriter writer = new BinaryCellAnnotationWriter(file, compress);
+		try{
+			String fileName = null;
+			for (CellAnnotationRecord record : records) {
+				if(fileName!=null && !fileName.equals(record.getFileName())){
+					writer.endWorkbook(fileName);
+				}
+				fileName = record.getFileName();
+				writer.write(record);
+			}
+			writer.endWorkbook(fileName);
+		}finally{
+			writer.close();
+		}
+
+		BinaryCellAnnotationReader reader = new BinaryCellAnnotationReader(file);
+		try{
+			for (int i = 0; i < records.size(); i++) {
+				CellAnnotationRecord read = reader.read();
+				if(read==null){
+					throw new Exception("The file ends after "+i+" of "+records.size()+" records.");
+				}
+				String expected = format(records.get(i));
+				String actual = format(read);
+				if(!expected.equals(actual)){
+					throw new Exception("The record "+i+" was read as\n  "+actual+"\ninstead of\n  "+expected);
+				}
+			}
+			if(reader.read()!=null){
+				throw new Exception("The file has more than "+records.size()+" records.");
+			}
+		}finally{
+			reader.close();
+		}
+	}
+
+
+	/**
+	 * @param record a cell annotation
+	 * @return all the fields of the record, as a string
+	 */
+	static String format(CellAnnotationRecord record) {
+		CellRangeAddress cellAddress = record.getCellAddress();
+		return record.getFileName()+"|"+record.getSheetName()+"|"+record.getSheetIndex()+"|"+record.getTableName()+"|"
+				+ record.getAnnotationLabel().name()+"|"+cellAddress.getFirstRow()+"|"+cellAddress.getFirstColumn()+"|"
+				+ cellAddress.getLastRow()+"|"+cellAddress.getLastColumn();
+	}
+
+
+	/**
+	 * @param args the arguments of the check (none)
+	 */
+	public static void main(String[] args) {
+
+		try{
+			File file = File.createTempFile("cells.", ".bin");
+			file.deleteOnExit();
+			check(file, false);
+			check(file, true);
+		}catch(Exception ex){
+			System.err.println(ex.getMessage());
+			System.exit(1);
+		}
+
+		System.out.println("The binary round-trip check passed.");
+	}
+}